@@ -2,18 +2,26 @@ package edu.ncsu.csc.iTrust2;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisRepositoriesAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import edu.ncsu.csc.iTrust2.config.SchemaValidateIntegrator;
 
 /**
- * Main entrypoint to the iTrust2 application
+ * Main entrypoint to the iTrust2 application. Scheduling is enabled for
+ * periodic maintenance jobs, such as archiving old log entries. Redis is
+ * only used by RedisThrottleStateStore, which connects on its own when it is
+ * enabled, so it isn't configured (or health-checked) otherwise.
  * 
  * @author Kai Presler-Marshall
  *
  */
-@SpringBootApplication ( scanBasePackages = { "edu.ncsu.csc.iTrust2" } )
+@SpringBootApplication ( scanBasePackages = { "edu.ncsu.csc.iTrust2" },
+        exclude = { RedisAutoConfiguration.class, RedisRepositoriesAutoConfiguration.class } )
+@EnableScheduling
 public class ITrust2Application {
 
     /**
@@ -0,0 +1,133 @@
+package edu.ncsu.csc.iTrust2.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * PasswordEncoder that runs another (expensive) encoder, such as BCrypt, on a
+ * small, fixed pool of threads when checking passwords. Hashing a password
+ * takes a lot of CPU, so a burst of logins run on the request threads would
+ * starve every other request; with this, no more than the pool's worth of
+ * cores are ever spent on it.
+ *
+ * Only checking passwords (ie, logging in) goes through the pool. Encoding a
+ * new password, when a user is created or changes their password, is rare and
+ * runs on the calling thread, so it is never turned away during a burst of
+ * logins.
+ *
+ * Requests wait in a bounded queue for a free thread. Once that is full, new
+ * ones are rejected straight away with a PasswordEncoderBusyException, which
+ * Spring Security reports as a failed (but not a bad-credential) login.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    /** Encoder that does the actual work */
+    private final PasswordEncoder    delegate;
+
+    /** Threads to do it on */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates the encoder
+     *
+     * @param delegate
+     *            Encoder that does the actual work
+     * @param threads
+     *            Number of threads to hash passwords on
+     * @param queueCapacity
+     *            Number of passwords that may wait for a thread before more
+     *            are rejected
+     */
+    public BoundedPasswordEncoder ( final PasswordEncoder delegate, final int threads, final int queueCapacity ) {
+        this.delegate = delegate;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>( queueCapacity ), r -> {
+                    final Thread t = new Thread( r, "password-encoder-" + count.incrementAndGet() );
+                    t.setDaemon( true );
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy() );
+    }
+
+    @Override
+    public String encode ( final CharSequence rawPassword ) {
+        return delegate.encode( rawPassword );
+    }
+
+    @Override
+    public boolean matches ( final CharSequence rawPassword, final String encodedPassword ) {
+        return run( () -> delegate.matches( rawPassword, encodedPassword ) );
+    }
+
+    @Override
+    public boolean upgradeEncoding ( final String encodedPassword ) {
+        return delegate.upgradeEncoding( encodedPassword );
+    }
+
+    /**
+     * Gets the number of passwords waiting for a thread
+     *
+     * @return Number waiting
+     */
+    public int getQueued () {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops the threads. Called by Spring when the application shuts down.
+     */
+    public void shutdown () {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs a task on the pool and waits for its result
+     *
+     * @param <T>
+     *            Type of the result
+     * @param task
+     *            Task to run
+     * @return Its result
+     * @throws PasswordEncoderBusyException
+     *             If the queue is full
+     * @throws AuthenticationServiceException
+     *             If the wait was interrupted
+     */
+    private <T> T run ( final Callable<T> task ) {
+        final Future<T> result;
+        try {
+            result = executor.submit( task );
+        }
+        catch ( final RejectedExecutionException e ) {
+            throw new PasswordEncoderBusyException( "Too many logins in progress, please try again shortly", e );
+        }
+        try {
+            return result.get();
+        }
+        catch ( final InterruptedException e ) {
+            result.cancel( true );
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException( "Interrupted while checking password", e );
+        }
+        catch ( final ExecutionException e ) {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException( cause );
+        }
+    }
+
+}
@@ -16,19 +16,20 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
-import edu.ncsu.csc.iTrust2.models.security.LoginAttempt;
 import edu.ncsu.csc.iTrust2.models.security.LoginBan;
 import edu.ncsu.csc.iTrust2.models.security.LoginLockout;
 import edu.ncsu.csc.iTrust2.services.UserService;
-import edu.ncsu.csc.iTrust2.services.security.LoginAttemptService;
+import edu.ncsu.csc.iTrust2.services.security.CachedUserDetailsService;
 import edu.ncsu.csc.iTrust2.services.security.LoginBanService;
 import edu.ncsu.csc.iTrust2.services.security.LoginLockoutService;
+import edu.ncsu.csc.iTrust2.services.security.LoginThrottleService;
 import edu.ncsu.csc.iTrust2.utils.EmailUtil;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
  * Custom AuthenticationFailureHandler to record Failed attempts, and lockout or
- * ban a user or IP if necessary.
+ * ban a user or IP if necessary. Attempts are counted by the
+ * LoginThrottleService.
  *
  * @author Thomas
  * @author Kai Presler-Marshall
@@ -40,29 +41,33 @@ public class FailureHandler extends SimpleUrlAuthenticationFailureHandler {
      * Logger Util
      */
     @Autowired
-    private LoggerUtil          loggerUtil;
+    private LoggerUtil               loggerUtil;
 
     /**
      * Email Util
      */
     @Autowired
-    private EmailUtil           emailUtil;
+    private EmailUtil                emailUtil;
 
     /** LoginBan service */
     @Autowired
-    private LoginBanService     loginBanService;
+    private LoginBanService          loginBanService;
 
     /** LoginLockout service */
     @Autowired
-    private LoginLockoutService loginLockoutService;
+    private LoginLockoutService      loginLockoutService;
 
-    /** LoginAttempt service */
+    /** Counts failed logins and decides on lockouts and bans */
     @Autowired
-    private LoginAttemptService loginAttemptService;
+    private LoginThrottleService     loginThrottleService;
 
     /** UserService */
     @Autowired
-    private UserService<User>   userService;
+    private UserService<User>        userService;
+
+    /** Looks up (cached) whether a username belongs to anyone */
+    @Autowired
+    private CachedUserDetailsService userDetailsService;
 
     @Override
     public void onAuthenticationFailure ( final HttpServletRequest request, final HttpServletResponse response,
@@ -77,90 +82,67 @@ public class FailureHandler extends SimpleUrlAuthenticationFailureHandler {
         User user = null;
         final String addr = request.getRemoteAddr();
 
-        if ( username != null ) {
-            user = userService.findByName( username );
-        }
-
         if ( ae instanceof BadCredentialsException ) {
-            // need to lockout IP
-            if ( loginAttemptService.countByIP( addr ) >= 5 ) {
-                loginAttemptService.clearIP( addr );
-                // Check if need to ban IP
-                if ( loginLockoutService.getRecentIPLockouts( addr ) >= 2 ) {
-                    // BAN
-                    final LoginBan ban = new LoginBan();
-                    ban.setIp( addr );
-                    ban.setTime( ZonedDateTime.now() );
-                    loginBanService.save( ban );
-
-                    loginLockoutService.clearIP( addr );
-                    loggerUtil.log( TransactionType.IP_BANNED, addr, null, addr + " has been banned." );
-                    this.getRedirectStrategy().sendRedirect( request, response, "/login?ipbanned" );
-                }
-                else {
-                    // lockout IP.
-                    final LoginLockout lockout = new LoginLockout();
-                    lockout.setIp( addr );
-                    lockout.setTime( ZonedDateTime.now() );
-                    loginLockoutService.save( lockout );
-                    loggerUtil.log( TransactionType.IP_LOCKOUT, addr, null, addr + " has been locked out for 1 hour." );
-                    this.getRedirectStrategy().sendRedirect( request, response, "/login?iplocked" );
-
-                    sendEmail( username );
-                }
+            // Attempts are counted in memory; the database is only touched
+            // once a lockout or ban needs to be saved
+            final LoginThrottleService.Decision ipDecision = loginThrottleService.failedIPAttempt( addr );
+            if ( LoginThrottleService.Decision.BAN == ipDecision ) {
+                final LoginBan ban = new LoginBan();
+                ban.setIp( addr );
+                ban.setTime( ZonedDateTime.now() );
+                loginBanService.save( ban );
+
+                loginLockoutService.clearIP( addr );
+                loggerUtil.log( TransactionType.IP_BANNED, addr, null, addr + " has been banned." );
+                this.getRedirectStrategy().sendRedirect( request, response, "/login?ipbanned" );
                 return;
             }
-            else {
-                // fail for IP
-                final LoginAttempt attempt = new LoginAttempt();
-                attempt.setTime( ZonedDateTime.now() );
-                attempt.setIp( addr );
-                loginAttemptService.save( attempt );
+            else if ( LoginThrottleService.Decision.LOCKOUT == ipDecision ) {
+                final LoginLockout lockout = new LoginLockout();
+                lockout.setIp( addr );
+                lockout.setTime( ZonedDateTime.now() );
+                loginLockoutService.save( lockout );
+                loggerUtil.log( TransactionType.IP_LOCKOUT, addr, null, addr + " has been locked out for 1 hour." );
+                this.getRedirectStrategy().sendRedirect( request, response, "/login?iplocked" );
+
+                sendEmail( username );
+                return;
             }
 
-            // check username
-            if ( username != null ) {
-                user = userService.findByName( username );
+            // check username; only names that belong to someone are counted,
+            // so made-up names can't fill the store with keys
+            final String known = userDetailsService.findUsername( username );
+            final LoginThrottleService.Decision userDecision = null == known ? LoginThrottleService.Decision.NONE
+                    : loginThrottleService.failedUserAttempt( known );
+            if ( LoginThrottleService.Decision.NONE != userDecision ) {
+                user = userService.findByName( known );
             }
 
             if ( user != null ) {
-                // check if need to lockout username
-                if ( loginAttemptService.countByUser( user ) >= 2 ) {
-                    loginAttemptService.clearUser( user );
-                    // check if need to ban user
-                    if ( loginLockoutService.getRecentUserLockouts( user ) >= 2 ) {
-                        loginLockoutService.clearUser( user );
-                        final LoginBan ban = new LoginBan();
-                        ban.setTime( ZonedDateTime.now() );
-                        ban.setUser( user );
-                        loginBanService.save( ban );
-                        loggerUtil.log( TransactionType.USER_BANNED, username, null, username + " has been banned." );
-                        this.getRedirectStrategy().sendRedirect( request, response, "/login?banned" );
-
-                        sendEmail( username );
-
-                    }
-                    else {
-                        // lockout user
-                        final LoginLockout lock = new LoginLockout();
-                        lock.setTime( ZonedDateTime.now() );
-                        lock.setUser( user );
-                        loginLockoutService.save( lock );
-                        loggerUtil.log( TransactionType.USER_LOCKOUT, username, null,
-                                username + " has been locked out for 1 hour." );
-                        this.getRedirectStrategy().sendRedirect( request, response, "/login?locked" );
-
-                        sendEmail( username );
-                    }
-                    return;
+                if ( LoginThrottleService.Decision.BAN == userDecision ) {
+                    loginLockoutService.clearUser( user );
+                    final LoginBan ban = new LoginBan();
+                    ban.setTime( ZonedDateTime.now() );
+                    ban.setUser( user );
+                    loginBanService.save( ban );
+                    loggerUtil.log( TransactionType.USER_BANNED, username, null, username + " has been banned." );
+                    this.getRedirectStrategy().sendRedirect( request, response, "/login?banned" );
+
+                    sendEmail( username );
                 }
                 else {
-                    // fail for username
-                    final LoginAttempt attempt = new LoginAttempt();
-                    attempt.setTime( ZonedDateTime.now() );
-                    attempt.setUser( user );
-                    loginAttemptService.save( attempt );
+                    // lockout user
+                    final LoginLockout lock = new LoginLockout();
+                    lock.setTime( ZonedDateTime.now() );
+                    lock.setUser( user );
+                    loginLockoutService.save( lock );
+                    loggerUtil.log( TransactionType.USER_LOCKOUT, username, null,
+                            username + " has been locked out for 1 hour." );
+                    this.getRedirectStrategy().sendRedirect( request, response, "/login?locked" );
+
+                    sendEmail( username );
                 }
+                return;
             }
 
         }
@@ -184,6 +166,13 @@ public class FailureHandler extends SimpleUrlAuthenticationFailureHandler {
             this.getRedirectStrategy().sendRedirect( request, response, "/login?locked" );
             return;
         }
+        else if ( ae instanceof PasswordEncoderBusyException ) {
+            // Too many logins waiting on the password encoder; this doesn't
+            // count as a failed attempt. Other service failures (eg, the
+            // database being down) are reported as plain errors.
+            this.getRedirectStrategy().sendRedirect( request, response, "/login?busy" );
+            return;
+        }
         this.getRedirectStrategy().sendRedirect( request, response, "/login?error" );
     }
 
@@ -17,7 +17,9 @@ import edu.ncsu.csc.iTrust2.services.security.LoginLockoutService;
 
 /**
  * IP Filter to figure out if a user's IP address is banned/locked. If so,
- * intercepts and disallows the requests.
+ * intercepts and disallows the requests. This runs on every request; both
+ * checks are answered from short-lived caches in LoginBanService and
+ * LoginLockoutService, so most requests don't touch the database here.
  *
  * @author Kai Presler-Marshall
  * @author Thomas
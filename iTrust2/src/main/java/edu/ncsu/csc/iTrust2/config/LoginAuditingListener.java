@@ -11,12 +11,10 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetails;
 import org.springframework.stereotype.Component;
 
-import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
-import edu.ncsu.csc.iTrust2.services.UserService;
-import edu.ncsu.csc.iTrust2.services.security.LoginAttemptService;
 import edu.ncsu.csc.iTrust2.services.security.LoginBanService;
 import edu.ncsu.csc.iTrust2.services.security.LoginLockoutService;
+import edu.ncsu.csc.iTrust2.services.security.LoginThrottleService;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -31,23 +29,19 @@ public class LoginAuditingListener implements ApplicationListener<ApplicationEve
 
     /** LoggerUtil */
     @Autowired
-    private LoggerUtil          util;
+    private LoggerUtil           util;
 
-    /** LoginAttempt service */
+    /** Counts failed logins */
     @Autowired
-    private LoginAttemptService loginAttemptService;
+    private LoginThrottleService loginThrottleService;
 
     /** LoginBan service */
     @Autowired
-    private LoginBanService     loginBanService;
-
-    /** User service */
-    @Autowired
-    private UserService<User>   userService;
+    private LoginBanService      loginBanService;
 
     /** LoginLockout service */
     @Autowired
-    private LoginLockoutService loginLockoutService;
+    private LoginLockoutService  loginLockoutService;
 
     @Override
     public void onApplicationEvent ( final ApplicationEvent event ) {
@@ -65,8 +59,7 @@ public class LoginAuditingListener implements ApplicationListener<ApplicationEve
             // bypassed the lockout page via a direct API call).
             final String addr = det.getRemoteAddress();
             if ( !loginLockoutService.isIPLocked( addr ) && !loginBanService.isIPBanned( addr ) ) {
-                loginAttemptService.clearIP( addr );
-                loginAttemptService.clearUser( userService.findByName( details.getUsername() ) );
+                loginThrottleService.clearAttempts( addr, details.getUsername() );
                 util.log( TransactionType.LOGIN_SUCCESS, details.getUsername() );
             }
 
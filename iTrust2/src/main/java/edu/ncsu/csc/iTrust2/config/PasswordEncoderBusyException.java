@@ -0,0 +1,30 @@
+package edu.ncsu.csc.iTrust2.config;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * Thrown by the BoundedPasswordEncoder when too many passwords are already
+ * waiting to be checked. The login was turned away before the password was
+ * looked at, so the FailureHandler asks the user to try again shortly rather
+ * than counting it as a failed attempt. Other AuthenticationServiceExceptions
+ * (eg, the database being down) are not this, and are reported as errors.
+ *
+ */
+public class PasswordEncoderBusyException extends AuthenticationServiceException {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception
+     *
+     * @param msg
+     *            Detail message
+     * @param cause
+     *            Why the password couldn't be queued
+     */
+    public PasswordEncoderBusyException ( final String msg, final Throwable cause ) {
+        super( msg, cause );
+    }
+
+}
@@ -1,12 +1,16 @@
 package edu.ncsu.csc.iTrust2.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
- * Registers our audit logger with Spring so that events are logged properly
+ * Registers our audit logger with Spring so that events are logged properly,
+ * and sets how long asynchronous requests (ie, audit log exports, which are
+ * streamed) may run for
  * 
  * @author Kai Presler-Marshall
  *
@@ -14,6 +18,14 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebMvcInterceptorConfiguration implements WebMvcConfigurer {
 
+    /**
+     * How long (ms) a streamed response may take before it is cut off. The
+     * servlet container's own default (30s for Tomcat) is too short for a
+     * large audit log export.
+     */
+    @Value ( "${itrust2.audit.export.timeout-ms:3600000}" )
+    private long exportTimeoutMs;
+
     /**
      * Register the logging/audit interceptor on every REST endpoint
      *
@@ -28,4 +40,9 @@ public class WebMvcInterceptorConfiguration implements WebMvcConfigurer {
     public void addInterceptors ( final InterceptorRegistry registry ) {
         registry.addInterceptor( getInterceptor() ).addPathPatterns( "/**" );
     }
+
+    @Override
+    public void configureAsyncSupport ( final AsyncSupportConfigurer configurer ) {
+        configurer.setDefaultTimeout( exportTimeoutMs );
+    }
 }
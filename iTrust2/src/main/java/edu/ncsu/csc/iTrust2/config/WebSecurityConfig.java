@@ -1,14 +1,13 @@
 package edu.ncsu.csc.iTrust2.config;
 
 import javax.servlet.Filter;
-import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.DefaultAuthenticationEventPublisher;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
-import org.springframework.security.config.annotation.authentication.configurers.provisioning.JdbcUserDetailsManagerConfigurer;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
@@ -20,6 +19,8 @@ import org.springframework.security.web.access.channel.ChannelProcessingFilter;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
 
+import edu.ncsu.csc.iTrust2.services.security.CachedUserDetailsService;
+
 /**
  * Configures Spring security. Tells Spring how to find users in the system,
  * which API routes (don't) require authentication, and configures a few other
@@ -34,10 +35,22 @@ import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
 public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
     /**
-     * DataSource used for connecting to and interacting with the database.
+     * Looks up users (and caches them) when they log in.
      */
     @Autowired
-    DataSource dataSource;
+    CachedUserDetailsService userDetailsService;
+
+    /** BCrypt work factor (log2 of the number of rounds) */
+    @Value ( "${itrust2.login.bcrypt-strength:10}" )
+    private int              bcryptStrength;
+
+    /** Threads to hash passwords on; 0 for one per core */
+    @Value ( "${itrust2.login.hash-threads:0}" )
+    private int              hashThreads;
+
+    /** Passwords that may wait to be hashed before more logins are rejected */
+    @Value ( "${itrust2.login.hash-queue-capacity:64}" )
+    private int              hashQueueCapacity;
 
     /**
      * Login configuration for iTrust2.
@@ -50,18 +63,10 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
      */
     @Autowired
     public void configureGlobal ( final AuthenticationManagerBuilder auth ) throws Exception {
-        final JdbcUserDetailsManagerConfigurer<AuthenticationManagerBuilder> dbManager = auth.jdbcAuthentication();
-
-        // User query enabled flag also checks for locked or banned users. The
-        // FailureHandler then
-        // determines if the DisabledUser Exception was due to ban, lockout, or
-        // true disable.
-        // POSSIBLE FUTURE CHANGE: Refactor the UserSource here along the lines
-        // of this:
-        // http://websystique.com/springmvc/spring-mvc-4-and-spring-security-4-integration-example/
-        dbManager.dataSource( dataSource ).passwordEncoder( passwordEncoder() )
-                .usersByUsernameQuery( "select username,password,enabled from user WHERE username = ?;" )
-                .authoritiesByUsernameQuery( "select user_username, roles from user_roles where user_username=?" );
+        // The enabled flag is false for locked or banned users as well. The
+        // FailureHandler then determines if the DisabledException was due to
+        // ban, lockout, or true disable.
+        auth.userDetailsService( userDetailsService ).passwordEncoder( passwordEncoder() );
         auth.authenticationEventPublisher( defaultAuthenticationEventPublisher() );
 
     }
@@ -111,13 +116,16 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
     /**
      * Bean used to generate a PasswordEncoder to hash the user-provided
-     * password.
+     * password. Hashing is done on its own bounded pool of threads (see
+     * BoundedPasswordEncoder), so that a wave of logins can't take every core
+     * away from the rest of the application.
      *
      * @return The password encoder.
      */
     @Bean
     public PasswordEncoder passwordEncoder () {
-        return new BCryptPasswordEncoder();
+        final int threads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder( new BCryptPasswordEncoder( bcryptStrength ), threads, hashQueueCapacity );
     }
 
     /**
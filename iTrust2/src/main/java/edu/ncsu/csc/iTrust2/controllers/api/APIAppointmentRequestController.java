@@ -22,8 +22,8 @@ import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.models.enums.Status;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.services.AppointmentRequestService;
-import edu.ncsu.csc.iTrust2.services.UserService;
 import edu.ncsu.csc.iTrust2.services.VaccineAppointmentRequestService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -54,9 +54,9 @@ public class APIAppointmentRequestController extends APIController {
     @Autowired
     private LoggerUtil                       loggerUtil;
 
-    /** User service */
+    /** The logged-in user */
     @Autowired
-    private UserService<User>                userService;
+    private CurrentUser                      currentUser;
 
     /**
      * Retrieves a list of all AppointmentRequests in the database
@@ -82,7 +82,7 @@ public class APIAppointmentRequestController extends APIController {
     @GetMapping ( BASE_PATH + "/appointmentrequest" )
     @PreAuthorize ( "hasAnyRole('ROLE_PATIENT')" )
     public List<AppointmentRequest> getAppointmentRequestsForPatient () {
-        final User patient = userService.findByName( LoggerUtil.currentUser() );
+        final User patient = currentUser.get();
         final List<AppointmentRequest> result = service.findByPatient( patient ).stream()
                 .filter( e -> e.getStatus().equals( Status.PENDING ) ).collect( Collectors.toList() );
         // result.addAll( vaxService.findByPatient( patient ).stream()
@@ -101,7 +101,7 @@ public class APIAppointmentRequestController extends APIController {
     @PreAuthorize ( "hasAnyRole('ROLE_HCP')" )
     public List<AppointmentRequest> getAppointmentRequestsForHCP () {
 
-        final User hcp = userService.findByName( LoggerUtil.currentUser() );
+        final User hcp = currentUser.get();
 
         return service.findByHcp( hcp ).stream().filter( e -> e.getStatus().equals( Status.PENDING ) )
                 .collect( Collectors.toList() );
@@ -124,7 +124,7 @@ public class APIAppointmentRequestController extends APIController {
             loggerUtil.log( TransactionType.APPOINTMENT_REQUEST_VIEWED, request.getPatient(), request.getHcp() );
 
             /* Patient can't look at anyone else's requests */
-            final User self = userService.findByName( LoggerUtil.currentUser() );
+            final User self = currentUser.get();
             if ( self.getRoles().contains( Role.ROLE_PATIENT ) && !request.getPatient().equals( self ) ) {
                 return new ResponseEntity( HttpStatus.UNAUTHORIZED );
             }
@@ -188,7 +188,7 @@ public class APIAppointmentRequestController extends APIController {
         }
 
         /* Patient can't look at anyone else's requests */
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         if ( self.getRoles().contains( Role.ROLE_PATIENT ) && !request.getPatient().equals( self ) ) {
             return new ResponseEntity( HttpStatus.UNAUTHORIZED );
         }
@@ -234,7 +234,7 @@ public class APIAppointmentRequestController extends APIController {
             }
 
             /* Patient can't look at anyone else's requests */
-            final User self = userService.findByName( LoggerUtil.currentUser() );
+            final User self = currentUser.get();
             if ( self.getRoles().contains( Role.ROLE_PATIENT ) && !request.getPatient().equals( self ) ) {
                 return new ResponseEntity( HttpStatus.UNAUTHORIZED );
             }
@@ -274,7 +274,7 @@ public class APIAppointmentRequestController extends APIController {
     @GetMapping ( BASE_PATH + "/viewAppointments" )
     @PreAuthorize ( "hasAnyRole('ROLE_HCP')" )
     public List<AppointmentRequest> upcomingAppointments () {
-        final User hcp = userService.findByName( LoggerUtil.currentUser() );
+        final User hcp = currentUser.get();
 
         final List<AppointmentRequest> appointment = service.findByHcp( hcp ).stream()
                 .filter( e -> e.getStatus().equals( Status.APPROVED ) ).collect( Collectors.toList() );
@@ -17,7 +17,7 @@ import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.services.DiagnosisService;
 import edu.ncsu.csc.iTrust2.services.OfficeVisitService;
-import edu.ncsu.csc.iTrust2.services.UserService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -47,9 +47,9 @@ public class APIDiagnosisController extends APIController {
     @Autowired
     private OfficeVisitService officeVisitService;
 
-    /** User service */
+    /** The logged-in user */
     @Autowired
-    private UserService<User>  userService;
+    private CurrentUser        currentUser;
 
     /**
      * Returns the Diagnosis with the specified ID.
@@ -97,7 +97,7 @@ public class APIDiagnosisController extends APIController {
      */
     @GetMapping ( BASE_PATH + "/diagnoses" )
     public List<DiagnosisListForm> getDiagnosis () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         if ( self == null ) {
             return null;
         }
@@ -20,8 +20,7 @@ import edu.ncsu.csc.iTrust2.models.enums.PatientSmokingStatus;
 import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.models.enums.State;
 import edu.ncsu.csc.iTrust2.models.enums.Status;
-import edu.ncsu.csc.iTrust2.services.UserService;
-import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 
 /**
  * This class provides GET endpoints for all of the Enums, so that they can be
@@ -32,9 +31,9 @@ import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 @RestController
 public class APIEnumController extends APIController {
 
-    /** User service */
+    /** The logged-in user */
     @Autowired
-    private UserService<User> userService;
+    private CurrentUser       currentUser;
 
     /**
      * Get the blood types
@@ -83,7 +82,7 @@ public class APIEnumController extends APIController {
      */
     @GetMapping ( BASE_PATH + "/appointmenttype" )
     public List<AppointmentType> getAppointmentTypes () {
-        final User user = userService.findByName( LoggerUtil.currentUser() );
+        final User user = currentUser.get();
         final Collection<Role> role = user.getRoles();
         if ( role.contains( Role.ROLE_OD ) ) {
             return List.of( AppointmentType.GENERAL_CHECKUP, AppointmentType.GENERAL_OPHTHALMOLOGY );
@@ -110,7 +110,8 @@ public class APIHospitalController extends APIController {
     @PutMapping ( BASE_PATH + "/hospitals/{id}" )
     @PreAuthorize ( "hasRole('ROLE_ADMIN') " )
     public ResponseEntity updateHospital ( @PathVariable final String id, @RequestBody final HospitalForm hospitalF ) {
-        final Hospital dbHospital = hospitalService.findByName( id );
+        // Not the cached Hospital, as it is about to be changed
+        final Hospital dbHospital = hospitalService.findById( id );
         if ( null == dbHospital ) {
             return new ResponseEntity( errorResponse( "No hospital found for name " + id ), HttpStatus.NOT_FOUND );
         }
@@ -3,6 +3,7 @@ package edu.ncsu.csc.iTrust2.controllers.api;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -15,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import edu.ncsu.csc.iTrust2.forms.ICDCodeForm;
+import edu.ncsu.csc.iTrust2.forms.display.ICDCodeCatalog;
 import edu.ncsu.csc.iTrust2.models.ICDCode;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.services.ICDCodeService;
@@ -42,14 +44,20 @@ public class APIICDCodeController extends APIController {
     private ICDCodeService service;
 
     /**
-     * Returns a list of Codes in the system
+     * Returns a list of the Codes in the system that the current user can
+     * diagnose with. The list is tagged with its version (as an ETag), so if
+     * the client already has that version (If-None-Match) it is answered with
+     * Not Modified instead of the codes.
      *
-     * @return All the codes in the system
+     * @return The codes the user can see
      */
     @GetMapping ( BASE_PATH + "/icdcodes" )
-    public List<ICDCode> getCodes () {
+    public ResponseEntity<List<ICDCode>> getCodes () {
         loggerUtil.log( TransactionType.ICD_VIEW_ALL, LoggerUtil.currentUser(), "Fetched icd codes" );
-        return service.findAll();
+        final ICDCodeCatalog catalog = service.findCatalog();
+        // Let the browser keep the codes, but check they are current each time
+        return ResponseEntity.ok().eTag( catalog.getVersion() ).cacheControl( CacheControl.noCache().cachePrivate() )
+                .body( catalog.getCodes() );
     }
 
     /**
@@ -6,16 +6,27 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import edu.ncsu.csc.iTrust2.controllers.api.comm.LogEntryCursor;
 import edu.ncsu.csc.iTrust2.controllers.api.comm.LogEntryRequestBody;
 import edu.ncsu.csc.iTrust2.controllers.api.comm.LogEntryTableRow;
 import edu.ncsu.csc.iTrust2.models.User;
@@ -23,7 +34,9 @@ import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.models.security.LogEntry;
 import edu.ncsu.csc.iTrust2.services.UserService;
+import edu.ncsu.csc.iTrust2.services.security.LogEntryExportService;
 import edu.ncsu.csc.iTrust2.services.security.LogEntryService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -43,15 +56,23 @@ public class APILogEntryController extends APIController {
      * LogEntry service
      */
     @Autowired
-    private LogEntryService   leservice;
+    private LogEntryService       leservice;
+
+    /** Service for streaming out the whole log */
+    @Autowired
+    private LogEntryExportService exportService;
 
     /** UserService */
     @Autowired
-    private UserService<User> userService;
+    private UserService<User>     userService;
+
+    /** The logged-in user */
+    @Autowired
+    private CurrentUser           currentUser;
 
     /** LoggerUtil */
     @Autowired
-    private LoggerUtil        loggerUtil;
+    private LoggerUtil            loggerUtil;
 
     /**
      * Handles GET requests for the current user's log entries when searching by
@@ -63,17 +84,30 @@ public class APILogEntryController extends APIController {
      */
     @PostMapping ( BASE_PATH + "/logentries/range" )
     public ResponseEntity getEntryByDateRange ( @RequestBody final LogEntryRequestBody body ) {
+        if ( body.getPageLength() < 1 ) {
+            return new ResponseEntity( errorResponse( "Page length must be positive" ), HttpStatus.BAD_REQUEST );
+        }
+
+        final LogEntryCursor cursor;
+        try {
+            cursor = LogEntryCursor.decode( body.getCursor() );
+        }
+        catch ( final IllegalArgumentException ex ) {
+            return new ResponseEntity( errorResponse( "Invalid cursor" ), HttpStatus.BAD_REQUEST );
+        }
+
         // If no dates are specified, get all entries, otherwise use the date
         // range
-        List<LogEntry> entries = null;
+        ZonedDateTime start = null;
+        ZonedDateTime end = null;
         try {
-            if ( body.getStartDate().equals( "" ) || body.getEndDate().equals( "" ) ) {
+            if ( body.getStartDate() == null || body.getEndDate() == null || body.getStartDate().equals( "" )
+                    || body.getEndDate().equals( "" ) ) {
                 throw new ParseException( "Date", 1 );
             }
 
             // Parse in start/end dates as ZonedDateTimes
             // from ISO date/time or ISO date strings
-            ZonedDateTime start;
             try {
                 start = ZonedDateTime.parse( body.getStartDate() );
             }
@@ -81,7 +115,6 @@ public class APILogEntryController extends APIController {
                 start = LocalDate.parse( body.getStartDate() ).atStartOfDay( ZoneId.systemDefault() );
             }
 
-            ZonedDateTime end;
             try {
                 end = ZonedDateTime.parse( body.getEndDate() ).plusDays( 1 );
             }
@@ -92,54 +125,58 @@ public class APILogEntryController extends APIController {
             if ( start.isAfter( end ) ) {
                 return new ResponseEntity( errorResponse( "Start Date is after End Date" ), HttpStatus.NOT_ACCEPTABLE );
             }
-            entries = leservice.findByDateRange( LoggerUtil.currentUser(), start, end );
         }
         catch ( final ParseException ex ) {
-            entries = leservice.findAllForUser( LoggerUtil.currentUser() );
+            // no date range; search across all of the user's entries
         }
 
-        // If the entries array is null give an error response
-        if ( entries == null ) {
-            return new ResponseEntity( errorResponse( "Error retrieving Log Entries" ),
-                    HttpStatus.INTERNAL_SERVER_ERROR );
-        }
-
-        // Use only log entries that are viewable by the user
-        List<LogEntry> visible;
-        final User user = userService.findByName( LoggerUtil.currentUser() );
-        if ( user == null || user.getRoles() == null || user.getRoles().contains( Role.ROLE_PATIENT ) ) {
-            visible = new ArrayList<LogEntry>();
+        // Patients may only see patient-viewable events; everything else is
+        // filtered out by the query, so hidden entries never leave the
+        // database and the page counts only include what the user can see
+        final String username = LoggerUtil.currentUser();
+        final User user = currentUser.get();
+        final boolean isPatient = user == null || user.getRoles() == null
+                || user.getRoles().contains( Role.ROLE_PATIENT );
+        final Set<TransactionType> types = isPatient ? TransactionType.patientViewable() : null;
 
-            for ( int i = 0; i < entries.size(); i++ ) {
-                final LogEntry le = entries.get( i );
-                if ( le.getLogCode().isPatientViewable() ) {
-                    visible.add( entries.get( i ) );
-                }
-            }
+        // Only the requested page is loaded; when the client sends back the
+        // cursor of the last row it saw, the database seeks straight to it
+        // rather than skipping over every earlier page
+        final List<LogEntry> entries;
+        if ( null != cursor ) {
+            entries = leservice.findPageForUserAfter( username, start, end, types, cursor.getTime(), cursor.getId(),
+                    body.getPageLength() );
         }
         else {
-            visible = entries;
+            entries = leservice.findPageForUser( username, start, end, types, Math.max( body.getPage() - 1, 0 ),
+                    body.getPageLength() );
         }
+        final long total = leservice.countForUser( username, start, end, types );
 
-        final int numPages = 1 + visible.size() / body.getPageLength();
-
-        Collections.reverse( visible );
+        final int numPages = (int) Math.max( 1, ( total + body.getPageLength() - 1 ) / body.getPageLength() );
 
-        // Find only the entries that should show up on the page given the page
-        // and page length
-        final List<LogEntry> page = new ArrayList<LogEntry>();
-        for ( int i = 0; i < body.getPageLength(); i++ ) {
-            final int idx = ( body.getPage() - 1 ) * body.getPageLength() + i;
-            if ( idx >= 0 && visible.size() > idx ) {
-                page.add( visible.get( idx ) );
+        // Patients are shown the roles of whoever else was involved in each
+        // entry; look all of them up at once rather than once per row
+        final Map<String, User> others = new HashMap<String, User>();
+        if ( isPatient ) {
+            final Set<String> names = new HashSet<String>();
+            for ( final LogEntry le : entries ) {
+                final String other = le.getPrimaryUser().equals( username ) ? le.getSecondaryUser()
+                        : le.getPrimaryUser();
+                if ( null != other ) {
+                    names.add( other );
+                }
+            }
+            for ( final User other : userService.findByNames( names ) ) {
+                others.put( other.getUsername(), other );
             }
         }
 
         // Turn these log entries into proper table rows for the application to
         // display
         final List<LogEntryTableRow> table = new ArrayList<LogEntryTableRow>();
-        for ( int i = 0; i < page.size(); i++ ) {
-            final LogEntry le = page.get( i );
+        for ( int i = 0; i < entries.size(); i++ ) {
+            final LogEntry le = entries.get( i );
             final LogEntryTableRow row = new LogEntryTableRow();
 
             row.setPrimary( le.getPrimaryUser() );
@@ -150,19 +187,15 @@ public class APILogEntryController extends APIController {
             row.setDateTime( le.getTime().toOffsetDateTime().toString() );
             row.setTransactionType( le.getLogCode().getDescription() );
             row.setNumPages( numPages );
+            row.setCursor( new LogEntryCursor( le ).encode() );
 
-            if ( user == null || user.getRoles() == null || user.getRoles().contains( Role.ROLE_PATIENT ) ) {
+            if ( isPatient ) {
                 row.setPatient( true );
 
-                if ( le.getPrimaryUser().equals( LoggerUtil.currentUser() ) ) {
-                    final User secondary = userService.findByName( le.getSecondaryUser() );
-                    if ( secondary != null ) {
-                        row.setRole( secondary.getRoles().toString() );
-                    }
-                }
-                else {
-                    final User primary = userService.findByName( le.getPrimaryUser() );
-                    row.setRole( primary.getRoles().toString() );
+                final User other = others.get( le.getPrimaryUser().equals( username ) ? le.getSecondaryUser()
+                        : le.getPrimaryUser() );
+                if ( other != null ) {
+                    row.setRole( other.getRoles().toString() );
                 }
             }
 
@@ -170,10 +203,89 @@ public class APILogEntryController extends APIController {
         }
 
         // Create a log entry as long as the user is on the first page
-        if ( body.page == 1 ) {
-            loggerUtil.log( TransactionType.VIEW_USER_LOG, LoggerUtil.currentUser() );
+        if ( body.page == 1 && null == cursor ) {
+            loggerUtil.log( TransactionType.VIEW_USER_LOG, username );
         }
         return new ResponseEntity( table, HttpStatus.OK );
     }
 
+    /**
+     * Exports the audit log, optionally filtered by user, date and event type.
+     * The entries are streamed to the client as they are read from the
+     * database, so exports of any size can be taken without loading them all
+     * into memory. An export may run for up to `itrust2.audit.export.timeout-ms`
+     * (see WebMvcInterceptorConfiguration) before it is cut off.
+     *
+     * @param format
+     *            `ndjson` (the default) or `csv`
+     * @param user
+     *            Only export entries involving this user
+     * @param startDate
+     *            Only export entries from this date (ISO date or date/time) on
+     * @param endDate
+     *            Only export entries up to and including this date
+     * @param types
+     *            Only export entries with these TransactionTypes (by name)
+     * @return The log, or an error if a filter is invalid
+     */
+    @GetMapping ( BASE_PATH + "/logentries/export" )
+    @PreAuthorize ( "hasRole('ROLE_ADMIN')" )
+    public ResponseEntity exportEntries (
+            @RequestParam ( required = false, defaultValue = "ndjson" ) final String format,
+            @RequestParam ( required = false ) final String user,
+            @RequestParam ( required = false ) final String startDate,
+            @RequestParam ( required = false ) final String endDate,
+            @RequestParam ( name = "type", required = false ) final List<String> types ) {
+        final LogEntryExportService.Format fmt;
+        final ZonedDateTime start;
+        final ZonedDateTime end;
+        final Set<TransactionType> typeSet;
+        try {
+            fmt = LogEntryExportService.Format.valueOf( format.toUpperCase() );
+            start = null == startDate || startDate.isEmpty() ? null : parseDate( startDate );
+            end = null == endDate || endDate.isEmpty() ? null : parseDate( endDate ).plusDays( 1 ).minusNanos( 1 );
+            if ( null == types || types.isEmpty() ) {
+                typeSet = null;
+            }
+            else {
+                typeSet = EnumSet.noneOf( TransactionType.class );
+                for ( final String type : types ) {
+                    typeSet.add( TransactionType.valueOf( type ) );
+                }
+            }
+        }
+        catch ( final IllegalArgumentException | DateTimeParseException ex ) {
+            return new ResponseEntity( errorResponse( "Invalid export filter: " + ex.getMessage() ),
+                    HttpStatus.BAD_REQUEST );
+        }
+
+        loggerUtil.log( TransactionType.EXPORT_AUDIT_LOG, LoggerUtil.currentUser(), user,
+                "Exported audit log as " + fmt.getExtension() );
+
+        final StreamingResponseBody body = out -> exportService.export( user, start, end, typeSet, fmt, out );
+        return ResponseEntity.ok()
+                .header( HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"audit-log." + fmt.getExtension() + "\"" )
+                .contentType( MediaType.parseMediaType( fmt.getContentType() ) ).body( body );
+    }
+
+    /**
+     * Parses a date given either as an ISO date/time or an ISO date (taken as
+     * the start of that day)
+     *
+     * @param date
+     *            The date to parse
+     * @return The parsed date
+     * @throws DateTimeParseException
+     *             If the date is in neither format
+     */
+    private static ZonedDateTime parseDate ( final String date ) {
+        try {
+            return ZonedDateTime.parse( date );
+        }
+        catch ( final DateTimeParseException ex ) {
+            return LocalDate.parse( date ).atStartOfDay( ZoneId.systemDefault() );
+        }
+    }
+
 }
@@ -18,7 +18,7 @@ import edu.ncsu.csc.iTrust2.models.OfficeVisit;
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.services.OfficeVisitService;
-import edu.ncsu.csc.iTrust2.services.UserService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -36,9 +36,9 @@ public class APIOfficeVisitController extends APIController {
     @Autowired
     private OfficeVisitService officeVisitService;
 
-    /** User service */
+    /** The logged-in user */
     @Autowired
-    private UserService<User>  userService;
+    private CurrentUser        currentUser;
 
     /** LoggerUtil */
     @Autowired
@@ -64,7 +64,7 @@ public class APIOfficeVisitController extends APIController {
     @GetMapping ( BASE_PATH + "/officevisits/HCP" )
     @PreAuthorize ( "hasAnyRole('ROLE_HCP')" )
     public List<OfficeVisit> getOfficeVisitsForHCP () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         loggerUtil.log( TransactionType.VIEW_ALL_OFFICE_VISITS, self );
         final List<OfficeVisit> visits = officeVisitService.findByHcp( self );
         return visits;
@@ -79,7 +79,7 @@ public class APIOfficeVisitController extends APIController {
     @GetMapping ( BASE_PATH + "/officevisits/myofficevisits" )
     @PreAuthorize ( "hasAnyRole('ROLE_PATIENT')" )
     public List<OfficeVisit> getMyOfficeVisits () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         loggerUtil.log( TransactionType.VIEW_ALL_OFFICE_VISITS, self );
         return officeVisitService.findByPatient( self );
     }
@@ -94,7 +94,7 @@ public class APIOfficeVisitController extends APIController {
     @GetMapping ( BASE_PATH + "/officevisits/{id}" )
     @PreAuthorize ( "hasAnyRole('ROLE_HCP')" )
     public ResponseEntity getOfficeVisit ( @PathVariable final Long id ) {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         loggerUtil.log( TransactionType.GENERAL_CHECKUP_HCP_VIEW, self );
         if ( !officeVisitService.existsById( id ) ) {
             return new ResponseEntity( HttpStatus.NOT_FOUND );
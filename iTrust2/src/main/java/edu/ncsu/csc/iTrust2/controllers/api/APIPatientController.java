@@ -21,8 +21,8 @@ import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.services.CovidVaccineService;
 import edu.ncsu.csc.iTrust2.services.PatientService;
-import edu.ncsu.csc.iTrust2.services.UserService;
 import edu.ncsu.csc.iTrust2.services.VaccineOfficeVisitService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -46,11 +46,9 @@ public class APIPatientController extends APIController {
     @Autowired
     private VaccineOfficeVisitService vaccineOfficeVisitService;
 
-    /**
-     * User Service
-     */
+    /** The logged-in user */
     @Autowired
-    private UserService               userService;
+    private CurrentUser               currentUser;
 
     /**
      * Vaccine Service
@@ -85,8 +83,9 @@ public class APIPatientController extends APIController {
     @GetMapping ( BASE_PATH + "/patient" )
     @PreAuthorize ( "hasRole('ROLE_PATIENT')" )
     public ResponseEntity getPatient () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
-        final Patient patient = (Patient) patientService.findByName( self.getUsername() );
+        final User self = currentUser.get();
+        final Patient patient = self instanceof Patient ? (Patient) self
+                : (Patient) patientService.findByName( self.getUsername() );
         if ( patient == null ) {
             return new ResponseEntity( errorResponse( "Could not find a patient entry for you, " + self.getUsername() ),
                     HttpStatus.NOT_FOUND );
@@ -1,7 +1,7 @@
 package edu.ncsu.csc.iTrust2.controllers.api;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -15,11 +15,14 @@ import org.springframework.web.bind.annotation.RestController;
 
 import edu.ncsu.csc.iTrust2.forms.PersonnelForm;
 import edu.ncsu.csc.iTrust2.forms.display.ProviderWithStatistics;
+import edu.ncsu.csc.iTrust2.forms.display.SatisfactionSurveyStatistics;
 import edu.ncsu.csc.iTrust2.models.Personnel;
+import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.services.PersonnelService;
 import edu.ncsu.csc.iTrust2.services.SatisfactionSurveyStatisticsService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -41,6 +44,10 @@ public class APIPersonnelController extends APIController {
     @Autowired
     private PersonnelService                    service;
 
+    /** The logged-in user */
+    @Autowired
+    private CurrentUser                         currentUser;
+
     /** SatisfactionSurveyStats service */
     @Autowired
     private SatisfactionSurveyStatisticsService satisfactionSurveyStatisticsService;
@@ -88,7 +95,9 @@ public class APIPersonnelController extends APIController {
     @PreAuthorize ( "hasAnyRole('ROLE_HCP', 'ROLE_ADMIN')" )
     public ResponseEntity getCurrentPersonnel () {
         final String username = LoggerUtil.currentUser();
-        final Personnel personnel = (Personnel) service.findByName( username );
+        final User self = currentUser.get();
+        final Personnel personnel = self instanceof Personnel ? (Personnel) self
+                : (Personnel) service.findByName( username );
         if ( personnel == null ) {
             return new ResponseEntity( errorResponse( "Could not find a personnel entry for you, " + username ),
                     HttpStatus.NOT_FOUND );
@@ -150,14 +159,10 @@ public class APIPersonnelController extends APIController {
     @GetMapping ( BASE_PATH + "/personnel/getbyroles/{role}" )
     @PreAuthorize ( "hasAnyRole('ROLE_HCP', 'ROLE_ADMIN', 'ROLE_PATIENT')" )
     public ResponseEntity getPersonnelByRole ( @PathVariable ( "role" ) final String role ) {
-        final List<Personnel> allPersonnel = service.findAll();
-
         try {
             final Role desired = Role.valueOf( role );
 
-            allPersonnel.removeIf( e -> !e.getRoles().contains( desired ) );
-
-            return new ResponseEntity( allPersonnel, HttpStatus.OK );
+            return new ResponseEntity( service.findByRole( desired ), HttpStatus.OK );
         }
         catch ( final IllegalArgumentException iae ) {
             return new ResponseEntity( errorResponse( "Invalid role" ), HttpStatus.BAD_REQUEST );
@@ -176,14 +181,15 @@ public class APIPersonnelController extends APIController {
     @GetMapping ( BASE_PATH + "/personnel/getbyroles/{role}/statistics" )
     @PreAuthorize ( "hasAnyRole('ROLE_HCP', 'ROLE_ADMIN', 'ROLE_PATIENT')" )
     public ResponseEntity getPersonnelByRoleWithStatistics ( @PathVariable ( "role" ) final String role ) {
-        final List<Personnel> allPersonnel = service.findAll();
-
         try {
-            final List<ProviderWithStatistics> enriched = allPersonnel.stream()
-                    .filter( e -> e.getRoles().contains( Role.valueOf( role ) ) )
-                    .map( personnel -> new ProviderWithStatistics( personnel,
-                            satisfactionSurveyStatisticsService.findForHcp( personnel ) ) )
-                    .collect( Collectors.toList() );
+            // Statistics for every provider come from a single query
+            final List<Personnel> personnel = service.findByRole( Role.valueOf( role ) );
+            final List<SatisfactionSurveyStatistics> statistics = satisfactionSurveyStatisticsService
+                    .findForHcps( personnel );
+            final List<ProviderWithStatistics> enriched = new ArrayList<>( personnel.size() );
+            for ( int i = 0; i < personnel.size(); i++ ) {
+                enriched.add( new ProviderWithStatistics( personnel.get( i ), statistics.get( i ) ) );
+            }
 
             return new ResponseEntity( enriched, HttpStatus.OK );
         }
@@ -19,7 +19,7 @@ import edu.ncsu.csc.iTrust2.models.Prescription;
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.services.PrescriptionService;
-import edu.ncsu.csc.iTrust2.services.UserService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -41,9 +41,9 @@ public class APIPrescriptionController extends APIController {
     @Autowired
     private PrescriptionService prescriptionService;
 
-    /** User service */
+    /** The logged-in user */
     @Autowired
-    private UserService         userService;
+    private CurrentUser         currentUser;
 
     /**
      * Adds a new prescription to the system. Requires HCP permissions.
@@ -139,7 +139,7 @@ public class APIPrescriptionController extends APIController {
     @PreAuthorize ( "hasAnyRole('ROLE_HCP', 'ROLE_VIROLOGIST', 'ROLE_PATIENT')" )
     @GetMapping ( BASE_PATH + "/prescriptions" )
     public List<Prescription> getPrescriptions () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         if ( self.isDoctor() ) {
             // Return all prescriptions in system
             loggerUtil.log( TransactionType.PRESCRIPTION_VIEW, LoggerUtil.currentUser(),
@@ -10,9 +10,11 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import edu.ncsu.csc.iTrust2.forms.SatisfactionSurveyForm;
+import edu.ncsu.csc.iTrust2.forms.display.SatisfactionSurveyNotePage;
 import edu.ncsu.csc.iTrust2.forms.display.SatisfactionSurveyStatistics;
 import edu.ncsu.csc.iTrust2.models.OfficeVisit;
 import edu.ncsu.csc.iTrust2.models.SatisfactionSurvey;
@@ -33,6 +35,9 @@ import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 @SuppressWarnings ( { "unchecked", "rawtypes" } )
 public class APISatisfactionSurveyController extends APIController {
 
+    /** Most notes that can be asked for at once */
+    private static final int                    MAX_NOTES_PAGE_LENGTH = 100;
+
     /** SatisfactionSurvey service */
     @Autowired
     private SatisfactionSurveyService           satisfactionSurveyService;
@@ -137,6 +142,50 @@ public class APISatisfactionSurveyController extends APIController {
         return new ResponseEntity( stats, HttpStatus.OK );
     }
 
+    /**
+     * Returns a page of the notes left for an HCP on their surveys, newest
+     * first. To get the next page, pass the `next` cursor from this one.
+     *
+     * @param hcpName
+     *            the hcp username whose notes are to be returned
+     * @param cursor
+     *            cursor from the previous page, if any
+     * @param minSatisfaction
+     *            only return notes with at least this average satisfaction
+     * @param maxSatisfaction
+     *            only return notes with at most this average satisfaction
+     * @param pageLength
+     *            most notes to return, up to 100
+     * @return The page of notes
+     */
+    @GetMapping ( BASE_PATH + "/surveys/statistics/{hcp}/notes" )
+    @PreAuthorize ( "hasRole('ROLE_ADMIN')" )
+    public ResponseEntity getSatisfactionSurveyNotes ( @PathVariable ( "hcp" ) final String hcpName,
+            @RequestParam ( required = false ) final Long cursor,
+            @RequestParam ( required = false ) final Integer minSatisfaction,
+            @RequestParam ( required = false ) final Integer maxSatisfaction,
+            @RequestParam ( defaultValue = "20" ) final int pageLength ) {
+        if ( pageLength < 1 || pageLength > MAX_NOTES_PAGE_LENGTH ) {
+            return new ResponseEntity( errorResponse( "Page length must be between 1 and " + MAX_NOTES_PAGE_LENGTH ),
+                    HttpStatus.BAD_REQUEST );
+        }
+        if ( ( null != minSatisfaction && ( minSatisfaction < 0 || minSatisfaction > 5 ) )
+                || ( null != maxSatisfaction && ( maxSatisfaction < 0 || maxSatisfaction > 5 ) ) ) {
+            return new ResponseEntity( errorResponse( "Satisfaction must be between 0 and 5" ),
+                    HttpStatus.BAD_REQUEST );
+        }
+
+        final SatisfactionSurveyNotePage notes = satisfactionSurveyStatisticsService.findNotes( hcpName, cursor,
+                minSatisfaction, maxSatisfaction, pageLength );
+
+        // Log as the statistics do, but only for the first page
+        if ( null == cursor ) {
+            loggerUtil.log( TransactionType.ADMIN_VIEW_STATS, LoggerUtil.currentUser(), hcpName,
+                    "Check provider survey notes" );
+        }
+        return new ResponseEntity( notes, HttpStatus.OK );
+    }
+
     /**
      * This method returns the overall average stats for hcps
      *
@@ -150,4 +199,21 @@ public class APISatisfactionSurveyController extends APIController {
         return new ResponseEntity( statistics, HttpStatus.OK );
     }
 
+    /**
+     * Rebuilds the totals behind every HCP's statistics from their surveys.
+     * The totals are kept up to date as surveys are saved, so this is only
+     * needed to backfill them or to correct them.
+     *
+     * @return The number of HCPs with surveys
+     */
+    @PostMapping ( BASE_PATH + "/surveys/statistics/rebuild" )
+    @PreAuthorize ( "hasRole('ROLE_ADMIN')" )
+    public ResponseEntity rebuildSatisfactionSurveyStatistics () {
+        final int hcps = satisfactionSurveyService.rebuildTotals();
+        loggerUtil.log( TransactionType.ADMIN_REBUILD_STATS, LoggerUtil.currentUser(),
+                "Rebuilt survey totals for " + hcps + " providers" );
+        return new ResponseEntity( successResponse( "Rebuilt survey totals for " + hcps + " providers" ),
+                HttpStatus.OK );
+    }
+
 }
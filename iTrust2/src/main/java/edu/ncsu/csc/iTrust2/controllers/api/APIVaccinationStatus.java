@@ -34,8 +34,8 @@ import edu.ncsu.csc.iTrust2.models.Personnel;
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.VaccineOfficeVisit;
 import edu.ncsu.csc.iTrust2.services.CovidVaccineService;
-import edu.ncsu.csc.iTrust2.services.UserService;
 import edu.ncsu.csc.iTrust2.services.VaccineOfficeVisitService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -53,9 +53,9 @@ public class APIVaccinationStatus extends APIController {
     @Autowired
     private LoggerUtil                loggerUtil;
 
-    /** User service */
+    /** The logged-in user */
     @Autowired
-    private UserService<User>         userService;
+    private CurrentUser               currentUser;
 
     /** User service */
     @Autowired
@@ -79,7 +79,7 @@ public class APIVaccinationStatus extends APIController {
     @GetMapping ( BASE_PATH + "/vaccinationstatus/test" )
     @PreAuthorize ( "hasRole('ROLE_PATIENT')" )
     public ResponseEntity generateCertificateLocally () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         final boolean fullyVaccinated = false;
         if ( self == null ) {
             return new ResponseEntity( errorResponse( "Patient not found" ), HttpStatus.NOT_FOUND );
@@ -218,7 +218,7 @@ public class APIVaccinationStatus extends APIController {
     @GetMapping ( value = BASE_PATH + "/vaccinationstatus", produces = MediaType.APPLICATION_PDF_VALUE )
     @PreAuthorize ( "hasRole('ROLE_PATIENT')" )
     public ResponseEntity<ByteArrayResource> generateCertificate () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         final boolean fullyVaccinated = false;
         if ( self == null ) {
             return new ResponseEntity( errorResponse( "Patient not found" ), HttpStatus.NOT_FOUND );
@@ -26,9 +26,9 @@ import edu.ncsu.csc.iTrust2.models.VaccineOfficeVisit;
 import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.models.enums.Status;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
-import edu.ncsu.csc.iTrust2.services.UserService;
 import edu.ncsu.csc.iTrust2.services.VaccineAppointmentRequestService;
 import edu.ncsu.csc.iTrust2.services.VaccineOfficeVisitService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -58,9 +58,9 @@ public class APIVaccineAppointmentRequestController extends APIController {
     @Autowired
     private LoggerUtil                       loggerUtil;
 
-    /** User service */
+    /** The logged-in user */
     @Autowired
-    private UserService<User>                userService;
+    private CurrentUser                      currentUser;
 
     /**
      * Retrieves a list of all VaccineAppointmentRequests in the database
@@ -87,7 +87,7 @@ public class APIVaccineAppointmentRequestController extends APIController {
     @GetMapping ( BASE_PATH + "/vaccineappointmentrequest" )
     @PreAuthorize ( "hasAnyRole('ROLE_PATIENT')" )
     public List<VaccineAppointmentRequest> getVaccineAppointmentRequestsForPatient () {
-        final User patient = userService.findByName( LoggerUtil.currentUser() );
+        final User patient = currentUser.get();
         return service.findByPatient( patient ).stream().filter( e -> e.getStatus().equals( Status.APPROVED ) )
                 .collect( Collectors.toList() );
     }
@@ -102,7 +102,7 @@ public class APIVaccineAppointmentRequestController extends APIController {
     @PreAuthorize ( "hasAnyRole('ROLE_HCP', 'ROLE_VACCINATOR')" )
     public List<VaccineAppointmentRequest> getVaccineAppointmentRequestsForHCP () {
 
-        final User hcp = userService.findByName( LoggerUtil.currentUser() );
+        final User hcp = currentUser.get();
 
         return service.findByHcp( hcp ).stream().filter( e -> e.getStatus().equals( Status.PENDING ) )
                 .collect( Collectors.toList() );
@@ -116,7 +116,7 @@ public class APIVaccineAppointmentRequestController extends APIController {
     @PreAuthorize ( "hasAnyRole('ROLE_VACCINATOR')" )
     public List<VaccineAppointmentRequest> getVaccineAppointmentRequestsForVaccinator () {
 
-        final User hcp = userService.findByName( LoggerUtil.currentUser() );
+        final User hcp = currentUser.get();
 
         return service.findByHcp( hcp ).stream().collect( Collectors.toList() );
 
@@ -138,7 +138,7 @@ public class APIVaccineAppointmentRequestController extends APIController {
             loggerUtil.log( TransactionType.APPOINTMENT_REQUEST_VIEWED, request.getPatient(), request.getHcp() );
 
             /* Patient can't look at anyone else's requests */
-            final User self = userService.findByName( LoggerUtil.currentUser() );
+            final User self = currentUser.get();
             if ( self.getRoles().contains( Role.ROLE_PATIENT ) && !request.getPatient().equals( self ) ) {
                 return new ResponseEntity( HttpStatus.UNAUTHORIZED );
             }
@@ -254,7 +254,7 @@ public class APIVaccineAppointmentRequestController extends APIController {
         }
 
         /* Patient can't look at anyone else's requests */
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         if ( self.getRoles().contains( Role.ROLE_PATIENT ) && !request.getPatient().equals( self ) ) {
             return new ResponseEntity( errorResponse( "Could Not Delete: Unauthorized" ), HttpStatus.UNAUTHORIZED );
         }
@@ -298,7 +298,7 @@ public class APIVaccineAppointmentRequestController extends APIController {
             }
 
             /* Patient can't look at anyone else's requests */
-            final User self = userService.findByName( LoggerUtil.currentUser() );
+            final User self = currentUser.get();
             if ( self.getRoles().contains( Role.ROLE_PATIENT ) && !request.getPatient().equals( self ) ) {
                 return new ResponseEntity( HttpStatus.UNAUTHORIZED );
             }
@@ -338,7 +338,7 @@ public class APIVaccineAppointmentRequestController extends APIController {
     @GetMapping ( BASE_PATH + "/vaccineAppointments" )
     @PreAuthorize ( "hasAnyRole('ROLE_HCP', 'ROLE_VACCINATOR')" )
     public List<VaccineAppointmentRequest> upcomingVaccineAppointments () {
-        final User hcp = userService.findByName( LoggerUtil.currentUser() );
+        final User hcp = currentUser.get();
 
         final List<VaccineAppointmentRequest> appointment = service.findByHcp( hcp ).stream()
                 .filter( e -> e.getStatus().equals( Status.APPROVED ) ).collect( Collectors.toList() );
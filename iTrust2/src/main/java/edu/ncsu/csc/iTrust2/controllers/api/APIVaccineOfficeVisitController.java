@@ -22,6 +22,7 @@ import edu.ncsu.csc.iTrust2.models.VaccineOfficeVisit;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.services.UserService;
 import edu.ncsu.csc.iTrust2.services.VaccineOfficeVisitService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
 
 /**
@@ -43,6 +44,10 @@ public class APIVaccineOfficeVisitController extends APIController {
     @Autowired
     private UserService<User>         userService;
 
+    /** The logged-in user */
+    @Autowired
+    private CurrentUser               currentUser;
+
     /** LoggerUtil */
     @Autowired
     private LoggerUtil                loggerUtil;
@@ -67,7 +72,7 @@ public class APIVaccineOfficeVisitController extends APIController {
     @GetMapping ( BASE_PATH + "/vaccineofficevisits/HCP" )
     @PreAuthorize ( "hasAnyRole('ROLE_HCP', 'ROLE_VACCINATOR')" )
     public List<VaccineOfficeVisit> getVaccineOfficeVisitsForHCP () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         loggerUtil.log( TransactionType.VIEW_ALL_VACCINE_OFFICE_VISITS, self );
         final List<VaccineOfficeVisit> visits = vaccineOfficeVisitService.findByHcp( self );
         return visits;
@@ -82,7 +87,7 @@ public class APIVaccineOfficeVisitController extends APIController {
     @GetMapping ( BASE_PATH + "/vaccineofficevisits/myvaccineofficevisits" )
     @PreAuthorize ( "hasAnyRole('ROLE_PATIENT')" )
     public List<VaccineOfficeVisit> getMyVaccineOfficeVisits () {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         loggerUtil.log( TransactionType.VACCINE_OFFICE_VISIT_PATIENT_VIEW, self );
         return vaccineOfficeVisitService.findByPatient( self );
     }
@@ -98,7 +103,7 @@ public class APIVaccineOfficeVisitController extends APIController {
     @GetMapping ( BASE_PATH + "/vaccineofficevisits/{id}" )
     @PreAuthorize ( "hasAnyRole('ROLE_HCP', 'ROLE_VACCINATOR')" )
     public ResponseEntity getVaccineOfficeVisit ( @PathVariable final Long id ) {
-        final User self = userService.findByName( LoggerUtil.currentUser() );
+        final User self = currentUser.get();
         loggerUtil.log( TransactionType.VACCINE_OFFICE_VISIT_HCP_VIEW, self );
         if ( !vaccineOfficeVisitService.existsById( id ) ) {
             return new ResponseEntity( HttpStatus.NOT_FOUND );
@@ -0,0 +1,105 @@
+package edu.ncsu.csc.iTrust2.controllers.api.comm;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+
+import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+
+/**
+ * An opaque position in a list of log entries, used to ask for the page that
+ * follows a given entry. Log entries are listed newest first, ordered by time
+ * and then ID, so the time and ID of the last entry on a page are enough to
+ * find where the next page starts. The client should treat the encoded form
+ * as an arbitrary string and just send it back as-is.
+ */
+public class LogEntryCursor {
+
+    /** Time of the last entry seen */
+    private final ZonedDateTime time;
+
+    /** ID of the last entry seen */
+    private final Long          id;
+
+    /**
+     * Creates a cursor pointing just past the given entry
+     *
+     * @param entry
+     *            Last entry on a page
+     */
+    public LogEntryCursor ( final LogEntry entry ) {
+        this( entry.getTime(), entry.getId() );
+    }
+
+    /**
+     * Creates a cursor from a time and ID
+     *
+     * @param time
+     *            Time of the last entry seen
+     * @param id
+     *            ID of the last entry seen
+     */
+    public LogEntryCursor ( final ZonedDateTime time, final Long id ) {
+        this.time = time;
+        this.id = id;
+    }
+
+    /**
+     * Decodes a cursor that was previously handed out by `encode()`
+     *
+     * @param encoded
+     *            The encoded cursor
+     * @return The cursor, or null if none was provided
+     * @throws IllegalArgumentException
+     *             if the cursor is not one we handed out
+     */
+    public static LogEntryCursor decode ( final String encoded ) {
+        if ( null == encoded || encoded.isEmpty() ) {
+            return null;
+        }
+        try {
+            final String raw = new String( Base64.getUrlDecoder().decode( encoded ), StandardCharsets.UTF_8 );
+            final String[] parts = raw.split( "/" );
+            if ( parts.length != 2 ) {
+                throw new IllegalArgumentException( "Invalid cursor" );
+            }
+            final ZonedDateTime time = Instant.parse( parts[0] ).atZone( ZoneId.systemDefault() );
+            return new LogEntryCursor( time, Long.valueOf( parts[1] ) );
+        }
+        catch ( final DateTimeException e ) {
+            throw new IllegalArgumentException( "Invalid cursor", e );
+        }
+    }
+
+    /**
+     * Encodes this cursor into an opaque string
+     *
+     * @return The encoded cursor
+     */
+    public String encode () {
+        final String raw = time.toInstant().toString() + "/" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString( raw.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Gets the time of the last entry seen
+     *
+     * @return The time
+     */
+    public ZonedDateTime getTime () {
+        return time;
+    }
+
+    /**
+     * Gets the ID of the last entry seen
+     *
+     * @return The ID
+     */
+    public Long getId () {
+        return id;
+    }
+
+}
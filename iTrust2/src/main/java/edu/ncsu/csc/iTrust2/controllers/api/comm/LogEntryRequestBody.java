@@ -20,6 +20,13 @@ public class LogEntryRequestBody {
     /** Number of items per page */
     public int    pageLength;
 
+    /**
+     * Cursor of the last entry on the previous page (optional). When present,
+     * the page starts right after that entry and `page` is only used for
+     * display.
+     */
+    public String cursor;
+
     /**
      * Empty Constructor required for spring to use this as a RequestBody
      */
@@ -103,4 +110,23 @@ public class LogEntryRequestBody {
         this.pageLength = pageLength;
     }
 
+    /**
+     * Gets the cursor of the last entry on the previous page.
+     *
+     * @return cursor, or null to start from the page number
+     */
+    public String getCursor () {
+        return cursor;
+    }
+
+    /**
+     * Sets the cursor of the last entry on the previous page.
+     *
+     * @param cursor
+     *            cursor from a previously returned row
+     */
+    public void setCursor ( final String cursor ) {
+        this.cursor = cursor;
+    }
+
 }
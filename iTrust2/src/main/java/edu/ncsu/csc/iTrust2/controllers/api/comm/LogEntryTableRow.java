@@ -22,6 +22,8 @@ public class LogEntryTableRow {
     private boolean isPatient = false;
     /** total number of pages in the table */
     private int     numPages  = 1;
+    /** cursor to request the entries that follow this one */
+    private String  cursor;
 
     /**
      * Empty constructor so that Spring is able to use this class for
@@ -165,4 +167,25 @@ public class LogEntryTableRow {
         this.transactionType = transactionType;
     }
 
+    /**
+     * Gets the cursor that can be sent back to get the entries following this
+     * one.
+     *
+     * @return cursor for this row
+     */
+    public String getCursor () {
+        return cursor;
+    }
+
+    /**
+     * Sets the cursor that can be sent back to get the entries following this
+     * one.
+     *
+     * @param cursor
+     *            cursor for this row
+     */
+    public void setCursor ( final String cursor ) {
+        this.cursor = cursor;
+    }
+
 }
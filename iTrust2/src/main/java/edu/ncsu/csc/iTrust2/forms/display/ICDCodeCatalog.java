@@ -0,0 +1,65 @@
+package edu.ncsu.csc.iTrust2.forms.display;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.util.DigestUtils;
+
+import edu.ncsu.csc.iTrust2.models.ICDCode;
+
+/**
+ * The ICD codes that one kind of user can diagnose with, along with a version
+ * that changes whenever the codes do, so that clients can tell if the copy
+ * they have is still current. Catalogs are shared between requests, so
+ * neither the list nor the codes in it can be modified.
+ */
+public class ICDCodeCatalog {
+
+    /**
+     * The codes in the catalog
+     */
+    private final List<ICDCode> codes;
+
+    /**
+     * Version of the catalog; a hash of the codes in it
+     */
+    private final String        version;
+
+    /**
+     * Creates a catalog of the given codes
+     *
+     * @param codes
+     *            The codes in the catalog
+     */
+    public ICDCodeCatalog ( final List<ICDCode> codes ) {
+        this.codes = Collections.unmodifiableList( codes );
+
+        final StringBuilder contents = new StringBuilder();
+        for ( final ICDCode code : codes ) {
+            contents.append( code.getId() ).append( '\t' ).append( code.getCode() ).append( '\t' )
+                    .append( code.getDescription() ).append( '\t' ).append( code.getIsOphthalmology() )
+                    .append( '\n' );
+        }
+        this.version = DigestUtils.md5DigestAsHex( contents.toString().getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Get the codes in the catalog
+     *
+     * @return Codes; the list cannot be modified
+     */
+    public List<ICDCode> getCodes () {
+        return codes;
+    }
+
+    /**
+     * Get the version of the catalog
+     *
+     * @return Version
+     */
+    public String getVersion () {
+        return version;
+    }
+
+}
@@ -0,0 +1,72 @@
+package edu.ncsu.csc.iTrust2.forms.display;
+
+import java.util.List;
+
+/**
+ * A page of the notes left for an HCP on their Satisfaction Surveys, newest
+ * first, along with the cursor to ask for to get the next page
+ */
+public class SatisfactionSurveyNotePage {
+
+    /**
+     * The notes on this page
+     */
+    private List<SatisfactionSurveyNote> notes;
+
+    /**
+     * Cursor for the page after this one, or null if this is the last page
+     */
+    private Long                         next;
+
+    /**
+     * Creates a page of notes
+     *
+     * @param notes
+     *            The notes on the page
+     * @param next
+     *            Cursor for the next page, or null if this is the last
+     */
+    public SatisfactionSurveyNotePage ( final List<SatisfactionSurveyNote> notes, final Long next ) {
+        this.notes = notes;
+        this.next = next;
+    }
+
+    /**
+     * Get the notes on this page
+     *
+     * @return Notes
+     */
+    public List<SatisfactionSurveyNote> getNotes () {
+        return notes;
+    }
+
+    /**
+     * Set the notes on this page
+     *
+     * @param notes
+     *            Notes
+     */
+    public void setNotes ( final List<SatisfactionSurveyNote> notes ) {
+        this.notes = notes;
+    }
+
+    /**
+     * Get the cursor for the next page
+     *
+     * @return Cursor, or null if this is the last page
+     */
+    public Long getNext () {
+        return next;
+    }
+
+    /**
+     * Set the cursor for the next page
+     *
+     * @param next
+     *            Cursor, or null if this is the last page
+     */
+    public void setNext ( final Long next ) {
+        this.next = next;
+    }
+
+}
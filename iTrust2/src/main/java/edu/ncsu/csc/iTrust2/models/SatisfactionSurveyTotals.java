@@ -0,0 +1,171 @@
+package edu.ncsu.csc.iTrust2.models;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Running totals of the SatisfactionSurveys for a single HCP, so that their
+ * statistics can be read without looking at the surveys. The totals are kept
+ * up to date by the SatisfactionSurveyService as surveys are saved, in the
+ * same transaction, and can be rebuilt from the surveys at any time.
+ *
+ * The wait times are totalled by their codes; averages are worked out from
+ * the totals when statistics are asked for.
+ */
+@Entity
+@Table ( name = "satisfaction_survey_totals" )
+public class SatisfactionSurveyTotals extends DomainObject {
+
+    /** Username of the HCP the surveys are about */
+    @Id
+    @Column ( name = "hcp", columnDefinition = "varchar(100)" )
+    private String hcp;
+
+    /** Number of surveys */
+    @Column ( name = "surveys", nullable = false )
+    private long   surveys;
+
+    /** Total visit satisfaction */
+    @Column ( name = "visit_satisfaction", nullable = false )
+    private long   visitSatisfaction;
+
+    /** Total treatment satisfaction */
+    @Column ( name = "treatment_satisfaction", nullable = false )
+    private long   treatmentSatisfaction;
+
+    /** Total of the waiting room time codes */
+    @Column ( name = "waiting_room_time", nullable = false )
+    private long   waitingRoomTime;
+
+    /** Total of the examination response time codes */
+    @Column ( name = "examination_response_time", nullable = false )
+    private long   examinationResponseTime;
+
+    /**
+     * Empty constructor, for Hibernate
+     */
+    public SatisfactionSurveyTotals () {
+    }
+
+    /**
+     * Creates empty totals for an HCP
+     *
+     * @param hcp
+     *            Username of the HCP
+     */
+    public SatisfactionSurveyTotals ( final String hcp ) {
+        this.hcp = hcp;
+    }
+
+    @Override
+    public String getId () {
+        return hcp;
+    }
+
+    /**
+     * Gets the username of the HCP
+     *
+     * @return HCP username
+     */
+    public String getHcp () {
+        return hcp;
+    }
+
+    /**
+     * Gets the number of surveys
+     *
+     * @return Number of surveys
+     */
+    public long getSurveys () {
+        return surveys;
+    }
+
+    /**
+     * Sets the number of surveys
+     *
+     * @param surveys
+     *            Number of surveys
+     */
+    public void setSurveys ( final long surveys ) {
+        this.surveys = surveys;
+    }
+
+    /**
+     * Gets the total visit satisfaction
+     *
+     * @return Total visit satisfaction
+     */
+    public long getVisitSatisfaction () {
+        return visitSatisfaction;
+    }
+
+    /**
+     * Sets the total visit satisfaction
+     *
+     * @param visitSatisfaction
+     *            Total visit satisfaction
+     */
+    public void setVisitSatisfaction ( final long visitSatisfaction ) {
+        this.visitSatisfaction = visitSatisfaction;
+    }
+
+    /**
+     * Gets the total treatment satisfaction
+     *
+     * @return Total treatment satisfaction
+     */
+    public long getTreatmentSatisfaction () {
+        return treatmentSatisfaction;
+    }
+
+    /**
+     * Sets the total treatment satisfaction
+     *
+     * @param treatmentSatisfaction
+     *            Total treatment satisfaction
+     */
+    public void setTreatmentSatisfaction ( final long treatmentSatisfaction ) {
+        this.treatmentSatisfaction = treatmentSatisfaction;
+    }
+
+    /**
+     * Gets the total of the waiting room time codes
+     *
+     * @return Total waiting room time
+     */
+    public long getWaitingRoomTime () {
+        return waitingRoomTime;
+    }
+
+    /**
+     * Sets the total of the waiting room time codes
+     *
+     * @param waitingRoomTime
+     *            Total waiting room time
+     */
+    public void setWaitingRoomTime ( final long waitingRoomTime ) {
+        this.waitingRoomTime = waitingRoomTime;
+    }
+
+    /**
+     * Gets the total of the examination response time codes
+     *
+     * @return Total examination response time
+     */
+    public long getExaminationResponseTime () {
+        return examinationResponseTime;
+    }
+
+    /**
+     * Sets the total of the examination response time codes
+     *
+     * @param examinationResponseTime
+     *            Total examination response time
+     */
+    public void setExaminationResponseTime ( final long examinationResponseTime ) {
+        this.examinationResponseTime = examinationResponseTime;
+    }
+
+}
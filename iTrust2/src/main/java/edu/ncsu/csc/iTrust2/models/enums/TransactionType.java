@@ -1,5 +1,9 @@
 package edu.ncsu.csc.iTrust2.models.enums;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * A TransactionType represents an event that took place in the system and that
  * is to be logged. This is used to provide a code that can easily be saved in
@@ -601,7 +605,23 @@ public enum TransactionType {
     /**
      * When an HTTP request got intercepted, generic transaction type.
      */
-    HTTP_REQUEST ( 9001, "HTTP Request was intercepted on the system", false );
+    HTTP_REQUEST ( 9001, "HTTP Request was intercepted on the system", false ),
+
+    /*
+     * LogEntry stores the position of its TransactionType rather than the
+     * code, so new types must be added below here to keep existing entries
+     * meaning the same thing.
+     */
+
+    /**
+     * Admin exports the audit log
+     */
+    EXPORT_AUDIT_LOG ( 1302, "Audit log exported", false ),
+
+    /**
+     * Admin rebuilds the totals behind average ratings
+     */
+    ADMIN_REBUILD_STATS ( 1507, "Admin rebuilds average ratings", false );
 
     /**
      * Creates a TransactionType for logging events
@@ -623,15 +643,30 @@ public enum TransactionType {
     /**
      * Code of the TransactionType, from the iTrust2 wiki.
      */
-    private int     code;
+    private int                               code;
     /**
      * Description of the event
      */
-    private String  description;
+    private String                            description;
     /**
      * Whether the patient can view the event
      */
-    private boolean patientView;
+    private boolean                           patientView;
+
+    /**
+     * Every TransactionType that patients are allowed to see, computed once
+     */
+    private static final Set<TransactionType> PATIENT_VIEWABLE;
+
+    static {
+        final Set<TransactionType> viewable = EnumSet.noneOf( TransactionType.class );
+        for ( final TransactionType type : values() ) {
+            if ( type.isPatientViewable() ) {
+                viewable.add( type );
+            }
+        }
+        PATIENT_VIEWABLE = Collections.unmodifiableSet( viewable );
+    }
 
     /**
      * Retrieves the code of this TransactionType
@@ -660,4 +695,14 @@ public enum TransactionType {
         return patientView;
     }
 
+    /**
+     * Retrieves every TransactionType that patients are allowed to view. The
+     * returned set cannot be modified.
+     *
+     * @return Patient-viewable TransactionTypes
+     */
+    public static Set<TransactionType> patientViewable () {
+        return PATIENT_VIEWABLE;
+    }
+
 }
@@ -8,6 +8,8 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
 import com.google.gson.annotations.JsonAdapter;
@@ -21,12 +23,20 @@ import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
  * Class that represents a LogEntry that is created in response to certain user
  * actions. Contains a required TransactionType code (specifying the event that
  * happened), a username, and a time when the event occurred. Has support for an
- * optional secondary user and message for further elaboration
+ * optional secondary user and message for further elaboration.
+ *
+ * Entries are almost always looked up by user and time, so the table is
+ * indexed on (primaryUser, time) and (secondaryUser, time). Old entries are
+ * moved out a month at a time (see LogEntryArchiveService), which needs the
+ * index on time alone.
  *
  * @author Kai Presler-Marshall
  *
  */
 @Entity
+@Table ( indexes = { @Index ( name = "idx_logentry_primary_time", columnList = "primaryUser, time" ),
+        @Index ( name = "idx_logentry_secondary_time", columnList = "secondaryUser, time" ),
+        @Index ( name = "idx_logentry_time", columnList = "time" ) } )
 public class LogEntry extends DomainObject {
 
     /**
@@ -107,13 +117,13 @@ public class LogEntry extends DomainObject {
     }
 
     /**
-     * Sets the ID on the LogEntry. Used by Hibernate.
+     * Sets the ID on the LogEntry. Used by Hibernate, and to restore the ID
+     * of an entry read back out of the archive.
      *
      * @param id
      *            New ID of the LogEntry
      */
-    @SuppressWarnings ( "unused" )
-    private void setId ( final Long id ) {
+    public void setId ( final Long id ) {
         this.id = id;
     }
 
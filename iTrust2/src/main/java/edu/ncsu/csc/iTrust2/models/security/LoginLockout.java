@@ -8,8 +8,10 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
 
 import com.google.gson.annotations.JsonAdapter;
 
@@ -24,11 +26,18 @@ import edu.ncsu.csc.iTrust2.models.User;
  * result in a LoginBan. Upon the elevation to a LoginBan, all associated
  * LoginLockout objects are deleted.
  *
+ * Lockouts are looked up by IP or user within a recent window of time, so the
+ * table is indexed on (ip, time) and (user_id, time). Old lockouts are purged
+ * periodically by the LoginPurgeService, which finds them by time alone.
+ *
  * @author Thomas
  * @author Kai Presler-Marshall
  *
  */
 @Entity
+@Table ( indexes = { @Index ( name = "idx_loginlockout_ip_time", columnList = "ip, time" ),
+        @Index ( name = "idx_loginlockout_user_time", columnList = "user_id, time" ),
+        @Index ( name = "idx_loginlockout_time", columnList = "time" ) } )
 public class LoginLockout extends DomainObject {
 
     /** ID of the LoginLockout */
@@ -1,7 +1,12 @@
 package edu.ncsu.csc.iTrust2.repositories;
 
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
+
 import edu.ncsu.csc.iTrust2.models.Personnel;
 import edu.ncsu.csc.iTrust2.models.User;
+import edu.ncsu.csc.iTrust2.models.enums.Role;
 
 /**
  * Repository for interacting with Personnel model. Method implementations
@@ -13,4 +18,15 @@ import edu.ncsu.csc.iTrust2.models.User;
  */
 public interface PersonnelRepository <T extends User> extends UserRepository<Personnel> {
 
+    /**
+     * Finds all Personnel with the given Role, along with all of their roles,
+     * in a single query. Only the matching rows of the roles table are read.
+     *
+     * @param role
+     *            Role to look for
+     * @return Matching Personnel, by username
+     */
+    @Query ( "SELECT DISTINCT p FROM Personnel p JOIN p.roles r LEFT JOIN FETCH p.roles WHERE r = ?1 ORDER BY p.username" )
+    public List<Personnel> findByRole ( Role role );
+
 }
@@ -1,10 +1,14 @@
 package edu.ncsu.csc.iTrust2.repositories;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import edu.ncsu.csc.iTrust2.models.SatisfactionSurvey;
+import edu.ncsu.csc.iTrust2.models.enums.WaitTime;
 
 /**
  * Repository for interacting with AppointmentRequest model. Method
@@ -15,6 +19,15 @@ import edu.ncsu.csc.iTrust2.models.SatisfactionSurvey;
  */
 public interface SatisfactionSurveyRepository extends JpaRepository<SatisfactionSurvey, Long> {
 
+    /** Selects the totals of surveys; add any conditions, then the grouping */
+    String TOTALS       = "SELECT s.hcp.username AS hcp, s.waitingRoomTime AS waitingRoomTime, "
+            + "s.examinationResponseTime AS examinationResponseTime, COUNT(s) AS surveys, "
+            + "SUM(s.visitSatisfaction) AS visitSatisfaction, SUM(s.treatmentSatisfaction) AS treatmentSatisfaction "
+            + "FROM SatisfactionSurvey s ";
+
+    /** Groups the totals of surveys by HCP and wait times */
+    String TOTALS_GROUP = "GROUP BY s.hcp.username, s.waitingRoomTime, s.examinationResponseTime";
+
     /**
      * Find all SatisfactionSurveys for the given HCP
      *
@@ -44,4 +57,113 @@ public interface SatisfactionSurveyRepository extends JpaRepository<Satisfaction
      */
     public List<SatisfactionSurvey> findByHcpUsernameAndPatientUsername ( String hcp, String patient );
 
+    /**
+     * Totals the SatisfactionSurveys for each of the given HCPs, in a single
+     * query. There is one row for each HCP and combination of wait times they
+     * have been rated with, so at most 36 per HCP however many surveys there
+     * are; HCPs without any surveys have no rows.
+     *
+     * @param hcps
+     *            HCP usernames to total surveys for
+     * @return Totals, by HCP and wait times
+     */
+    @Query ( TOTALS + "WHERE s.hcp.username IN ?1 " + TOTALS_GROUP )
+    public List<Totals> totalByHcp ( Collection<String> hcps );
+
+    /**
+     * Totals the SatisfactionSurveys for every HCP, as in
+     * {@link #totalByHcp(Collection)}
+     *
+     * @return Totals, by HCP and wait times
+     */
+    @Query ( TOTALS + TOTALS_GROUP )
+    public List<Totals> totalAll ();
+
+    /**
+     * Finds a page of the ratings and comments from the SatisfactionSurveys
+     * for an HCP, newest first, without loading the surveys themselves. This
+     * is a keyset query: rather than skipping over earlier pages, it seeks
+     * directly to the last survey the caller saw, so every page costs the
+     * same no matter how deep into the results it is.
+     *
+     * @param hcp
+     *            HCP username to search by
+     * @param before
+     *            Only find surveys older than (with IDs below) this
+     * @param minTotal
+     *            Smallest visit plus treatment satisfaction to include
+     * @param maxTotal
+     *            Largest visit plus treatment satisfaction to include
+     * @param pageable
+     *            Size of the page to retrieve
+     * @return Notes, newest first
+     */
+    @Query ( "SELECT s.id AS id, s.visitSatisfaction AS visitSatisfaction, "
+            + "s.treatmentSatisfaction AS treatmentSatisfaction, s.comments AS comments "
+            + "FROM SatisfactionSurvey s WHERE s.hcp.username = ?1 AND s.id < ?2 "
+            + "AND s.visitSatisfaction + s.treatmentSatisfaction BETWEEN ?3 AND ?4 ORDER BY s.id DESC" )
+    public List<Note> findNotesByHcp ( String hcp, long before, int minTotal, int maxTotal, Pageable pageable );
+
+    /**
+     * Totals of the SatisfactionSurveys for an HCP with the same wait times
+     */
+    public interface Totals {
+
+        /**
+         * @return Username of the HCP
+         */
+        String getHcp ();
+
+        /**
+         * @return Waiting room time the surveys gave
+         */
+        WaitTime getWaitingRoomTime ();
+
+        /**
+         * @return Examination response time the surveys gave
+         */
+        WaitTime getExaminationResponseTime ();
+
+        /**
+         * @return Number of surveys
+         */
+        long getSurveys ();
+
+        /**
+         * @return Sum of the visit satisfaction the surveys gave
+         */
+        long getVisitSatisfaction ();
+
+        /**
+         * @return Sum of the treatment satisfaction the surveys gave
+         */
+        long getTreatmentSatisfaction ();
+    }
+
+    /**
+     * Ratings and comments from a single SatisfactionSurvey
+     */
+    public interface Note {
+
+        /**
+         * @return ID of the survey
+         */
+        Long getId ();
+
+        /**
+         * @return Visit satisfaction the survey gave
+         */
+        Integer getVisitSatisfaction ();
+
+        /**
+         * @return Treatment satisfaction the survey gave
+         */
+        Integer getTreatmentSatisfaction ();
+
+        /**
+         * @return Comments left on the survey
+         */
+        String getComments ();
+    }
+
 }
@@ -0,0 +1,43 @@
+package edu.ncsu.csc.iTrust2.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.ncsu.csc.iTrust2.models.SatisfactionSurveyTotals;
+
+/**
+ * Repository for interacting with SatisfactionSurveyTotals model. Method
+ * implementations generated by Spring
+ */
+public interface SatisfactionSurveyTotalsRepository extends JpaRepository<SatisfactionSurveyTotals, String> {
+
+    /**
+     * Adds a single survey to an HCP's totals, creating them if this is their
+     * first. This is one statement, so surveys saved for the same HCP at the
+     * same time can't lose each other's updates or race to create the totals.
+     *
+     * @param hcp
+     *            Username of the HCP
+     * @param visitSatisfaction
+     *            Visit satisfaction the survey gave
+     * @param treatmentSatisfaction
+     *            Treatment satisfaction the survey gave
+     * @param waitingRoomTime
+     *            Code of the waiting room time the survey gave
+     * @param examinationResponseTime
+     *            Code of the examination response time the survey gave
+     * @return The number of records changed
+     */
+    @Modifying
+    @Transactional
+    @Query ( value = "INSERT INTO satisfaction_survey_totals (hcp, surveys, visit_satisfaction, "
+            + "treatment_satisfaction, waiting_room_time, examination_response_time) VALUES (?1, 1, ?2, ?3, ?4, ?5) "
+            + "ON DUPLICATE KEY UPDATE surveys = surveys + 1, visit_satisfaction = visit_satisfaction + ?2, "
+            + "treatment_satisfaction = treatment_satisfaction + ?3, waiting_room_time = waiting_room_time + ?4, "
+            + "examination_response_time = examination_response_time + ?5", nativeQuery = true )
+    public int add ( String hcp, int visitSatisfaction, int treatmentSatisfaction, int waitingRoomTime,
+            int examinationResponseTime );
+
+}
@@ -1,6 +1,10 @@
 package edu.ncsu.csc.iTrust2.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import edu.ncsu.csc.iTrust2.models.User;
 
@@ -33,4 +37,15 @@ public interface UserRepository <T extends User> extends JpaRepository<T, String
      */
     public User findByUsername ( String username );
 
+    /**
+     * Finds all Users with any of the given usernames, along with their roles,
+     * in a single query.
+     *
+     * @param usernames
+     *            Usernames to look up
+     * @return Matching users; unknown usernames are skipped
+     */
+    @Query ( "SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.roles WHERE u.username IN ?1" )
+    public List<User> findByUsernameIn ( Collection<String> usernames );
+
 }
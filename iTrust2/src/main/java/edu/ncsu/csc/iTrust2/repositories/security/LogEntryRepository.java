@@ -1,11 +1,16 @@
 package edu.ncsu.csc.iTrust2.repositories.security;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.models.security.LogEntry;
 
 /**
@@ -28,6 +33,24 @@ public interface LogEntryRepository extends JpaRepository<LogEntry, Long> {
      */
     public List<LogEntry> findByTimeBetween ( ZonedDateTime fromDate, ZonedDateTime toDate );
 
+    /**
+     * Retrieves the LogEntry records between (inclusive) two dates where the
+     * given user is either the primary or secondary user. Each side of the OR
+     * matches one of the (user, time) indexes on LogEntry, so only that user's
+     * entries in the range are read.
+     *
+     * @param user
+     *            User to search on
+     * @param fromDate
+     *            Starting date
+     * @param toDate
+     *            Ending date
+     * @return List of matching records
+     */
+    @Query ( "SELECT le FROM LogEntry le WHERE ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 )" )
+    public List<LogEntry> findByUserAndTimeBetween ( String user, ZonedDateTime fromDate, ZonedDateTime toDate );
+
     /**
      * Retrieves all log entries for a user where they are either the primary or
      * secondary user on the Entry.
@@ -39,4 +62,234 @@ public interface LogEntryRepository extends JpaRepository<LogEntry, Long> {
     @Query ( "SELECT le FROM LogEntry le WHERE le.primaryUser = ?1 OR le.secondaryUser = ?1" )
     public List<LogEntry> findByPrimaryUserOrSecondaryUser ( String user );
 
+    /**
+     * Retrieves the most recent log entries for a user, within a date range,
+     * newest first. The size of the page (and optionally, an offset into the
+     * results) is given by the Pageable.
+     *
+     * @param user
+     *            User to search on, as either the primary or secondary user
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (inclusive)
+     * @param pageable
+     *            Page of results to retrieve
+     * @return List of matching records, ordered by time and then ID descending
+     */
+    @Query ( "SELECT le FROM LogEntry le WHERE ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) ORDER BY le.time DESC, le.id DESC" )
+    public List<LogEntry> findPageForUser ( String user, ZonedDateTime fromDate, ZonedDateTime toDate,
+            Pageable pageable );
+
+    /**
+     * Retrieves the log entries for a user, within a date range, that come
+     * immediately after (ie, are older than) a previously-seen entry. This is a
+     * keyset query: rather than skipping over earlier pages, it seeks directly
+     * to the (time, id) of the last entry the caller saw, so every page costs
+     * the same no matter how deep into the results it is.
+     *
+     * @param user
+     *            User to search on, as either the primary or secondary user
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (inclusive)
+     * @param afterTime
+     *            Time of the last entry already seen
+     * @param afterId
+     *            ID of the last entry already seen
+     * @param pageable
+     *            Size of the page to retrieve
+     * @return List of matching records, ordered by time and then ID descending
+     */
+    @Query ( "SELECT le FROM LogEntry le WHERE ( ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) ) "
+            + "AND ( le.time < ?4 OR ( le.time = ?4 AND le.id < ?5 ) ) ORDER BY le.time DESC, le.id DESC" )
+    public List<LogEntry> findPageForUserAfter ( String user, ZonedDateTime fromDate, ZonedDateTime toDate,
+            ZonedDateTime afterTime, Long afterId, Pageable pageable );
+
+    /**
+     * Counts the log entries for a user within a date range
+     *
+     * @param user
+     *            User to search on, as either the primary or secondary user
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (inclusive)
+     * @return Number of matching records
+     */
+    @Query ( "SELECT COUNT(le) FROM LogEntry le WHERE ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 )" )
+    public long countForUser ( String user, ZonedDateTime fromDate, ZonedDateTime toDate );
+
+    /**
+     * Counts the log entries for a user, within a date range, that are listed
+     * before (ie, are newer than) a given entry, newest first by time and then
+     * ID. Used to find where an archived entry falls among those still in the
+     * database.
+     *
+     * @param user
+     *            User to search on, as either the primary or secondary user
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (inclusive)
+     * @param time
+     *            Time of the entry
+     * @param id
+     *            ID of the entry
+     * @return Number of matching records
+     */
+    @Query ( "SELECT COUNT(le) FROM LogEntry le WHERE ( ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) ) "
+            + "AND ( le.time > ?4 OR ( le.time = ?4 AND le.id > ?5 ) )" )
+    public long countForUserNewer ( String user, ZonedDateTime fromDate, ZonedDateTime toDate, ZonedDateTime time,
+            Long id );
+
+    /**
+     * Same as `findPageForUser`, but only returns entries of the given types.
+     *
+     * @param user
+     *            User to search on, as either the primary or secondary user
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (inclusive)
+     * @param types
+     *            TransactionTypes to include
+     * @param pageable
+     *            Page of results to retrieve
+     * @return List of matching records, ordered by time and then ID descending
+     */
+    @Query ( "SELECT le FROM LogEntry le WHERE ( ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) ) AND le.logCode IN ?4 "
+            + "ORDER BY le.time DESC, le.id DESC" )
+    public List<LogEntry> findPageForUserOfTypes ( String user, ZonedDateTime fromDate, ZonedDateTime toDate,
+            Collection<TransactionType> types, Pageable pageable );
+
+    /**
+     * Same as `findPageForUserAfter`, but only returns entries of the given
+     * types.
+     *
+     * @param user
+     *            User to search on, as either the primary or secondary user
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (inclusive)
+     * @param types
+     *            TransactionTypes to include
+     * @param afterTime
+     *            Time of the last entry already seen
+     * @param afterId
+     *            ID of the last entry already seen
+     * @param pageable
+     *            Size of the page to retrieve
+     * @return List of matching records, ordered by time and then ID descending
+     */
+    @Query ( "SELECT le FROM LogEntry le WHERE ( ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) ) AND le.logCode IN ?4 "
+            + "AND ( le.time < ?5 OR ( le.time = ?5 AND le.id < ?6 ) ) ORDER BY le.time DESC, le.id DESC" )
+    public List<LogEntry> findPageForUserOfTypesAfter ( String user, ZonedDateTime fromDate, ZonedDateTime toDate,
+            Collection<TransactionType> types, ZonedDateTime afterTime, Long afterId, Pageable pageable );
+
+    /**
+     * Counts the log entries of the given types for a user within a date range
+     *
+     * @param user
+     *            User to search on, as either the primary or secondary user
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (inclusive)
+     * @param types
+     *            TransactionTypes to include
+     * @return Number of matching records
+     */
+    @Query ( "SELECT COUNT(le) FROM LogEntry le WHERE ( ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) ) AND le.logCode IN ?4" )
+    public long countForUserOfTypes ( String user, ZonedDateTime fromDate, ZonedDateTime toDate,
+            Collection<TransactionType> types );
+
+    /**
+     * Same as `countForUserNewer`, but only counts entries of the given types.
+     *
+     * @param user
+     *            User to search on, as either the primary or secondary user
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (inclusive)
+     * @param types
+     *            TransactionTypes to include
+     * @param time
+     *            Time of the entry
+     * @param id
+     *            ID of the entry
+     * @return Number of matching records
+     */
+    @Query ( "SELECT COUNT(le) FROM LogEntry le WHERE ( ( le.primaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) "
+            + "OR ( le.secondaryUser = ?1 AND le.time BETWEEN ?2 AND ?3 ) ) AND le.logCode IN ?4 "
+            + "AND ( le.time > ?5 OR ( le.time = ?5 AND le.id > ?6 ) )" )
+    public long countForUserOfTypesNewer ( String user, ZonedDateTime fromDate, ZonedDateTime toDate,
+            Collection<TransactionType> types, ZonedDateTime time, Long id );
+
+    /**
+     * Retrieves the oldest LogEntry still in the table
+     *
+     * @return The oldest entry, or null if there are none
+     */
+    public LogEntry findFirstByOrderByTimeAsc ();
+
+    /**
+     * Retrieves a chunk of the log entries from a time range, in ID order,
+     * starting after a given ID. Used to read a whole month of entries out for
+     * archiving without holding all of them in memory at once.
+     *
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (exclusive)
+     * @param afterId
+     *            ID of the last entry already read
+     * @param pageable
+     *            Size of the chunk to retrieve
+     * @return List of matching records, ordered by ID
+     */
+    @Query ( "SELECT le FROM LogEntry le WHERE le.time >= ?1 AND le.time < ?2 AND le.id > ?3 ORDER BY le.id" )
+    public List<LogEntry> findChunkBetween ( ZonedDateTime fromDate, ZonedDateTime toDate, Long afterId,
+            Pageable pageable );
+
+    /**
+     * Finds the IDs of log entries from a time range that have been archived,
+     * lowest first. Used to delete an archived month a batch at a time.
+     *
+     * @param fromDate
+     *            Starting date (inclusive)
+     * @param toDate
+     *            Ending date (exclusive)
+     * @param maxId
+     *            Highest ID that was archived
+     * @param pageable
+     *            How many IDs to find
+     * @return The matching IDs
+     */
+    @Query ( "SELECT le.id FROM LogEntry le WHERE le.time >= ?1 AND le.time < ?2 AND le.id <= ?3 ORDER BY le.id" )
+    public List<Long> findArchivedIds ( ZonedDateTime fromDate, ZonedDateTime toDate, Long maxId,
+            Pageable pageable );
+
+    /**
+     * Deletes the log entries with the given IDs, in a single statement
+     *
+     * @param ids
+     *            IDs of the entries to delete
+     * @return Number of entries deleted
+     */
+    @Modifying
+    @Transactional
+    @Query ( "DELETE FROM LogEntry le WHERE le.id IN ?1" )
+    public int deleteByIds ( Collection<Long> ids );
+
 }
@@ -1,8 +1,14 @@
 package edu.ncsu.csc.iTrust2.repositories.security;
 
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.security.LoginLockout;
@@ -52,4 +58,73 @@ public interface LoginLockoutRepository extends JpaRepository<LoginLockout, Long
      */
     public long deleteByUser ( User user );
 
+    /**
+     * Counts the LoginLockouts for an IP address since a given time
+     *
+     * @param ipAddress
+     *            The IP address to search on.
+     * @param time
+     *            Only count lockouts after this time.
+     * @return The number of matching LoginLockouts.
+     */
+    public long countByIpAndTimeAfter ( String ipAddress, ZonedDateTime time );
+
+    /**
+     * Checks whether there are any LoginLockouts for an IP address since a
+     * given time
+     *
+     * @param ipAddress
+     *            The IP address to search on.
+     * @param time
+     *            Only consider lockouts after this time.
+     * @return Whether there is a matching LoginLockout.
+     */
+    public boolean existsByIpAndTimeAfter ( String ipAddress, ZonedDateTime time );
+
+    /**
+     * Counts the LoginLockouts for a User since a given time
+     *
+     * @param user
+     *            The User to search on.
+     * @param time
+     *            Only count lockouts after this time.
+     * @return The number of matching LoginLockouts.
+     */
+    public long countByUserAndTimeAfter ( User user, ZonedDateTime time );
+
+    /**
+     * Checks whether there are any LoginLockouts for a User since a given time
+     *
+     * @param user
+     *            The User to search on.
+     * @param time
+     *            Only consider lockouts after this time.
+     * @return Whether there is a matching LoginLockout.
+     */
+    public boolean existsByUserAndTimeAfter ( User user, ZonedDateTime time );
+
+    /**
+     * Finds the IDs of LoginLockouts from before a given time, oldest first
+     *
+     * @param time
+     *            Find lockouts before this time.
+     * @param pageable
+     *            How many IDs to find.
+     * @return The matching IDs.
+     */
+    @Query ( "SELECT ll.id FROM LoginLockout ll WHERE ll.time < ?1 ORDER BY ll.time" )
+    public List<Long> findIdsBefore ( ZonedDateTime time, Pageable pageable );
+
+    /**
+     * Deletes the LoginLockouts with the given IDs, in a single statement.
+     *
+     * @param ids
+     *            IDs of the lockouts to delete.
+     * @return The number of records deleted.
+     */
+    @Modifying
+    @Transactional
+    @Query ( "DELETE FROM LoginLockout ll WHERE ll.id IN ?1" )
+    public int deleteByIds ( Collection<Long> ids );
+
 }
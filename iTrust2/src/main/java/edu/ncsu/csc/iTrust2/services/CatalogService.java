@@ -0,0 +1,148 @@
+package edu.ncsu.csc.iTrust2.services;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import edu.ncsu.csc.iTrust2.models.DomainObject;
+import edu.ncsu.csc.iTrust2.utils.ExpiringCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Service for a reference catalog (Drugs, ICD codes, Hospitals, vaccines):
+ * records that are read every time a visit or prescription is documented, but
+ * which only change when an admin edits them. Lookups by code or name are
+ * cached in memory, and the whole cache is dropped whenever anything in the
+ * catalog is saved or deleted, both immediately and once the transaction
+ * completes. Entries also expire after `itrust2.catalog.cache-seconds`, as a
+ * backstop for changes made by other nodes.
+ *
+ * Cache hits and misses are published through the actuator `metrics` endpoint
+ * as `itrust2.catalog.cache`, tagged with the catalog and the result.
+ *
+ * The records returned from the cache are shared, so they must not be
+ * modified; look them up by ID to do that.
+ *
+ * @param <T>
+ *            Type of the records
+ * @param <K>
+ *            Type of their IDs
+ */
+abstract public class CatalogService <T extends DomainObject, K> extends Service<T, K> {
+
+    /** Maximum number of records cached */
+    private static final int         CACHE_SIZE = 10000;
+
+    /** Meter registry the metrics are published to */
+    @Autowired
+    private MeterRegistry            registry;
+
+    /** How long (seconds) to cache records for */
+    @Value ( "${itrust2.catalog.cache-seconds:3600}" )
+    private long                     cacheSeconds;
+
+    /** Records, by code or name */
+    private ExpiringCache<String, T> byKey;
+
+    /** Lookups answered from the cache */
+    private Counter                  hits;
+
+    /** Lookups that went to the database */
+    private Counter                  misses;
+
+    /**
+     * Gets the name of the catalog, for the metrics
+     *
+     * @return Catalog name
+     */
+    abstract protected String getCatalogName ();
+
+    /**
+     * Sets up the cache and registers the metrics
+     */
+    @PostConstruct
+    public void initCache () {
+        byKey = new ExpiringCache<String, T>( TimeUnit.SECONDS.toMillis( cacheSeconds ), CACHE_SIZE );
+        hits = Counter.builder( "itrust2.catalog.cache" ).tag( "catalog", getCatalogName() ).tag( "result", "hit" )
+                .description( "Catalog lookups" ).register( registry );
+        misses = Counter.builder( "itrust2.catalog.cache" ).tag( "catalog", getCatalogName() )
+                .tag( "result", "miss" ).description( "Catalog lookups" ).register( registry );
+    }
+
+    /**
+     * Looks up a record by its code or name, from the cache if it is there
+     *
+     * @param key
+     *            Code or name of the record
+     * @param loader
+     *            Loads the record from the database; it is called in the
+     *            service's transaction, so should load anything lazy
+     * @return The record, or null if there is none
+     */
+    protected T findCached ( final String key, final Function<String, T> loader ) {
+        final boolean[] missed = { false };
+        final T record = byKey.get( key, k -> {
+            missed[0] = true;
+            return loader.apply( k );
+        } );
+        ( missed[0] ? misses : hits ).increment();
+        return record;
+    }
+
+    /**
+     * Drops every cached record, so that changes to the catalog are seen by
+     * the next lookup
+     */
+    protected void invalidateCache () {
+        evictCache();
+        if ( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCompletion ( final int status ) {
+                    evictCache();
+                }
+            } );
+        }
+    }
+
+    /**
+     * Drops every cached record. Services that keep anything else derived
+     * from the catalog should drop that here too.
+     */
+    protected void evictCache () {
+        byKey.invalidateAll();
+    }
+
+    @Override
+    public void save ( final T obj ) {
+        super.save( obj );
+        invalidateCache();
+    }
+
+    @Override
+    public void saveAll ( final List<T> objects ) {
+        super.saveAll( objects );
+        invalidateCache();
+    }
+
+    @Override
+    public void delete ( final T obj ) {
+        super.delete( obj );
+        invalidateCache();
+    }
+
+    @Override
+    public void deleteAll () {
+        super.deleteAll();
+        invalidateCache();
+    }
+
+}
@@ -2,6 +2,7 @@ package edu.ncsu.csc.iTrust2.services;
 
 import javax.transaction.Transactional;
 
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
@@ -17,17 +18,35 @@ import edu.ncsu.csc.iTrust2.repositories.CovidVaccineRepository;
  */
 @Component
 @Transactional
-public class CovidVaccineService extends Service<CovidVaccine, Long> {
+public class CovidVaccineService extends CatalogService<CovidVaccine, Long> {
 
     /** Repository for CRUD operations */
     @Autowired
     private CovidVaccineRepository repository;
 
+    /** Drug catalog, which CovidVaccines are also part of */
+    @Autowired
+    private DrugService            drugService;
+
     @Override
     protected JpaRepository<CovidVaccine, Long> getRepository () {
         return repository;
     }
 
+    @Override
+    protected String getCatalogName () {
+        return "covid_vaccine";
+    }
+
+    /**
+     * Drops the Drug cache as well, as a CovidVaccine is also a Drug
+     */
+    @Override
+    protected void invalidateCache () {
+        super.invalidateCache();
+        drugService.invalidateCache();
+    }
+
     /**
      * Checks if a CovidVaccine with the provided code exists
      *
@@ -40,14 +59,22 @@ public class CovidVaccineService extends Service<CovidVaccine, Long> {
     }
 
     /**
-     * Finds a CovidVaccine with the provided code
+     * Finds a CovidVaccine with the provided code. Served from the
+     * catalog cache, so it must not be modified
      *
      * @param code
      *            Code to check
      * @return CovidVaccine, if found
      */
     public CovidVaccine findByCode ( final String code ) {
-        return repository.findByCode( code );
+        return findCached( code, c -> {
+            final CovidVaccine vaccine = repository.findByCode( c );
+            if ( null != vaccine ) {
+                // The cached vaccine is used outside of this transaction
+                Hibernate.initialize( vaccine.getAgeRange() );
+            }
+            return vaccine;
+        } );
     }
 
 }
@@ -18,7 +18,7 @@ import edu.ncsu.csc.iTrust2.repositories.DrugRepository;
  */
 @Component
 @Transactional
-public class DrugService extends Service<Drug, Long> {
+public class DrugService extends CatalogService<Drug, Long> {
 
     /** Repository for CRUD tasks */
     @Autowired
@@ -29,6 +29,11 @@ public class DrugService extends Service<Drug, Long> {
         return repository;
     }
 
+    @Override
+    protected String getCatalogName () {
+        return "drug";
+    }
+
     /**
      * Checks if a Drug with the provided code exists
      * 
@@ -41,13 +46,14 @@ public class DrugService extends Service<Drug, Long> {
     }
 
     /**
-     * Finds a Drug with the provided code
+     * Finds a Drug with the provided code. Served from the
+     * catalog cache, so it must not be modified
      * 
      * @param code
      *            Code to check
      * @return Drug, if found
      */
     public Drug findByCode ( final String code ) {
-        return repository.findByCode( code );
+        return findCached( code, repository::findByCode );
     }
 }
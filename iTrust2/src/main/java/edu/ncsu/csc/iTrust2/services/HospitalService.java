@@ -18,7 +18,7 @@ import edu.ncsu.csc.iTrust2.repositories.HospitalRepository;
  */
 @Component
 @Transactional
-public class HospitalService extends Service<Hospital, String> {
+public class HospitalService extends CatalogService<Hospital, String> {
 
     /** Repository for CRUD tasks */
     @Autowired
@@ -29,15 +29,21 @@ public class HospitalService extends Service<Hospital, String> {
         return repository;
     }
 
+    @Override
+    protected String getCatalogName () {
+        return "hospital";
+    }
+
     /**
-     * Finds a Hospital with the provided name
+     * Finds a Hospital with the provided name. Served from the
+     * catalog cache, so it must not be modified
      * 
      * @param name
      *            Name of the hospital
      * @return Hospital, if found
      */
     public Hospital findByName ( final String name ) {
-        return repository.findByName( name );
+        return findCached( name, repository::findByName );
     }
 
 }
@@ -1,6 +1,8 @@
 package edu.ncsu.csc.iTrust2.services;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
 
 import javax.transaction.Transactional;
@@ -9,62 +11,155 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
 
+import edu.ncsu.csc.iTrust2.forms.display.ICDCodeCatalog;
 import edu.ncsu.csc.iTrust2.models.ICDCode;
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.repositories.ICDCodeRepository;
-import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 
 /**
  * Service class for interacting with ICDCode model, performing CRUD tasks with
  * database.
  *
+ * The diagnosis picker asks for the codes the user can diagnose with whenever
+ * a visit is documented, so the three catalogs users can see (all codes,
+ * ophthalmology codes and general codes) are built together from a single
+ * query and kept in memory. They are dropped whenever an ICD code is saved or
+ * deleted, and built again the next time they are asked for.
+ *
  * @author Kai Presler-Marshall
  *
  */
 @Component
 @Transactional
-public class ICDCodeService extends Service<ICDCode, Long> {
+public class ICDCodeService extends CatalogService<ICDCode, Long> {
 
     /** Repository for CRUD operations */
     @Autowired
-    private ICDCodeRepository repository;
+    private ICDCodeRepository                      repository;
 
-    /** Service for looking up Personnel */
+    /** The logged-in user */
     @Autowired
-    private PersonnelService  service;
+    private CurrentUser                            currentUser;
+
+    /** Catalog for each view, or null if they need to be built */
+    private volatile EnumMap<View, ICDCodeCatalog> catalogs   = null;
+
+    /** Bumped on every change, so catalogs built during one are dropped */
+    private long                                   generation = 0;
 
     @Override
     protected JpaRepository<ICDCode, Long> getRepository () {
         return repository;
     }
 
+    @Override
+    protected String getCatalogName () {
+        return "icd_code";
+    }
+
     /**
-     * Finds an ICDCode object for the given Code
+     * Finds an ICDCode object for the given Code. Served from the
+     * catalog cache, so it must not be modified
      * 
      * @param code
      *            Code of the ICDCode desired
      * @return ICDCode found, if any
      */
     public ICDCode findByCode ( final String code ) {
-        return repository.findByCode( code );
+        return findCached( code, repository::findByCode );
     }
 
+    /**
+     * Finds the ICD codes the logged-in user can diagnose with. Served from
+     * memory, so they must not be modified
+     *
+     * @return Codes the user can see; the list cannot be modified
+     */
     @Override
     public List<ICDCode> findAll () {
-        final User user = service.findByName( LoggerUtil.currentUser() );
+        return findCatalog().getCodes();
+    }
+
+    /**
+     * Finds the catalog of ICD codes the logged-in user can diagnose with:
+     * admins and ophthalmologists who are also HCPs see every code,
+     * ophthalmologists see only ophthalmology codes, and everyone else sees
+     * only general codes.
+     *
+     * @return Catalog for the user
+     */
+    public ICDCodeCatalog findCatalog () {
+        final User user = currentUser.get();
         final Collection<Role> roles = user.getRoles();
 
+        final EnumMap<View, ICDCodeCatalog> catalogs = getCatalogs();
         if ( roles.contains( Role.ROLE_ADMIN )
                 || ( roles.contains( Role.ROLE_OPH ) && roles.contains( Role.ROLE_HCP ) ) ) {
-            return repository.findAll();
+            return catalogs.get( View.ALL );
         }
 
         if ( roles.contains( Role.ROLE_OPH ) ) {
-            return repository.findByIsOphthalmologyIsTrue();
+            return catalogs.get( View.OPHTHALMOLOGY );
+        }
+
+        return catalogs.get( View.GENERAL );
+    }
+
+    /**
+     * Gets the catalogs, building them if they have been dropped
+     *
+     * @return Catalog for each view
+     */
+    private EnumMap<View, ICDCodeCatalog> getCatalogs () {
+        final EnumMap<View, ICDCodeCatalog> cached = catalogs;
+        if ( null != cached ) {
+            return cached;
+        }
+
+        final long started;
+        synchronized ( this ) {
+            started = generation;
+        }
+        final List<ICDCode> all = repository.findAll();
+        final List<ICDCode> ophthalmology = new ArrayList<ICDCode>();
+        final List<ICDCode> general = new ArrayList<ICDCode>();
+        for ( final ICDCode code : all ) {
+            ( Boolean.TRUE.equals( code.getIsOphthalmology() ) ? ophthalmology : general ).add( code );
         }
 
-        return repository.findByIsOphthalmologyIsFalseOrIsOphthalmologyIsNull();
+        final EnumMap<View, ICDCodeCatalog> built = new EnumMap<View, ICDCodeCatalog>( View.class );
+        built.put( View.ALL, new ICDCodeCatalog( all ) );
+        built.put( View.OPHTHALMOLOGY, new ICDCodeCatalog( ophthalmology ) );
+        built.put( View.GENERAL, new ICDCodeCatalog( general ) );
+        synchronized ( this ) {
+            if ( started == generation ) {
+                catalogs = built;
+            }
+        }
+        return built;
+    }
+
+    @Override
+    protected void evictCache () {
+        super.evictCache();
+        synchronized ( this ) {
+            generation++;
+            catalogs = null;
+        }
+    }
+
+    /**
+     * The subsets of the ICD codes that users can see
+     */
+    private enum View {
+        /** Every code */
+        ALL,
+        /** Ophthalmology codes only */
+        OPHTHALMOLOGY,
+        /** Everything but ophthalmology codes */
+        GENERAL
     }
 
 }
@@ -0,0 +1,96 @@
+package edu.ncsu.csc.iTrust2.services;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import edu.ncsu.csc.iTrust2.models.Personnel;
+import edu.ncsu.csc.iTrust2.models.enums.Role;
+import edu.ncsu.csc.iTrust2.repositories.PersonnelRepository;
+
+/**
+ * Directory of Personnel by Role, for the provider pickers. Each Role is looked
+ * up the first time it is asked for, with a query that only reads the staff
+ * that have it, and then kept until Personnel change. UserService clears the
+ * directory whenever Personnel are saved or deleted, both immediately and once
+ * the transaction commits.
+ *
+ * The directory is an immutable snapshot that is replaced, never modified, so
+ * reads never wait on each other. A lookup that races with a change is not
+ * kept, so the directory cannot end up holding the staff from before it.
+ *
+ * The Personnel returned are shared between requests, so they must not be
+ * modified; look them up through PersonnelService to do that.
+ */
+@Component
+public class PersonnelDirectory {
+
+    /** Repository for looking up Personnel */
+    @Autowired
+    private PersonnelRepository<Personnel>          repository;
+
+    /** Personnel for each Role looked up so far */
+    private volatile EnumMap<Role, List<Personnel>> byRole     = new EnumMap<Role, List<Personnel>>( Role.class );
+
+    /** Bumped on every change, so lookups that raced with one are dropped */
+    private long                                    generation = 0;
+
+    /**
+     * Finds all Personnel with the given Role
+     *
+     * @param role
+     *            Role to look for
+     * @return Matching Personnel, by username. The list cannot be modified.
+     */
+    public List<Personnel> findByRole ( final Role role ) {
+        final List<Personnel> cached = byRole.get( role );
+        if ( null != cached ) {
+            return cached;
+        }
+
+        final long started;
+        synchronized ( this ) {
+            started = generation;
+        }
+        final List<Personnel> found = Collections.unmodifiableList( repository.findByRole( role ) );
+        synchronized ( this ) {
+            if ( started == generation ) {
+                final EnumMap<Role, List<Personnel>> next = new EnumMap<Role, List<Personnel>>( byRole );
+                next.put( role, found );
+                byRole = next;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Clears the directory, so that each Role is looked up afresh. Called when
+     * Personnel are saved or deleted, and again once the transaction commits
+     * so that no lookup can keep the old staff in between.
+     */
+    public void invalidate () {
+        clear();
+        if ( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit () {
+                    clear();
+                }
+            } );
+        }
+    }
+
+    /**
+     * Drops every Role from the directory
+     */
+    private synchronized void clear () {
+        generation++;
+        byRole = new EnumMap<Role, List<Personnel>>( Role.class );
+    }
+
+}
@@ -1,5 +1,7 @@
 package edu.ncsu.csc.iTrust2.services;
 
+import java.util.List;
+
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,6 +9,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
 
 import edu.ncsu.csc.iTrust2.models.Personnel;
+import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.repositories.PersonnelRepository;
 
 /**
@@ -26,9 +29,25 @@ public class PersonnelService extends UserService<Personnel> {
     @Autowired
     private PersonnelRepository<Personnel> repository;
 
+    /** Personnel by Role */
+    @Autowired
+    private PersonnelDirectory             directory;
+
     @Override
     protected JpaRepository<Personnel, String> getRepository () {
         return repository;
     }
 
+    /**
+     * Finds all Personnel with the given Role. Served from the
+     * PersonnelDirectory, so the Personnel must not be modified.
+     *
+     * @param role
+     *            Role to look for
+     * @return Matching Personnel, by username. The list cannot be modified.
+     */
+    public List<Personnel> findByRole ( final Role role ) {
+        return directory.findByRole( role );
+    }
+
 }
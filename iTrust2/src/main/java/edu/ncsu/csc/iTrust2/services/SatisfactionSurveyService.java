@@ -1,23 +1,42 @@
 package edu.ncsu.csc.iTrust2.services;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.transaction.Transactional;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
 
 import edu.ncsu.csc.iTrust2.forms.SatisfactionSurveyForm;
 import edu.ncsu.csc.iTrust2.models.OfficeVisit;
 import edu.ncsu.csc.iTrust2.models.SatisfactionSurvey;
+import edu.ncsu.csc.iTrust2.models.SatisfactionSurveyTotals;
 import edu.ncsu.csc.iTrust2.repositories.OfficeVisitRepository;
 import edu.ncsu.csc.iTrust2.repositories.SatisfactionSurveyRepository;
+import edu.ncsu.csc.iTrust2.repositories.SatisfactionSurveyTotalsRepository;
 
 /**
  * Service class for interacting with SatisfactionSurvey model, performing CRUD
  * tasks with database and building a persistence object from a Form.
  *
+ * Each HCP's SatisfactionSurveyTotals are kept up to date here, in the same
+ * transaction as the surveys. A new survey is simply added to its HCP's
+ * totals; anything else (changing or deleting surveys) rebuilds the totals of
+ * the HCP from their surveys. If there are surveys but no totals when the
+ * application starts (eg, the first time after upgrading) all of the totals
+ * are rebuilt, and they can be rebuilt at any time with
+ * {@link #rebuildTotals()}.
+ *
  * @author Kai Presler-Marshall
  * @author abhirud
  *
@@ -26,19 +45,152 @@ import edu.ncsu.csc.iTrust2.repositories.SatisfactionSurveyRepository;
 @Transactional
 public class SatisfactionSurveyService extends Service<SatisfactionSurvey, Long> {
 
+    /** Logger, for reporting rebuilt totals */
+    private static final Logger                LOG = LoggerFactory.getLogger( SatisfactionSurveyService.class );
+
     /** Repository for CRUD operations */
     @Autowired
-    private SatisfactionSurveyRepository repository;
+    private SatisfactionSurveyRepository       repository;
 
     /** OfficeVisit repository */
     @Autowired
-    private OfficeVisitRepository        officeVisitRepository;
+    private OfficeVisitRepository              officeVisitRepository;
+
+    /** Repository for the totals of each HCP's surveys */
+    @Autowired
+    private SatisfactionSurveyTotalsRepository totalsRepository;
 
     @Override
     protected JpaRepository<SatisfactionSurvey, Long> getRepository () {
         return repository;
     }
 
+    @Override
+    public void save ( final SatisfactionSurvey obj ) {
+        final boolean added = null == obj.getId();
+        super.save( obj );
+        if ( added ) {
+            addToTotals( obj );
+        }
+        else {
+            rebuildTotals( obj.getHcp().getUsername() );
+        }
+    }
+
+    @Override
+    public void saveAll ( final List<SatisfactionSurvey> objects ) {
+        final List<SatisfactionSurvey> added = objects.stream().filter( o -> null == o.getId() )
+                .collect( Collectors.toList() );
+        final Set<String> changed = objects.stream().filter( o -> null != o.getId() )
+                .map( o -> o.getHcp().getUsername() ).collect( Collectors.toSet() );
+        super.saveAll( objects );
+        added.forEach( this::addToTotals );
+        changed.forEach( this::rebuildTotals );
+    }
+
+    @Override
+    public void delete ( final SatisfactionSurvey obj ) {
+        super.delete( obj );
+        rebuildTotals( obj.getHcp().getUsername() );
+    }
+
+    @Override
+    public void deleteAll () {
+        super.deleteAll();
+        totalsRepository.deleteAllInBatch();
+    }
+
+    /**
+     * Rebuilds the SatisfactionSurveyTotals of every HCP from their surveys,
+     * for backfilling them or correcting them if they have drifted
+     *
+     * @return Number of HCPs with surveys
+     */
+    public int rebuildTotals () {
+        final Map<String, SatisfactionSurveyTotals> existing = totalsRepository.findAll().stream()
+                .collect( Collectors.toMap( SatisfactionSurveyTotals::getHcp, Function.identity() ) );
+        final Map<String, List<SatisfactionSurveyRepository.Totals>> rows = repository.totalAll().stream()
+                .collect( Collectors.groupingBy( SatisfactionSurveyRepository.Totals::getHcp ) );
+
+        existing.forEach( ( hcp, totals ) -> {
+            if ( !rows.containsKey( hcp ) ) {
+                totalsRepository.delete( totals );
+            }
+        } );
+        rows.forEach( ( hcp, hcpRows ) -> totalsRepository
+                .save( fill( existing.getOrDefault( hcp, new SatisfactionSurveyTotals( hcp ) ), hcpRows ) ) );
+        totalsRepository.flush();
+        return rows.size();
+    }
+
+    /**
+     * Rebuilds the SatisfactionSurveyTotals if there are surveys but no totals,
+     * as there won't be the first time the application starts with them
+     */
+    @EventListener ( ApplicationReadyEvent.class )
+    public void backfillTotals () {
+        if ( 0 == totalsRepository.count() && 0 != repository.count() ) {
+            LOG.info( "Rebuilt satisfaction survey totals for {} HCPs", rebuildTotals() );
+        }
+    }
+
+    /**
+     * Adds a newly-saved survey to its HCP's totals
+     *
+     * @param survey
+     *            Survey to add
+     */
+    private void addToTotals ( final SatisfactionSurvey survey ) {
+        totalsRepository.add( survey.getHcp().getUsername(), survey.getVisitSatisfaction(),
+                survey.getTreatmentSatisfaction(), survey.getWaitingRoomTime().getCode(),
+                survey.getExaminationResponseTime().getCode() );
+    }
+
+    /**
+     * Rebuilds a single HCP's SatisfactionSurveyTotals from their surveys
+     *
+     * @param hcp
+     *            Username of the HCP
+     */
+    private void rebuildTotals ( final String hcp ) {
+        final List<SatisfactionSurveyRepository.Totals> rows = repository.totalByHcp( List.of( hcp ) );
+        final Optional<SatisfactionSurveyTotals> existing = totalsRepository.findById( hcp );
+        if ( rows.isEmpty() ) {
+            existing.ifPresent( totalsRepository::delete );
+        }
+        else {
+            totalsRepository.save( fill( existing.orElseGet( () -> new SatisfactionSurveyTotals( hcp ) ), rows ) );
+        }
+        totalsRepository.flush();
+    }
+
+    /**
+     * Sets an HCP's SatisfactionSurveyTotals from the totals of their surveys
+     *
+     * @param totals
+     *            Totals to set
+     * @param rows
+     *            Totals of the HCP's surveys, by wait times
+     * @return The totals
+     */
+    private static SatisfactionSurveyTotals fill ( final SatisfactionSurveyTotals totals,
+            final List<SatisfactionSurveyRepository.Totals> rows ) {
+        long surveys = 0, visit = 0, treatment = 0, waitingRoom = 0, examination = 0;
+        for ( final SatisfactionSurveyRepository.Totals row : rows ) {
+            surveys += row.getSurveys();
+            visit += row.getVisitSatisfaction();
+            treatment += row.getTreatmentSatisfaction();
+            waitingRoom += row.getSurveys() * row.getWaitingRoomTime().getCode();
+            examination += row.getSurveys() * row.getExaminationResponseTime().getCode();
+        }
+        totals.setSurveys( surveys );
+        totals.setVisitSatisfaction( visit );
+        totals.setTreatmentSatisfaction( treatment );
+        totals.setWaitingRoomTime( waitingRoom );
+        totals.setExaminationResponseTime( examination );
+        return totals;
+    }
+
     /**
      * Gets all satisfactionsurveys for a given HCP
      *
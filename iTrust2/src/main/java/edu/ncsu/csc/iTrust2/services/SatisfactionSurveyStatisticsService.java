@@ -1,26 +1,35 @@
 package edu.ncsu.csc.iTrust2.services;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
 
 import edu.ncsu.csc.iTrust2.forms.display.SatisfactionSurveyNote;
+import edu.ncsu.csc.iTrust2.forms.display.SatisfactionSurveyNotePage;
 import edu.ncsu.csc.iTrust2.forms.display.SatisfactionSurveyStatistics;
-import edu.ncsu.csc.iTrust2.models.Personnel;
-import edu.ncsu.csc.iTrust2.models.SatisfactionSurvey;
+import edu.ncsu.csc.iTrust2.models.SatisfactionSurveyTotals;
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.models.enums.WaitTime;
+import edu.ncsu.csc.iTrust2.repositories.SatisfactionSurveyRepository;
+import edu.ncsu.csc.iTrust2.repositories.SatisfactionSurveyTotalsRepository;
 
 /**
  * Service class for interacting with SatisfactionSurveyStatistics model,
  * performing CRUD tasks with database and building a persistence object from a
  * Form.
  *
+ * Statistics are worked out from the SatisfactionSurveyTotals kept for each
+ * HCP, which are read in one query for however many HCPs are asked for. The
+ * notes left on the surveys are paged through separately.
+ *
  * @author Kai Presler-Marshall
  * @author bvolpat
  *
@@ -29,13 +38,17 @@ import edu.ncsu.csc.iTrust2.models.enums.WaitTime;
 @Transactional
 public class SatisfactionSurveyStatisticsService {
 
-    /** SatisfactionSurvey service */
+    /** SatisfactionSurvey repository */
+    @Autowired
+    private SatisfactionSurveyRepository       surveyRepository;
+
+    /** Repository for the totals of each HCP's surveys */
     @Autowired
-    private SatisfactionSurveyService surveyService;
+    private SatisfactionSurveyTotalsRepository totalsRepository;
 
     /** Personnel service */
     @Autowired
-    private PersonnelService          personnelService;
+    private PersonnelService                   personnelService;
 
     /**
      * Finds all SatisfactionSurveyStatistics for all HCPs
@@ -43,18 +56,7 @@ public class SatisfactionSurveyStatisticsService {
      * @return Matching Statistics
      */
     public List<SatisfactionSurveyStatistics> findAll () {
-        final List<SatisfactionSurveyStatistics> allStatistics = new ArrayList<>();
-
-        final List<Personnel> personnel = personnelService.findAll();
-
-        for ( final Personnel p : personnel ) {
-            if ( !p.getRoles().contains( Role.ROLE_HCP ) ) {
-                continue;
-            }
-            allStatistics.add( findForHcp( p ) );
-        }
-
-        return allStatistics;
+        return findForHcps( personnelService.findByRole( Role.ROLE_HCP ) );
     }
 
     /**
@@ -65,37 +67,109 @@ public class SatisfactionSurveyStatisticsService {
      * @return Statistics for that HCP
      */
     public SatisfactionSurveyStatistics findForHcp ( final User hcp ) {
-        final SatisfactionSurveyStatistics statistics = new SatisfactionSurveyStatistics();
-        statistics.setHcp( hcp );
-
-        final List<SatisfactionSurvey> surveys = surveyService.findByHcp( hcp.getUsername() );
-        statistics.setNumberOfSurveys( surveys.size() );
-        statistics.setAverageVisitSatisfaction(
-                (int) surveys.stream().mapToInt( SatisfactionSurvey::getVisitSatisfaction ).average().orElse( 0 ) );
-        statistics.setAverageTreatmentSatisfaction(
-                (int) surveys.stream().mapToInt( SatisfactionSurvey::getTreatmentSatisfaction ).average().orElse( 0 ) );
+        return findForHcps( List.of( hcp ) ).get( 0 );
+    }
 
-        final int averageWaitingRoomTime = (int) surveys.stream().map( SatisfactionSurvey::getWaitingRoomTime )
-                .mapToInt( WaitTime::getCode ).average().orElse( 0 );
-        statistics.setAverageWaitingRoomTime( WaitTime.getByCode( averageWaitingRoomTime ) );
+    /**
+     * Finds SatisfactionSurveyStatistics for several HCPs at once
+     *
+     * @param hcps
+     *            HCPs to search for
+     * @return Statistics for each HCP, in the same order
+     */
+    public List<SatisfactionSurveyStatistics> findForHcps ( final List<? extends User> hcps ) {
+        final Map<String, SatisfactionSurveyStatistics> byHcp = new LinkedHashMap<>();
+        for ( final User hcp : hcps ) {
+            final SatisfactionSurveyStatistics statistics = new SatisfactionSurveyStatistics();
+            statistics.setHcp( hcp );
+            setAverages( statistics, new SatisfactionSurveyTotals( hcp.getUsername() ) );
+            byHcp.put( hcp.getUsername(), statistics );
+        }
+        if ( byHcp.isEmpty() ) {
+            return new ArrayList<>();
+        }
 
-        final int averageExaminationResponseTime = (int) surveys.stream()
-                .map( SatisfactionSurvey::getExaminationResponseTime ).mapToInt( WaitTime::getCode ).average()
-                .orElse( 0 );
-        statistics.setAverageExaminationResponseTime( WaitTime.getByCode( averageExaminationResponseTime ) );
+        for ( final SatisfactionSurveyTotals totals : totalsRepository.findAllById( byHcp.keySet() ) ) {
+            setAverages( byHcp.get( totals.getHcp() ), totals );
+        }
 
-        final List<SatisfactionSurveyNote> notes = new ArrayList<>();
+        return new ArrayList<>( byHcp.values() );
+    }
 
-        for ( final SatisfactionSurvey satisfactionSurvey : surveys ) {
+    /**
+     * Finds a page of the notes left for an HCP on their surveys, newest
+     * first. The satisfaction of a note is the average of its visit and
+     * treatment satisfaction, rounded down, and the filter on it is applied by
+     * the query.
+     *
+     * @param hcp
+     *            Username of the HCP
+     * @param cursor
+     *            Cursor from the previous page, or null for the first page
+     * @param minSatisfaction
+     *            Only include notes with at least this satisfaction, or null
+     *            for no minimum
+     * @param maxSatisfaction
+     *            Only include notes with at most this satisfaction, or null
+     *            for no maximum
+     * @param pageLength
+     *            Most notes to return
+     * @return The page of notes
+     */
+    public SatisfactionSurveyNotePage findNotes ( final String hcp, final Long cursor,
+            final Integer minSatisfaction, final Integer maxSatisfaction, final int pageLength ) {
+        // average = floor( total / 2 ), so min <= average <= max exactly when
+        // 2 * min <= total <= 2 * max + 1
+        final int minTotal = null == minSatisfaction ? Integer.MIN_VALUE : 2 * minSatisfaction;
+        final int maxTotal = null == maxSatisfaction ? Integer.MAX_VALUE : 2 * maxSatisfaction + 1;
+
+        // Ask for one more than the page, to know if there is another page
+        final List<SatisfactionSurveyRepository.Note> rows = surveyRepository.findNotesByHcp( hcp,
+                null == cursor ? Long.MAX_VALUE : cursor, minTotal, maxTotal, PageRequest.of( 0, pageLength + 1 ) );
+        final boolean more = rows.size() > pageLength;
+        final List<SatisfactionSurveyRepository.Note> page = more ? rows.subList( 0, pageLength ) : rows;
+
+        final List<SatisfactionSurveyNote> notes = new ArrayList<>( page.size() );
+        for ( final SatisfactionSurveyRepository.Note row : page ) {
             final SatisfactionSurveyNote note = new SatisfactionSurveyNote();
-            note.setComments( satisfactionSurvey.getComments() );
-            note.setAverageSatisfaction(
-                    ( satisfactionSurvey.getVisitSatisfaction() + satisfactionSurvey.getTreatmentSatisfaction() ) / 2 );
+            note.setComments( row.getComments() );
+            note.setAverageSatisfaction( ( row.getVisitSatisfaction() + row.getTreatmentSatisfaction() ) / 2 );
             notes.add( note );
         }
+        return new SatisfactionSurveyNotePage( notes, more ? rows.get( pageLength - 1 ).getId() : null );
+    }
+
+    /**
+     * Sets the averages in an HCP's statistics from the totals of their
+     * surveys
+     *
+     * @param statistics
+     *            Statistics to set
+     * @param totals
+     *            Totals of the HCP's surveys
+     */
+    private static void setAverages ( final SatisfactionSurveyStatistics statistics,
+            final SatisfactionSurveyTotals totals ) {
+        final long surveys = totals.getSurveys();
+        statistics.setNumberOfSurveys( (int) surveys );
+        statistics.setAverageVisitSatisfaction( average( totals.getVisitSatisfaction(), surveys ) );
+        statistics.setAverageTreatmentSatisfaction( average( totals.getTreatmentSatisfaction(), surveys ) );
+        statistics.setAverageWaitingRoomTime( WaitTime.getByCode( average( totals.getWaitingRoomTime(), surveys ) ) );
+        statistics.setAverageExaminationResponseTime(
+                WaitTime.getByCode( average( totals.getExaminationResponseTime(), surveys ) ) );
+    }
 
-        statistics.setNotes( notes );
-        return statistics;
+    /**
+     * Averages a total, rounding down, as the statistics always have
+     *
+     * @param sum
+     *            Total of the values
+     * @param count
+     *            Number of values
+     * @return Average, or 0 if there are no values
+     */
+    private static int average ( final long sum, final long count ) {
+        return 0 == count ? 0 : (int) ( sum / count );
     }
 
 }
@@ -1,5 +1,9 @@
 package edu.ncsu.csc.iTrust2.services;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,12 +11,19 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
 
+import edu.ncsu.csc.iTrust2.models.Personnel;
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.repositories.UserRepository;
+import edu.ncsu.csc.iTrust2.services.security.CachedUserDetailsService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 
 /**
  * Service class for interacting with User model, performing CRUD tasks with
- * database and building a persistence object from a Form.
+ * database and building a persistence object from a Form. Saving or deleting
+ * a user drops them from the cache used for logging in, so that changes take
+ * effect on their next login, and from the cache of the logged-in user, so
+ * that they take effect on the next request. Saving or deleting Personnel
+ * also clears the directory of Personnel by Role.
  *
  * @author Kai Presler-Marshall
  * @param <T>
@@ -25,7 +36,19 @@ public class UserService <T extends User> extends Service<T, String> {
 
     /** Repository for CRUD tasks */
     @Autowired
-    private UserRepository<User> repository;
+    private UserRepository<User>     repository;
+
+    /** Credentials cached for logging in */
+    @Autowired
+    private CachedUserDetailsService userDetailsService;
+
+    /** The logged-in user, cached per request and session */
+    @Autowired
+    private CurrentUser              currentUser;
+
+    /** Personnel by Role, for the provider pickers */
+    @Autowired
+    private PersonnelDirectory       personnelDirectory;
 
     @Override
     @SuppressWarnings ( "unchecked" )
@@ -33,6 +56,46 @@ public class UserService <T extends User> extends Service<T, String> {
         return (JpaRepository<T, String>) repository;
     }
 
+    @Override
+    public void save ( final T obj ) {
+        super.save( obj );
+        userDetailsService.invalidate( obj.getUsername() );
+        currentUser.invalidate( obj.getUsername() );
+        if ( obj instanceof Personnel ) {
+            personnelDirectory.invalidate();
+        }
+    }
+
+    @Override
+    public void saveAll ( final List<T> objects ) {
+        super.saveAll( objects );
+        objects.forEach( o -> {
+            userDetailsService.invalidate( o.getUsername() );
+            currentUser.invalidate( o.getUsername() );
+        } );
+        if ( objects.stream().anyMatch( o -> o instanceof Personnel ) ) {
+            personnelDirectory.invalidate();
+        }
+    }
+
+    @Override
+    public void delete ( final T obj ) {
+        super.delete( obj );
+        userDetailsService.invalidate( obj.getUsername() );
+        currentUser.invalidate( obj.getUsername() );
+        if ( obj instanceof Personnel ) {
+            personnelDirectory.invalidate();
+        }
+    }
+
+    @Override
+    public void deleteAll () {
+        super.deleteAll();
+        userDetailsService.invalidate( null );
+        currentUser.invalidate( null );
+        personnelDirectory.invalidate();
+    }
+
     /**
      * Finds a User with the given username
      *
@@ -55,4 +118,19 @@ public class UserService <T extends User> extends Service<T, String> {
         return repository.existsByUsername( name );
     }
 
+    /**
+     * Finds all Users with the given usernames, with one query no matter how
+     * many names are provided.
+     *
+     * @param usernames
+     *            Usernames to search
+     * @return Matching users, if any
+     */
+    public List<User> findByNames ( final Collection<String> usernames ) {
+        if ( null == usernames || usernames.isEmpty() ) {
+            return Collections.emptyList();
+        }
+        return repository.findByUsernameIn( usernames );
+    }
+
 }
@@ -0,0 +1,183 @@
+package edu.ncsu.csc.iTrust2.services.security;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import edu.ncsu.csc.iTrust2.models.User;
+import edu.ncsu.csc.iTrust2.repositories.UserRepository;
+import edu.ncsu.csc.iTrust2.utils.ExpiringCache;
+
+/**
+ * Looks up users for Spring Security when they log in. Each login needs the
+ * user's password hash, whether they are enabled, and their roles; these are
+ * cached for a short time so that repeated logins (or a burst of failed ones)
+ * for the same username don't each go to the database. UserService drops a
+ * user from the cache whenever they are saved or deleted, so changes to their
+ * password, roles, or enabled flag apply to the next login.
+ *
+ * Only a snapshot of those three fields is cached; a fresh UserDetails is
+ * built from it for every login, since Spring erases the password from the one
+ * it is given once authentication is done.
+ */
+@Component
+public class CachedUserDetailsService implements UserDetailsService {
+
+    /** Maximum number of usernames cached */
+    private static final int                   CACHE_SIZE = 100000;
+
+    /** Repository for looking up users */
+    @Autowired
+    private UserRepository<User>               repository;
+
+    /** How long (seconds) to cache a user's credentials */
+    @Value ( "${itrust2.login.user-cache-seconds:300}" )
+    private long                               cacheSeconds;
+
+    /**
+     * Credentials for each username, as it was typed in. Whether usernames
+     * that differ only in case are the same user is up to the database's
+     * collation, so each is looked up and cached separately. Usernames that
+     * don't exist are cached as null.
+     */
+    private ExpiringCache<String, Credentials> users;
+
+    /**
+     * Sets up the cache of credentials
+     */
+    @PostConstruct
+    public void init () {
+        users = new ExpiringCache<String, Credentials>( TimeUnit.SECONDS.toMillis( cacheSeconds ), CACHE_SIZE );
+    }
+
+    @Override
+    public UserDetails loadUserByUsername ( final String username ) throws UsernameNotFoundException {
+        final Credentials credentials = null == username ? null : users.get( username, this::load );
+        if ( null == credentials ) {
+            throw new UsernameNotFoundException( "User " + username + " not found" );
+        }
+        if ( credentials.authorities.isEmpty() ) {
+            throw new UsernameNotFoundException( "User " + username + " has no GrantedAuthority" );
+        }
+        return new org.springframework.security.core.userdetails.User( credentials.username, credentials.password,
+                credentials.enabled, true, true, true, credentials.authorities );
+    }
+
+    /**
+     * Finds the username, as stored, of the user a login name refers to. This
+     * is answered from the same cache as logins, so checking the name a login
+     * was just tried with doesn't go to the database again.
+     *
+     * @param username
+     *            Name as it was typed in
+     * @return The stored username, or null if there is no such user
+     */
+    public String findUsername ( final String username ) {
+        final Credentials credentials = null == username ? null : users.get( username, this::load );
+        return null == credentials ? null : credentials.username;
+    }
+
+    /**
+     * Drops a user from the cache, both now and once the current transaction
+     * commits, so that a login which runs in between can't cache the old
+     * credentials.
+     *
+     * @param username
+     *            User to drop, or null to drop everyone
+     */
+    public void invalidate ( final String username ) {
+        evict( username );
+        if ( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit () {
+                    evict( username );
+                }
+            } );
+        }
+    }
+
+    /**
+     * Drops expired entries from the cache
+     */
+    @Scheduled ( fixedDelay = 60000 )
+    public void evictExpired () {
+        users.evictExpired();
+    }
+
+    /**
+     * Drops a user, or everyone, from the cache
+     *
+     * @param username
+     *            User to drop, or null to drop everyone
+     */
+    private void evict ( final String username ) {
+        if ( null == username ) {
+            users.invalidateAll();
+        }
+        else {
+            // Drop every way of typing the name that may have found this user
+            users.invalidateIf( typed -> typed.equalsIgnoreCase( username ) );
+        }
+    }
+
+    /**
+     * Loads the credentials for a user from the database
+     *
+     * @param username
+     *            User to load
+     * @return Their credentials, or null if there is no such user
+     */
+    private Credentials load ( final String username ) {
+        final User user = repository.findByUsername( username );
+        if ( null == user ) {
+            return null;
+        }
+        final List<GrantedAuthority> authorities = user.getRoles().stream()
+                .map( role -> new SimpleGrantedAuthority( role.name() ) ).collect( Collectors.toList() );
+        return new Credentials( user.getUsername(), user.getPassword(),
+                null != user.getEnabled() && 0 != user.getEnabled(), authorities );
+    }
+
+    /**
+     * The parts of a User needed to log them in
+     */
+    private static final class Credentials {
+
+        /** Username, as stored */
+        private final String                 username;
+
+        /** Password hash */
+        private final String                 password;
+
+        /** Whether the user may log in */
+        private final boolean                enabled;
+
+        /** The user's roles */
+        private final List<GrantedAuthority> authorities;
+
+        Credentials ( final String username, final String password, final boolean enabled,
+                final List<GrantedAuthority> authorities ) {
+            this.username = username;
+            this.password = password;
+            this.enabled = enabled;
+            this.authorities = authorities;
+        }
+
+    }
+
+}
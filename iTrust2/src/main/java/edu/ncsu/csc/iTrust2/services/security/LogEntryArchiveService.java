@@ -0,0 +1,683 @@
+package edu.ncsu.csc.iTrust2.services.security;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.Gson;
+
+import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
+import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+import edu.ncsu.csc.iTrust2.repositories.security.LogEntryRepository;
+import edu.ncsu.csc.iTrust2.utils.ExpiringCache;
+
+/**
+ * Keeps the LogEntry table from growing without bound. The log is treated as a
+ * series of monthly partitions; once a month is older than the configured
+ * retention period, a scheduled job moves all of its entries out of the
+ * database into a compressed archive file (gzipped, one JSON entry per line)
+ * and deletes them from the table.
+ *
+ * Every archive file is recorded in a manifest, alongside the month it covers,
+ * the range of times in it, and how many entries of each type each user has in
+ * it, so that LogEntryService can still answer date-range lookups and exports
+ * that reach back into archived months by reading just the relevant files: a
+ * user's lookup only reads the files in the range that hold any of their
+ * entries, and counting them only reads the files the range cuts across.
+ * Paging through a user's log asks for the same archived entries over and
+ * over, so the entries read for a user from each file are kept in memory for a
+ * while (see `itrust2.audit.archive.cache-seconds`).
+ */
+@Component
+public class LogEntryArchiveService {
+
+    /** Logger, for reporting problems reading or writing archives */
+    private static final Logger                   LOG        = LoggerFactory
+            .getLogger( LogEntryArchiveService.class );
+
+    /** Name of the manifest file in the archive directory */
+    private static final String                   MANIFEST   = "manifest.json";
+
+    /** Number of entries read from the database at once while archiving */
+    private static final int                      CHUNK      = 1000;
+
+    /** Gson instance, for the manifest and the archived entries */
+    private static final Gson                     GSON       = new Gson();
+
+    /**
+     * Most (archive file, user) pairs whose entries are kept in memory at once
+     */
+    private static final int                      CACHE_SIZE = 1000;
+
+    /** LogEntry repository, for reading and removing archived entries */
+    @Autowired
+    private LogEntryRepository                    repository;
+
+    /** Directory the archive files and manifest are stored in */
+    @Value ( "${itrust2.audit.archive.directory:audit-archive}" )
+    private String                                directory;
+
+    /** Number of whole months of entries to keep in the database */
+    @Value ( "${itrust2.audit.archive.retention-months:12}" )
+    private int                                   retentionMonths;
+
+    /** Entries deleted from the database per statement once archived */
+    @Value ( "${itrust2.audit.archive.delete-batch-size:500}" )
+    private int                                   deleteBatchSize;
+
+    /** How long (seconds) to keep a user's archived entries in memory */
+    @Value ( "${itrust2.audit.archive.cache-seconds:300}" )
+    private long                                  cacheSeconds;
+
+    /** Every archive file written so far */
+    private Manifest                              manifest;
+
+    /**
+     * A user's entries from one archive file, newest first, by file name and
+     * user (separated by a newline, which neither can contain)
+     */
+    private ExpiringCache<String, List<LogEntry>> byPartition;
+
+    /**
+     * Loads the manifest from the archive directory, if there is one
+     *
+     * @throws IOException
+     *             If the manifest exists but cannot be read
+     */
+    @PostConstruct
+    public synchronized void load () throws IOException {
+        final Path file = Paths.get( directory, MANIFEST );
+        if ( Files.exists( file ) ) {
+            try ( Reader reader = Files.newBufferedReader( file, StandardCharsets.UTF_8 ) ) {
+                manifest = GSON.fromJson( reader, Manifest.class );
+            }
+        }
+        else {
+            manifest = new Manifest();
+        }
+        byPartition = new ExpiringCache<String, List<LogEntry>>( TimeUnit.SECONDS.toMillis( cacheSeconds ),
+                CACHE_SIZE );
+    }
+
+    /**
+     * Archives every month that is older than the retention period. Runs
+     * nightly by default (see `itrust2.audit.archive.cron`).
+     */
+    @Scheduled ( cron = "${itrust2.audit.archive.cron:0 30 2 * * *}" )
+    public void archiveExpired () {
+        archiveBefore( YearMonth.now().minusMonths( retentionMonths ) );
+    }
+
+    /**
+     * Archives every month before (not including) the given one, oldest
+     * first.
+     *
+     * @param cutoff
+     *            First month to keep in the database
+     * @return Number of entries archived
+     */
+    public synchronized long archiveBefore ( final YearMonth cutoff ) {
+        long archived = 0;
+        LogEntry oldest = repository.findFirstByOrderByTimeAsc();
+        while ( null != oldest ) {
+            final YearMonth month = YearMonth.from( oldest.getTime() );
+            if ( !month.isBefore( cutoff ) ) {
+                break;
+            }
+            try {
+                archived += archiveMonth( month );
+            }
+            catch ( final IOException e ) {
+                LOG.error( "Failed to archive log entries for " + month, e );
+                break;
+            }
+            final LogEntry next = repository.findFirstByOrderByTimeAsc();
+            if ( null != next && next.getId().equals( oldest.getId() ) ) {
+                LOG.error( "Log entries for " + month + " were archived but could not be removed" );
+                break;
+            }
+            oldest = next;
+        }
+        return archived;
+    }
+
+    /**
+     * Finds archived LogEntries for a user within a date range. Only the
+     * archive files in the range that hold any of the user's entries (of the
+     * given types) are read, and each of those only once until the cache
+     * expires.
+     *
+     * @param user
+     *            User to find entries for, as the primary or secondary user
+     * @param startDate
+     *            Start date (inclusive)
+     * @param endDate
+     *            End date (inclusive)
+     * @param types
+     *            TransactionTypes to include, or null for all of them
+     * @return Matching LogEntries, newest first (by time, then ID)
+     */
+    public List<LogEntry> findForUser ( final String user, final ZonedDateTime startDate,
+            final ZonedDateTime endDate, final Set<TransactionType> types ) {
+        final long from = startDate.toInstant().toEpochMilli();
+        final long to = endDate.toInstant().toEpochMilli();
+        final List<LogEntry> found = new ArrayList<LogEntry>();
+        for ( final Partition partition : getPartitions( startDate, endDate ) ) {
+            if ( partition.mayHold( user, types ) ) {
+                readForUser( partition, user ).stream().filter( le -> matches( le, from, to, types ) )
+                        .forEach( found::add );
+            }
+        }
+        found.sort( LogEntryService.NEWEST_FIRST );
+        return found;
+    }
+
+    /**
+     * Counts the archived LogEntries for a user within a date range. Files
+     * that lie wholly within the range are counted from the manifest; only
+     * those the range cuts across (and that hold any of the user's entries)
+     * are read.
+     *
+     * @param user
+     *            User to count entries for, as the primary or secondary user
+     * @param startDate
+     *            Start date (inclusive)
+     * @param endDate
+     *            End date (inclusive)
+     * @param types
+     *            TransactionTypes to include, or null for all of them
+     * @return Number of matching LogEntries
+     */
+    public long countForUser ( final String user, final ZonedDateTime startDate, final ZonedDateTime endDate,
+            final Set<TransactionType> types ) {
+        final long from = startDate.toInstant().toEpochMilli();
+        final long to = endDate.toInstant().toEpochMilli();
+        long count = 0;
+        for ( final Partition partition : getPartitions( startDate, endDate ) ) {
+            if ( !partition.mayHold( user, types ) ) {
+                continue;
+            }
+            if ( null != partition.users && partition.from >= from && partition.to <= to ) {
+                count += partition.count( user, types );
+            }
+            else {
+                count += readForUser( partition, user ).stream().filter( le -> matches( le, from, to, types ) )
+                        .count();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the archive files that may hold entries within a date range
+     *
+     * @param startDate
+     *            Start date (inclusive)
+     * @param endDate
+     *            End date (inclusive)
+     * @return Overlapping partitions, in the order they were written
+     */
+    public List<Partition> getPartitions ( final ZonedDateTime startDate, final ZonedDateTime endDate ) {
+        final long from = startDate.toInstant().toEpochMilli();
+        final long to = endDate.toInstant().toEpochMilli();
+        synchronized ( this ) {
+            return manifest.partitions.stream().filter( p -> p.to >= from && p.from <= to )
+                    .collect( Collectors.toList() );
+        }
+    }
+
+    /**
+     * Reads the entries of one archive file that fall within a date range.
+     * The file is read as the iterator is advanced, in the order the entries
+     * were archived (by ID), so it should be closed if it is not read to the
+     * end. The entries come back with the IDs they had in the database.
+     *
+     * @param partition
+     *            Archive file to read
+     * @param startDate
+     *            Start date (inclusive)
+     * @param endDate
+     *            End date (inclusive)
+     * @return Entries in the range; throws UncheckedIOException if the file
+     *         cannot be read part way through
+     * @throws IOException
+     *             If the file cannot be opened
+     */
+    public CloseableIterator<LogEntry> read ( final Partition partition, final ZonedDateTime startDate,
+            final ZonedDateTime endDate ) throws IOException {
+        return new PartitionReader( open( partition ), startDate.toInstant().toEpochMilli(),
+                endDate.toInstant().toEpochMilli() );
+    }
+
+    /**
+     * Reads a user's entries from one archive file, or gets them from the
+     * cache if they have been read recently
+     *
+     * @param partition
+     *            Archive file to read
+     * @param user
+     *            User to find entries for, as the primary or secondary user
+     * @return Their entries in the file, newest first
+     */
+    private List<LogEntry> readForUser ( final Partition partition, final String user ) {
+        return byPartition.get( partition.file + '\n' + user, key -> {
+            final List<LogEntry> found = new ArrayList<LogEntry>();
+            try ( CloseableIterator<LogEntry> entries = read( partition, LogEntryService.EARLIEST,
+                    LogEntryService.LATEST ) ) {
+                entries.forEachRemaining( le -> {
+                    if ( user.equals( le.getPrimaryUser() ) || user.equals( le.getSecondaryUser() ) ) {
+                        found.add( le );
+                    }
+                } );
+            }
+            catch ( final IOException | UncheckedIOException e ) {
+                LOG.error( "Failed to read log archive " + partition.file, e );
+            }
+            found.sort( LogEntryService.NEWEST_FIRST );
+            return Collections.unmodifiableList( found );
+        } );
+    }
+
+    /**
+     * Checks whether an archived entry is within a date range and of one of
+     * the given types
+     *
+     * @param le
+     *            Entry to check
+     * @param from
+     *            Start of the range (epoch millis, inclusive)
+     * @param to
+     *            End of the range (epoch millis, inclusive)
+     * @param types
+     *            TransactionTypes to include, or null for all of them
+     * @return Whether the entry matches
+     */
+    private static boolean matches ( final LogEntry le, final long from, final long to,
+            final Set<TransactionType> types ) {
+        final long time = le.getTime().toInstant().toEpochMilli();
+        return time >= from && time <= to && ( null == types || types.contains( le.getLogCode() ) );
+    }
+
+    /**
+     * Returns the archive files written so far
+     *
+     * @return Archived partitions, in the order they were written
+     */
+    public synchronized List<Partition> getPartitions () {
+        return Collections.unmodifiableList( new ArrayList<Partition>( manifest.partitions ) );
+    }
+
+    /**
+     * Moves one month of entries out of the database. The entries are written
+     * to a new archive file, which is added to the manifest, and only then
+     * deleted from the table; if anything goes wrong before that, they are
+     * still in the database and will be archived on the next run. If a run
+     * stops after the manifest is written but before the deletes finish, the
+     * next one deletes what is left of the archived entries (up to the
+     * highest ID archived for the month) rather than archiving them again.
+     *
+     * @param month
+     *            Month to archive
+     * @return Number of entries archived
+     * @throws IOException
+     *             If the archive or manifest cannot be written
+     */
+    private long archiveMonth ( final YearMonth month ) throws IOException {
+        final ZonedDateTime start = month.atDay( 1 ).atStartOfDay( ZoneId.systemDefault() );
+        final ZonedDateTime end = month.plusMonths( 1 ).atDay( 1 ).atStartOfDay( ZoneId.systemDefault() );
+
+        final Path dir = Paths.get( directory );
+        Files.createDirectories( dir );
+        // Entries can turn up for a month after it was archived; they go into
+        // another file for the same month rather than rewriting the first one
+        final List<Partition> earlier = manifest.partitions.stream()
+                .filter( p -> month.toString().equals( p.month ) ).collect( Collectors.toList() );
+        final long parts = earlier.size();
+        final String name = "logentries-" + month + ( parts == 0 ? "" : "-" + parts ) + ".ndjson.gz";
+        final Path file = dir.resolve( name );
+
+        final Partition partition = new Partition();
+        partition.month = month.toString();
+        partition.file = name;
+        partition.from = Long.MAX_VALUE;
+        partition.to = Long.MIN_VALUE;
+        partition.users = new HashMap<String, Map<String, Long>>();
+        // Entries up to the highest ID already archived for the month are in
+        // an earlier file; any still here were left by a run that stopped
+        // before deleting them, so they are deleted rather than copied again
+        long lastId = earlier.stream().mapToLong( p -> p.maxId ).max().orElse( 0 );
+        if ( lastId > 0 ) {
+            deleteArchived( start, end, lastId );
+        }
+
+        try ( Writer writer = new BufferedWriter( new OutputStreamWriter(
+                new GZIPOutputStream( Files.newOutputStream( file ) ), StandardCharsets.UTF_8 ) ) ) {
+            List<LogEntry> chunk;
+            do {
+                chunk = repository.findChunkBetween( start, end, lastId, PageRequest.of( 0, CHUNK ) );
+                for ( final LogEntry le : chunk ) {
+                    final ArchivedEntry entry = new ArchivedEntry( le );
+                    writer.write( GSON.toJson( entry ) );
+                    writer.write( '\n' );
+                    partition.from = Math.min( partition.from, entry.time );
+                    partition.to = Math.max( partition.to, entry.time );
+                    partition.entries++;
+                    partition.record( entry.primaryUser, entry.code );
+                    if ( null != entry.secondaryUser && !entry.secondaryUser.equals( entry.primaryUser ) ) {
+                        partition.record( entry.secondaryUser, entry.code );
+                    }
+                    lastId = le.getId();
+                }
+            }
+            while ( chunk.size() == CHUNK );
+        }
+
+        if ( partition.entries == 0 ) {
+            Files.delete( file );
+            return 0;
+        }
+        partition.maxId = lastId;
+
+        manifest.partitions.add( partition );
+        writeManifest( dir );
+
+        deleteArchived( start, end, lastId );
+        LOG.info( "Archived " + partition.entries + " log entries for " + month + " to " + file );
+        return partition.entries;
+    }
+
+    /**
+     * Deletes the entries from a month that have been archived, a batch at a
+     * time, so that the table is never locked for a whole month's worth of
+     * rows at once
+     *
+     * @param start
+     *            Start of the month (inclusive)
+     * @param end
+     *            End of the month (exclusive)
+     * @param maxId
+     *            Highest ID that was archived
+     */
+    private void deleteArchived ( final ZonedDateTime start, final ZonedDateTime end, final long maxId ) {
+        final PageRequest batch = PageRequest.of( 0, deleteBatchSize );
+        List<Long> ids;
+        do {
+            ids = repository.findArchivedIds( start, end, maxId, batch );
+            if ( !ids.isEmpty() ) {
+                repository.deleteByIds( ids );
+            }
+        }
+        while ( ids.size() == deleteBatchSize );
+    }
+
+    /**
+     * Writes out the manifest, replacing the old one in a single step so that
+     * it is never left half-written
+     *
+     * @param dir
+     *            Archive directory
+     * @throws IOException
+     *             If the manifest cannot be written
+     */
+    private void writeManifest ( final Path dir ) throws IOException {
+        final Path temp = dir.resolve( MANIFEST + ".tmp" );
+        try ( Writer writer = Files.newBufferedWriter( temp, StandardCharsets.UTF_8 ) ) {
+            GSON.toJson( manifest, writer );
+        }
+        Files.move( temp, dir.resolve( MANIFEST ), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    private BufferedReader open ( final Partition partition ) throws IOException {
+        return new BufferedReader( new InputStreamReader(
+                new GZIPInputStream( Files.newInputStream( Paths.get( directory, partition.file ) ) ),
+                StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Contents of the manifest file
+     */
+    private static final class Manifest {
+
+        /** Every archive file written, in the order they were written */
+        private final List<Partition> partitions = new ArrayList<Partition>();
+
+    }
+
+    /**
+     * One archive file, as recorded in the manifest
+     */
+    public static final class Partition {
+
+        /** Month the entries are from, eg `2020-06` */
+        private String                         month;
+
+        /** Name of the archive file, relative to the archive directory */
+        private String                         file;
+
+        /** Number of entries in the file */
+        private long                           entries;
+
+        /** Earliest entry time in the file (epoch millis) */
+        private long                           from;
+
+        /** Latest entry time in the file (epoch millis) */
+        private long                           to;
+
+        /** Highest entry ID in the file */
+        private long                           maxId;
+
+        /**
+         * Number of entries in the file for each user (as the primary or
+         * secondary user), by the name of their TransactionType; null for
+         * files archived before these were recorded
+         */
+        private Map<String, Map<String, Long>> users;
+
+        /**
+         * Gets the month the entries are from
+         *
+         * @return The month, eg `2020-06`
+         */
+        public String getMonth () {
+            return month;
+        }
+
+        /**
+         * Gets the name of the archive file
+         *
+         * @return File name, relative to the archive directory
+         */
+        public String getFile () {
+            return file;
+        }
+
+        /**
+         * Gets the number of entries in the file
+         *
+         * @return Number of entries
+         */
+        public long getEntries () {
+            return entries;
+        }
+
+        /**
+         * Checks whether the file may hold entries of the given types for a
+         * user. Files archived before users were recorded always may.
+         */
+        private boolean mayHold ( final String user, final Set<TransactionType> types ) {
+            return null == users || count( user, types ) > 0;
+        }
+
+        /**
+         * Counts the entries of the given types (or all of them, if null) for
+         * a user in the file
+         */
+        private long count ( final String user, final Set<TransactionType> types ) {
+            final Map<String, Long> byType = users.get( user );
+            if ( null == byType ) {
+                return 0;
+            }
+            return byType.entrySet().stream()
+                    .filter( e -> null == types || types.contains( TransactionType.valueOf( e.getKey() ) ) )
+                    .mapToLong( Map.Entry::getValue ).sum();
+        }
+
+        /**
+         * Records one more entry of a type for a user
+         */
+        private void record ( final String user, final String code ) {
+            if ( null != user ) {
+                users.computeIfAbsent( user, u -> new HashMap<String, Long>() ).merge( code, 1L, Long::sum );
+            }
+        }
+
+    }
+
+    /**
+     * A LogEntry as written to an archive file
+     */
+    private static final class ArchivedEntry {
+
+        /** ID the entry had in the database */
+        private Long   id;
+
+        /** Time of the event (epoch millis) */
+        private long   time;
+
+        /** Name of the TransactionType */
+        private String code;
+
+        /** Primary user */
+        private String primaryUser;
+
+        /** Secondary user, if any */
+        private String secondaryUser;
+
+        /** Message, if any */
+        private String message;
+
+        private ArchivedEntry ( final LogEntry le ) {
+            id = le.getId();
+            time = le.getTime().toInstant().toEpochMilli();
+            code = le.getLogCode().name();
+            primaryUser = le.getPrimaryUser();
+            secondaryUser = le.getSecondaryUser();
+            message = le.getMessage();
+        }
+
+        /**
+         * Converts this back into a (detached) LogEntry, with the ID it had
+         * in the database
+         */
+        private LogEntry toLogEntry () {
+            final LogEntry le = new LogEntry( TransactionType.valueOf( code ), primaryUser, secondaryUser, message );
+            le.setTime( Instant.ofEpochMilli( time ).atZone( ZoneId.systemDefault() ) );
+            le.setId( id );
+            return le;
+        }
+
+    }
+
+    /**
+     * Reads the entries within a range out of an archive file, a line at a
+     * time
+     */
+    private static final class PartitionReader implements CloseableIterator<LogEntry> {
+
+        /** The archive file */
+        private final BufferedReader reader;
+
+        /** Start of the range (epoch millis, inclusive) */
+        private final long           from;
+
+        /** End of the range (epoch millis, inclusive) */
+        private final long           to;
+
+        /** The next entry in the range, if it has been read already */
+        private LogEntry             next;
+
+        PartitionReader ( final BufferedReader reader, final long from, final long to ) {
+            this.reader = reader;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext () {
+            if ( null == next ) {
+                try {
+                    String line;
+                    while ( null == next && null != ( line = reader.readLine() ) ) {
+                        final ArchivedEntry entry = GSON.fromJson( line, ArchivedEntry.class );
+                        if ( entry.time >= from && entry.time <= to ) {
+                            next = entry.toLogEntry();
+                        }
+                    }
+                }
+                catch ( final IOException e ) {
+                    throw new UncheckedIOException( e );
+                }
+            }
+            return null != next;
+        }
+
+        @Override
+        public LogEntry next () {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            final LogEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        @Override
+        public void close () {
+            try {
+                reader.close();
+            }
+            catch ( final IOException e ) {
+                LOG.warn( "Failed to close log archive", e );
+            }
+        }
+
+    }
+
+}
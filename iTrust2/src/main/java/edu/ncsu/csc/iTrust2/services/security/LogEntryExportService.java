@@ -0,0 +1,496 @@
+package edu.ncsu.csc.iTrust2.services.security;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.Gson;
+
+import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
+import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+import edu.ncsu.csc.iTrust2.utils.SegmentedAuditLog;
+
+/**
+ * Streams the audit log out for compliance exports. Rather than loading
+ * LogEntries through Hibernate (which keeps every entity it reads in memory
+ * until the transaction ends), rows are read from a forward-only JDBC cursor a
+ * fixed number at a time and written straight to the output, so an export
+ * takes the same amount of memory no matter how many rows it covers. The
+ * database connection is only held while the rows are being written.
+ *
+ * Not every entry is in the database: HTTP request events are kept in the
+ * SegmentedAuditLog (when it is enabled), and months older than the retention
+ * period are moved out by the LogEntryArchiveService. The segments and archive
+ * files overlapping the range are read as the export goes, and merged in with
+ * the database rows in time order, so the export covers the whole log.
+ *
+ * With MySQL, the fetch size is only honoured if the connection URL includes
+ * `useCursorFetch=true`; otherwise the driver reads every row up front.
+ */
+@Component
+public class LogEntryExportService {
+
+    /**
+     * Formats that the log can be exported in
+     */
+    public enum Format {
+        /** One JSON object per line */
+        NDJSON ( "application/x-ndjson", "ndjson" ),
+        /** Comma-separated values, with a header row */
+        CSV ( "text/csv", "csv" );
+
+        /** MIME type of the format */
+        private final String contentType;
+
+        /** File extension for the format */
+        private final String extension;
+
+        private Format ( final String contentType, final String extension ) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        /**
+         * Gets the MIME type of the format
+         *
+         * @return MIME type
+         */
+        public String getContentType () {
+            return contentType;
+        }
+
+        /**
+         * Gets the file extension for the format
+         *
+         * @return File extension, without a leading dot
+         */
+        public String getExtension () {
+            return extension;
+        }
+    }
+
+    /** Columns written, in order */
+    private static final String[]          COLUMNS  = { "id", "time", "code", "type", "primaryUser",
+            "secondaryUser", "message" };
+
+    /** Gson instance, for writing NDJSON rows */
+    private static final Gson              GSON     = new Gson();
+
+    /** TransactionTypes, by ordinal (as stored in the table) */
+    private static final TransactionType[] TYPES    = TransactionType.values();
+
+    /** Start of the range exported when no start date is given */
+    private static final ZonedDateTime     EARLIEST = ZonedDateTime.of( 1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC );
+
+    /** End of the range exported when no end date is given */
+    private static final ZonedDateTime     LATEST   = ZonedDateTime.of( 9000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC );
+
+    /** DataSource to read the log from */
+    @Autowired
+    private DataSource                     dataSource;
+
+    /**
+     * Store that HTTP request events are written to instead of the database;
+     * absent if disabled with `itrust2.audit.segments.enabled`
+     */
+    @Autowired ( required = false )
+    private SegmentedAuditLog              segmentLog;
+
+    /** Archive that old months of entries are moved out to */
+    @Autowired
+    private LogEntryArchiveService         archive;
+
+    /** Number of rows fetched from the database at a time */
+    @Value ( "${itrust2.audit.export.fetch-size:1000}" )
+    private int                            fetchSize;
+
+    /** JdbcTemplate configured for streaming reads */
+    private JdbcTemplate                   jdbc;
+
+    /**
+     * Sets up the JdbcTemplate used for exports
+     */
+    @PostConstruct
+    public void init () {
+        jdbc = new JdbcTemplate( dataSource );
+        jdbc.setFetchSize( fetchSize );
+    }
+
+    /**
+     * Writes every LogEntry matching the filters to the output, oldest first.
+     * Each filter is optional.
+     *
+     * @param user
+     *            Only include entries where this is the primary or secondary
+     *            user, or null for all users
+     * @param startDate
+     *            Start date (inclusive), or null for no lower bound
+     * @param endDate
+     *            End date (inclusive), or null for no upper bound
+     * @param types
+     *            TransactionTypes to include, or null for all of them
+     * @param format
+     *            Format to write the entries in
+     * @param out
+     *            Stream to write to; it is flushed, but not closed
+     * @return Number of entries written
+     * @throws IOException
+     *             If the output cannot be written to
+     */
+    public long export ( final String user, final ZonedDateTime startDate, final ZonedDateTime endDate,
+            final Set<TransactionType> types, final Format format, final OutputStream out ) throws IOException {
+        final StringBuilder sql = new StringBuilder(
+                "SELECT id, time, log_code, primary_user, secondary_user, message FROM log_entry WHERE 1 = 1" );
+        final List<Object> args = new ArrayList<Object>();
+        if ( null != user ) {
+            sql.append( " AND ( primary_user = ? OR secondary_user = ? )" );
+            args.add( user );
+            args.add( user );
+        }
+        if ( null != startDate ) {
+            sql.append( " AND time >= ?" );
+            args.add( Timestamp.from( startDate.toInstant() ) );
+        }
+        if ( null != endDate ) {
+            sql.append( " AND time <= ?" );
+            args.add( Timestamp.from( endDate.toInstant() ) );
+        }
+        if ( null != types ) {
+            if ( types.isEmpty() ) {
+                sql.append( " AND 1 = 0" );
+            }
+            else {
+                sql.append( " AND log_code IN (" );
+                String separator = "";
+                for ( final TransactionType type : types ) {
+                    sql.append( separator ).append( '?' );
+                    args.add( type.ordinal() );
+                    separator = ", ";
+                }
+                sql.append( ')' );
+            }
+        }
+        sql.append( " ORDER BY time, id" );
+
+        final Writer writer = new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ) );
+        if ( Format.CSV == format ) {
+            writer.write( String.join( ",", COLUMNS ) );
+            writer.write( "\r\n" );
+        }
+
+        final long[] count = { 0 };
+        // Entries kept outside of the database, merged in as the rows go past
+        try ( Merge others = others( user, startDate, endDate, types ) ) {
+            final RowCallbackHandler handler = rs -> {
+                final Row row = new Row( rs );
+                try {
+                    count[0] += writeBefore( others, row.time, format, writer );
+                    row.write( format, writer );
+                }
+                catch ( final IOException e ) {
+                    throw new UncheckedIOException( e );
+                }
+                count[0]++;
+            };
+            jdbc.query( sql.toString(), handler, args.toArray() );
+            count[0] += writeBefore( others, Instant.MAX, format, writer );
+        }
+        catch ( final UncheckedIOException e ) {
+            throw e.getCause();
+        }
+        writer.flush();
+        return count[0];
+    }
+
+    /**
+     * Opens every source of entries outside of the database that overlaps
+     * the range: the SegmentedAuditLog, unless the types filter leaves out
+     * HTTP requests, and each archive file
+     *
+     * @return The entries matching the filters from all of the sources; must
+     *         be closed once the export is done
+     * @throws IOException
+     *             If an archive file cannot be opened
+     */
+    private Merge others ( final String user, final ZonedDateTime startDate, final ZonedDateTime endDate,
+            final Set<TransactionType> types ) throws IOException {
+        final ZonedDateTime from = null == startDate ? EARLIEST : startDate;
+        final ZonedDateTime to = null == endDate ? LATEST : endDate;
+        final Merge merge = new Merge( user, types );
+        try {
+            if ( null != segmentLog && ( null == types || types.contains( TransactionType.HTTP_REQUEST ) ) ) {
+                merge.add( segmentLog.read( from, to ) );
+            }
+            for ( final LogEntryArchiveService.Partition partition : archive.getPartitions( from, to ) ) {
+                merge.add( archive.read( partition, from, to ) );
+            }
+        }
+        catch ( final IOException | RuntimeException e ) {
+            merge.close();
+            throw e;
+        }
+        return merge;
+    }
+
+    /**
+     * Writes out every row from the other sources that is older than the
+     * given time
+     *
+     * @param others
+     *            Rows from the other sources
+     * @param time
+     *            Time to write rows up to (exclusive)
+     * @param format
+     *            Format to write them in
+     * @param writer
+     *            Where to write them to
+     * @return Number of rows written
+     * @throws IOException
+     *             If a row cannot be written
+     */
+    private static long writeBefore ( final Merge others, final Instant time, final Format format,
+            final Writer writer ) throws IOException {
+        long written = 0;
+        while ( others.hasNext() && others.peek().time.isBefore( time ) ) {
+            others.next().write( format, writer );
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * Formats a value as a CSV field, quoting it if needed
+     *
+     * @param value
+     *            Value to format
+     * @return The CSV field
+     */
+    private static String csv ( final Object value ) {
+        if ( null == value ) {
+            return "";
+        }
+        final String str = value.toString();
+        if ( str.indexOf( ',' ) < 0 && str.indexOf( '"' ) < 0 && str.indexOf( '\n' ) < 0
+                && str.indexOf( '\r' ) < 0 ) {
+            return str;
+        }
+        return '"' + str.replace( "\"", "\"\"" ) + '"';
+    }
+
+    /**
+     * One exported entry, from whichever source it was read from
+     */
+    private static final class Row {
+
+        /** ID of the entry in the database, if it was ever there */
+        private final Long            id;
+
+        /** Time of the event */
+        private final Instant         time;
+
+        /** Type of the event */
+        private final TransactionType type;
+
+        /** Primary user */
+        private final String          primaryUser;
+
+        /** Secondary user, if any */
+        private final String          secondaryUser;
+
+        /** Message, if any */
+        private final String          message;
+
+        /**
+         * Reads the current row of a result set
+         */
+        Row ( final ResultSet rs ) throws SQLException {
+            id = rs.getLong( "id" );
+            time = rs.getTimestamp( "time" ).toInstant();
+            type = TYPES[rs.getInt( "log_code" )];
+            primaryUser = rs.getString( "primary_user" );
+            secondaryUser = rs.getString( "secondary_user" );
+            message = rs.getString( "message" );
+        }
+
+        /**
+         * Takes an event that was never stored in the database
+         */
+        Row ( final LogEntry le ) {
+            id = le.getId();
+            time = le.getTime().toInstant();
+            type = le.getLogCode();
+            primaryUser = le.getPrimaryUser();
+            secondaryUser = le.getSecondaryUser();
+            message = le.getMessage();
+        }
+
+        /**
+         * Writes out the row
+         *
+         * @param format
+         *            Format to write it in
+         * @param writer
+         *            Where to write it to
+         * @throws IOException
+         *             If the row cannot be written
+         */
+        void write ( final Format format, final Writer writer ) throws IOException {
+            final Object[] values = { id, time.atZone( ZoneId.systemDefault() ).toOffsetDateTime().toString(),
+                    type.getCode(), type.name(), primaryUser, secondaryUser, message };
+
+            if ( Format.NDJSON == format ) {
+                final Map<String, Object> row = new LinkedHashMap<String, Object>();
+                for ( int i = 0; i < COLUMNS.length; i++ ) {
+                    row.put( COLUMNS[i], values[i] );
+                }
+                writer.write( GSON.toJson( row ) );
+                writer.write( '\n' );
+            }
+            else {
+                for ( int i = 0; i < values.length; i++ ) {
+                    if ( i > 0 ) {
+                        writer.write( ',' );
+                    }
+                    writer.write( csv( values[i] ) );
+                }
+                writer.write( "\r\n" );
+            }
+        }
+
+    }
+
+    /**
+     * Merges entries matching the filters from several sources, each oldest
+     * first, into one series of rows that is oldest first
+     */
+    private static final class Merge implements Iterator<Row>, Closeable {
+
+        /** The next row from each source that has any left, oldest first */
+        private final PriorityQueue<Head>  heads  = new PriorityQueue<Head>(
+                ( a, b ) -> a.row.time.compareTo( b.row.time ) );
+
+        /** Sources that hold a file open until they are closed */
+        private final List<Closeable>      opened = new ArrayList<Closeable>();
+
+        /** Only include entries for this user, or null for all users */
+        private final String               user;
+
+        /** Only include these types, or null for all of them */
+        private final Set<TransactionType> types;
+
+        Merge ( final String user, final Set<TransactionType> types ) {
+            this.user = user;
+            this.types = types;
+        }
+
+        /**
+         * Adds a source of entries. Sources that are Closeable are closed
+         * along with the Merge.
+         *
+         * @param entries
+         *            Entries from the source, oldest first
+         */
+        void add ( final Iterator<LogEntry> entries ) {
+            if ( entries instanceof Closeable ) {
+                opened.add( (Closeable) entries );
+            }
+            final Iterator<Row> source = StreamSupport
+                    .stream( Spliterators.spliteratorUnknownSize( entries, Spliterator.ORDERED ), false )
+                    .filter( le -> null == types || types.contains( le.getLogCode() ) )
+                    .filter( le -> null == user || user.equals( le.getPrimaryUser() )
+                            || user.equals( le.getSecondaryUser() ) )
+                    .map( Row::new ).iterator();
+            if ( source.hasNext() ) {
+                heads.add( new Head( source.next(), source ) );
+            }
+        }
+
+        @Override
+        public boolean hasNext () {
+            return !heads.isEmpty();
+        }
+
+        /**
+         * Gets the next row without moving past it
+         *
+         * @return The oldest row left
+         */
+        Row peek () {
+            if ( heads.isEmpty() ) {
+                throw new NoSuchElementException();
+            }
+            return heads.peek().row;
+        }
+
+        @Override
+        public Row next () {
+            final Head head = heads.poll();
+            if ( null == head ) {
+                throw new NoSuchElementException();
+            }
+            if ( head.source.hasNext() ) {
+                heads.add( new Head( head.source.next(), head.source ) );
+            }
+            return head.row;
+        }
+
+        @Override
+        public void close () throws IOException {
+            for ( final Closeable source : opened ) {
+                source.close();
+            }
+        }
+
+        /**
+         * The next row from a source, and the rest of the source
+         */
+        private static final class Head {
+
+            /** The row */
+            private final Row           row;
+
+            /** The rows after it */
+            private final Iterator<Row> source;
+
+            Head ( final Row row, final Iterator<Row> source ) {
+                this.row = row;
+                this.source = source;
+            }
+
+        }
+
+    }
+
+}
@@ -1,15 +1,24 @@
 package edu.ncsu.csc.iTrust2.services.security;
 
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
 
+import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.models.security.LogEntry;
 import edu.ncsu.csc.iTrust2.repositories.security.LogEntryRepository;
 import edu.ncsu.csc.iTrust2.services.Service;
@@ -17,6 +26,11 @@ import edu.ncsu.csc.iTrust2.services.Service;
 /**
  * Service for interacting with LogEntries. Used by the LoggerUtil class.
  *
+ * Entries older than the retention period are moved out of the database by
+ * the LogEntryArchiveService. The date-range and paged lookups here merge the
+ * archived entries back in, in the same newest-first order as the database's,
+ * so a user's log reads the same whether or not part of it has been archived.
+ *
  * @author Kai Presler-Marshall
  *
  */
@@ -24,11 +38,28 @@ import edu.ncsu.csc.iTrust2.services.Service;
 @Transactional
 public class LogEntryService extends Service<LogEntry, Long> {
 
+    /** Start of the range searched when no start date is given */
+    static final ZonedDateTime        EARLIEST     = ZonedDateTime.of( 1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC );
+
+    /** End of the range searched when no end date is given */
+    static final ZonedDateTime        LATEST       = ZonedDateTime.of( 9000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC );
+
+    /** Order entries are listed in: newest first, by time and then ID */
+    static final Comparator<LogEntry> NEWEST_FIRST = Comparator
+            .comparing( ( final LogEntry le ) -> le.getTime().toInstant() ).thenComparing( LogEntry::getId )
+            .reversed();
+
     /**
      * LogEntry repository, for CRUD tasks
      */
     @Autowired
-    private LogEntryRepository repository;
+    private LogEntryRepository     repository;
+
+    /**
+     * Archive of old LogEntries that have been moved out of the database
+     */
+    @Autowired
+    private LogEntryArchiveService archive;
 
     @Override
     protected JpaRepository<LogEntry, Long> getRepository () {
@@ -48,7 +79,27 @@ public class LogEntryService extends Service<LogEntry, Long> {
     }
 
     /**
-     * Finds LogEntries for a user within a provided date range.
+     * Finds the most recent LogEntries for a given user, where they are the
+     * primary or secondary user. Only the requested number of entries are read
+     * from the database.
+     *
+     * @param user
+     *            User to find entries for
+     * @param top
+     *            Number of entries to find
+     * @return Up to `top` LogEntries, newest first
+     */
+    public List<LogEntry> findTopForUser ( final String user, final int top ) {
+        if ( top < 1 ) {
+            return Collections.emptyList();
+        }
+        return findPageForUser( user, null, null, null, 0, top );
+    }
+
+    /**
+     * Finds LogEntries for a user within a provided date range. If the range
+     * reaches back past the retention period, matching entries that have been
+     * archived are included too.
      * 
      * @param user
      *            User to find entries for. Both dates inclusive.
@@ -56,17 +107,248 @@ public class LogEntryService extends Service<LogEntry, Long> {
      *            Start date
      * @param endDate
      *            End date
-     * @return Matching LogEntries
+     * @return Matching LogEntries, newest first
      */
     public List<LogEntry> findByDateRange ( final String user, final ZonedDateTime startDate,
             final ZonedDateTime endDate ) {
+        final List<LogEntry> entries = repository.findByUserAndTimeBetween( user, startDate, endDate );
+        entries.addAll( archive.findForUser( user, startDate, endDate, null ) );
+        entries.sort( NEWEST_FIRST );
+        return entries;
+    }
+
+    /**
+     * Finds one page of LogEntries for a user, newest first, by page number.
+     * Prefer `findPageForUserAfter` when the last entry of the previous page is
+     * known, as the database has to skip over every earlier page here.
+     *
+     * When some of the user's entries are archived, earlier pages aren't read
+     * from either source: the entry just before the page is found by a binary
+     * search over the archived entries, counting the database entries newer
+     * than each one it tries, and the page is then read on from it as if it
+     * were a cursor.
+     *
+     * @param user
+     *            User to find entries for
+     * @param startDate
+     *            Start date (inclusive), or null for no lower bound
+     * @param endDate
+     *            End date (inclusive), or null for no upper bound
+     * @param types
+     *            TransactionTypes to include, or null for all of them
+     * @param page
+     *            Page to retrieve, starting from 0
+     * @param pageLength
+     *            Number of entries per page
+     * @return Matching LogEntries
+     */
+    public List<LogEntry> findPageForUser ( final String user, final ZonedDateTime startDate,
+            final ZonedDateTime endDate, final Set<TransactionType> types, final int page, final int pageLength ) {
+        final List<LogEntry> archived = archive.findForUser( user, orEarliest( startDate ), orLatest( endDate ),
+                types );
+        if ( archived.isEmpty() ) {
+            return findPage( user, startDate, endDate, types, PageRequest.of( page, pageLength ) );
+        }
+        if ( 0 == page ) {
+            return merge( findPage( user, startDate, endDate, types, PageRequest.of( 0, pageLength ) ), archived,
+                    pageLength );
+        }
+        final LogEntry last = findAt( user, startDate, endDate, types, archived, (long) page * pageLength - 1 );
+        if ( null == last ) {
+            return Collections.emptyList();
+        }
+        return findPageAfter( user, startDate, endDate, types, archived, last.getTime(), last.getId(),
+                pageLength );
+    }
+
+    /**
+     * Finds one page of LogEntries for a user, newest first, starting just
+     * after the given entry.
+     *
+     * @param user
+     *            User to find entries for
+     * @param startDate
+     *            Start date (inclusive), or null for no lower bound
+     * @param endDate
+     *            End date (inclusive), or null for no upper bound
+     * @param types
+     *            TransactionTypes to include, or null for all of them
+     * @param afterTime
+     *            Time of the last entry on the previous page
+     * @param afterId
+     *            ID of the last entry on the previous page
+     * @param pageLength
+     *            Number of entries per page
+     * @return Matching LogEntries
+     */
+    public List<LogEntry> findPageForUserAfter ( final String user, final ZonedDateTime startDate,
+            final ZonedDateTime endDate, final Set<TransactionType> types, final ZonedDateTime afterTime,
+            final Long afterId, final int pageLength ) {
+        return findPageAfter( user, startDate, endDate, types,
+                archive.findForUser( user, orEarliest( startDate ), orLatest( endDate ), types ), afterTime, afterId,
+                pageLength );
+    }
+
+    /**
+     * Counts the LogEntries for a user within a date range
+     *
+     * @param user
+     *            User to count entries for
+     * @param startDate
+     *            Start date (inclusive), or null for no lower bound
+     * @param endDate
+     *            End date (inclusive), or null for no upper bound
+     * @param types
+     *            TransactionTypes to include, or null for all of them
+     * @return Number of matching LogEntries
+     */
+    public long countForUser ( final String user, final ZonedDateTime startDate, final ZonedDateTime endDate,
+            final Set<TransactionType> types ) {
+        final long archived = archive.countForUser( user, orEarliest( startDate ), orLatest( endDate ), types );
+        if ( null == types ) {
+            return archived + repository.countForUser( user, orEarliest( startDate ), orLatest( endDate ) );
+        }
+        return archived
+                + repository.countForUserOfTypes( user, orEarliest( startDate ), orLatest( endDate ), types );
+    }
+
+    /**
+     * Reads a page of LogEntries for a user from the database, newest first
+     */
+    private List<LogEntry> findPage ( final String user, final ZonedDateTime startDate, final ZonedDateTime endDate,
+            final Set<TransactionType> types, final Pageable pageable ) {
+        if ( null == types ) {
+            return repository.findPageForUser( user, orEarliest( startDate ), orLatest( endDate ), pageable );
+        }
+        return repository.findPageForUserOfTypes( user, orEarliest( startDate ), orLatest( endDate ), types,
+                pageable );
+    }
+
+    /**
+     * Reads a page of LogEntries for a user that come after the given entry,
+     * taking up to a page from each of the database and the archived entries
+     * and merging them
+     */
+    private List<LogEntry> findPageAfter ( final String user, final ZonedDateTime startDate,
+            final ZonedDateTime endDate, final Set<TransactionType> types, final List<LogEntry> archived,
+            final ZonedDateTime afterTime, final Long afterId, final int pageLength ) {
+        final Pageable pageable = PageRequest.of( 0, pageLength );
+        final List<LogEntry> entries = null == types
+                ? repository.findPageForUserAfter( user, orEarliest( startDate ), orLatest( endDate ), afterTime,
+                        afterId, pageable )
+                : repository.findPageForUserOfTypesAfter( user, orEarliest( startDate ), orLatest( endDate ), types,
+                        afterTime, afterId, pageable );
+
+        final Instant after = afterTime.toInstant();
+        final List<LogEntry> page = archived.stream()
+                .filter( le -> le.getTime().toInstant().isBefore( after )
+                        || le.getTime().toInstant().equals( after ) && le.getId() < afterId )
+                .limit( pageLength ).collect( Collectors.toList() );
+        if ( page.isEmpty() ) {
+            return entries;
+        }
+        return merge( entries, page, pageLength );
+    }
+
+    /**
+     * Finds the entry at a position in a user's log, newest first, with the
+     * database and archived entries merged. Each archived entry's position is
+     * its index among the archived entries plus the number of database
+     * entries newer than it, which only grows along the list, so the archived
+     * entries before the position are found by a binary search; the rest
+     * before it come from the database.
+     *
+     * @param user
+     *            User to find the entry for
+     * @param startDate
+     *            Start date (inclusive), or null for no lower bound
+     * @param endDate
+     *            End date (inclusive), or null for no upper bound
+     * @param types
+     *            TransactionTypes to include, or null for all of them
+     * @param archived
+     *            The user's archived entries in the range, newest first
+     * @param position
+     *            Position of the entry, starting from 0
+     * @return The entry, or null if there are not that many
+     */
+    private LogEntry findAt ( final String user, final ZonedDateTime startDate, final ZonedDateTime endDate,
+            final Set<TransactionType> types, final List<LogEntry> archived, final long position ) {
+        // Find the first archived entry that comes after the position
+        int low = 0;
+        int high = archived.size();
+        while ( low < high ) {
+            final int mid = ( low + high ) >>> 1;
+            final LogEntry le = archived.get( mid );
+            final long at = mid + countNewer( user, startDate, endDate, types, le );
+            if ( at == position ) {
+                return le;
+            }
+            if ( at < position ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        // Every entry before it, up to the position, is in the database
+        final long index = position - low;
+        if ( index > Integer.MAX_VALUE ) {
+            return null;
+        }
+        final List<LogEntry> entry = findPage( user, startDate, endDate, types, PageRequest.of( (int) index, 1 ) );
+        return entry.isEmpty() ? null : entry.get( 0 );
+    }
 
-        final List<LogEntry> withinRange = repository.findByTimeBetween( startDate, endDate );
+    /**
+     * Counts the LogEntries for a user in the database that are newer than
+     * the given one
+     */
+    private long countNewer ( final String user, final ZonedDateTime startDate, final ZonedDateTime endDate,
+            final Set<TransactionType> types, final LogEntry le ) {
+        if ( null == types ) {
+            return repository.countForUserNewer( user, orEarliest( startDate ), orLatest( endDate ), le.getTime(),
+                    le.getId() );
+        }
+        return repository.countForUserOfTypesNewer( user, orEarliest( startDate ), orLatest( endDate ), types,
+                le.getTime(), le.getId() );
+    }
 
-        return withinRange.stream()
-                .filter( e -> e.getPrimaryUser().equals( user ) || e.getSecondaryUser().equals( user ) )
-                .collect( Collectors.toList() );
+    /**
+     * Merges entries from the database with archived ones, and takes the
+     * first page of the result
+     *
+     * @param entries
+     *            Entries from the database, newest first
+     * @param archived
+     *            Archived entries, newest first
+     * @param pageLength
+     *            Number of entries to take
+     * @return The page, newest first
+     */
+    private static List<LogEntry> merge ( final List<LogEntry> entries, final List<LogEntry> archived,
+            final int pageLength ) {
+        final List<LogEntry> merged = new ArrayList<LogEntry>();
+        int i = 0;
+        int j = 0;
+        while ( merged.size() < pageLength && ( i < entries.size() || j < archived.size() ) ) {
+            if ( j == archived.size()
+                    || i < entries.size() && NEWEST_FIRST.compare( entries.get( i ), archived.get( j ) ) <= 0 ) {
+                merged.add( entries.get( i++ ) );
+            }
+            else {
+                merged.add( archived.get( j++ ) );
+            }
+        }
+        return merged;
+    }
+
+    private static ZonedDateTime orEarliest ( final ZonedDateTime date ) {
+        return null == date ? EARLIEST : date;
+    }
 
+    private static ZonedDateTime orLatest ( final ZonedDateTime date ) {
+        return null == date ? LATEST : date;
     }
 
 }
@@ -1,18 +1,31 @@
 package edu.ncsu.csc.iTrust2.services.security;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
 import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.security.LoginBan;
 import edu.ncsu.csc.iTrust2.repositories.security.LoginBanRepository;
 import edu.ncsu.csc.iTrust2.services.Service;
+import edu.ncsu.csc.iTrust2.utils.ExpiringCache;
 
 /**
- * Service for interacting with LoginBans
+ * Service for interacting with LoginBans. Whether an IP address is banned is
+ * checked on every request (see IPFilter), so the answer is cached for a short
+ * time, and dropped from the cache whenever bans for that address are saved
+ * or removed here.
  *
  * @author Kai Presler-Marshall
  *
@@ -21,11 +34,21 @@ import edu.ncsu.csc.iTrust2.services.Service;
 @Transactional
 public class LoginBanService extends Service<LoginBan, Long> {
 
+    /** Maximum number of IP addresses whose status is cached */
+    private static final int               CACHE_SIZE = 100000;
+
     /**
      * Repository for CRUD actions
      */
     @Autowired
-    private LoginBanRepository repository;
+    private LoginBanRepository             repository;
+
+    /** How long (seconds) to cache whether an IP address is banned */
+    @Value ( "${itrust2.login.status-cache-seconds:30}" )
+    private long                           cacheSeconds;
+
+    /** Whether each IP address is banned, by address */
+    private ExpiringCache<String, Boolean> ipBans;
 
     @Override
     protected JpaRepository<LoginBan, Long> getRepository () {
@@ -33,14 +56,61 @@ public class LoginBanService extends Service<LoginBan, Long> {
     }
 
     /**
-     * Checks if an IP address is banned
-     * 
+     * Sets up the cache of IP bans
+     */
+    @PostConstruct
+    public void init () {
+        ipBans = new ExpiringCache<String, Boolean>( TimeUnit.SECONDS.toMillis( cacheSeconds ), CACHE_SIZE );
+    }
+
+    @Override
+    public void save ( final LoginBan obj ) {
+        super.save( obj );
+        if ( null != obj.getIp() ) {
+            invalidate( obj.getIp() );
+        }
+    }
+
+    @Override
+    public void saveAll ( final List<LoginBan> objects ) {
+        super.saveAll( objects );
+        objects.stream().filter( o -> null != o.getIp() ).forEach( o -> invalidate( o.getIp() ) );
+    }
+
+    @Override
+    public void delete ( final LoginBan obj ) {
+        super.delete( obj );
+        if ( null != obj.getIp() ) {
+            invalidate( obj.getIp() );
+        }
+    }
+
+    @Override
+    public void deleteAll () {
+        super.deleteAll();
+        invalidate( null );
+    }
+
+    /**
+     * Drops expired entries from the cache of IP bans
+     */
+    @Scheduled ( fixedDelay = 60000 )
+    public void evictExpired () {
+        ipBans.evictExpired();
+    }
+
+    /**
+     * Checks if an IP address is banned. The answer is usually cached, so this
+     * does not start a transaction of its own; only a lookup that misses the
+     * cache goes to the database (in a transaction of the repository's).
+     *
      * @param ipAddress
      *            IP address to check
      * @return Ban status
      */
+    @Transactional ( TxType.SUPPORTS )
     public boolean isIPBanned ( final String ipAddress ) {
-        return repository.existsByIp( ipAddress );
+        return ipBans.get( ipAddress, repository::existsByIp );
     }
 
     /**
@@ -62,7 +132,9 @@ public class LoginBanService extends Service<LoginBan, Long> {
      * @return Number of bans deleted
      */
     public long clearIP ( final String ipAddress ) {
-        return repository.deleteByIp( ipAddress );
+        final long deleted = repository.deleteByIp( ipAddress );
+        invalidate( ipAddress );
+        return deleted;
     }
 
     /**
@@ -75,4 +147,35 @@ public class LoginBanService extends Service<LoginBan, Long> {
     public long clearUser ( final User user ) {
         return repository.deleteByUser( user );
     }
+
+    /**
+     * Drops an IP address from the cache, both now and once the current
+     * transaction commits, so that a lookup which runs in between can't cache
+     * the old answer.
+     *
+     * @param ipAddress
+     *            Address to drop, or null to drop everything
+     */
+    private void invalidate ( final String ipAddress ) {
+        if ( null == ipAddress ) {
+            ipBans.invalidateAll();
+        }
+        else {
+            ipBans.invalidate( ipAddress );
+        }
+        if ( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit () {
+                    if ( null == ipAddress ) {
+                        ipBans.invalidateAll();
+                    }
+                    else {
+                        ipBans.invalidate( ipAddress );
+                    }
+                }
+            } );
+        }
+    }
+
 }
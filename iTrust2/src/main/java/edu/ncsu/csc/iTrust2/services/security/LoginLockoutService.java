@@ -1,21 +1,32 @@
 package edu.ncsu.csc.iTrust2.services.security;
 
 import java.time.ZonedDateTime;
-import java.util.stream.Collectors;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
 import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.security.LoginLockout;
 import edu.ncsu.csc.iTrust2.repositories.security.LoginLockoutRepository;
 import edu.ncsu.csc.iTrust2.services.Service;
+import edu.ncsu.csc.iTrust2.utils.ExpiringCache;
 
 /**
- * Service for interacting with the LoginLockout model
+ * Service for interacting with the LoginLockout model. Whether an IP address
+ * is locked out is checked on every request (see IPFilter), so the answer is
+ * cached for a short time, and dropped from the cache whenever lockouts for
+ * that address are saved or removed here.
  *
  * @author Kai Presler-Marshall
  *
@@ -24,11 +35,27 @@ import edu.ncsu.csc.iTrust2.services.Service;
 @Transactional
 public class LoginLockoutService extends Service<LoginLockout, Long> {
 
+    /** How long (minutes) a lockout lasts */
+    private static final long              LOCKOUT_MINUTES    = 60;
+
+    /** How far back (minutes) lockouts are counted towards a ban */
+    private static final long              BAN_WINDOW_MINUTES = 1440;
+
+    /** Maximum number of IP addresses whose status is cached */
+    private static final int               CACHE_SIZE         = 100000;
+
     /**
      * Repository for CRUD operations
      */
     @Autowired
-    private LoginLockoutRepository repository;
+    private LoginLockoutRepository         repository;
+
+    /** How long (seconds) to cache whether an IP address is locked out */
+    @Value ( "${itrust2.login.status-cache-seconds:30}" )
+    private long                           cacheSeconds;
+
+    /** Whether each IP address is locked out, by address */
+    private ExpiringCache<String, Boolean> ipLocks;
 
     @Override
     protected JpaRepository<LoginLockout, Long> getRepository () {
@@ -36,18 +63,61 @@ public class LoginLockoutService extends Service<LoginLockout, Long> {
     }
 
     /**
-     * Checks if an IP address is locked out
+     * Sets up the cache of IP lockouts
+     */
+    @PostConstruct
+    public void init () {
+        ipLocks = new ExpiringCache<String, Boolean>( TimeUnit.SECONDS.toMillis( cacheSeconds ), CACHE_SIZE );
+    }
+
+    @Override
+    public void save ( final LoginLockout obj ) {
+        super.save( obj );
+        if ( null != obj.getIp() ) {
+            invalidate( obj.getIp() );
+        }
+    }
+
+    @Override
+    public void saveAll ( final List<LoginLockout> objects ) {
+        super.saveAll( objects );
+        objects.stream().filter( o -> null != o.getIp() ).forEach( o -> invalidate( o.getIp() ) );
+    }
+
+    @Override
+    public void delete ( final LoginLockout obj ) {
+        super.delete( obj );
+        if ( null != obj.getIp() ) {
+            invalidate( obj.getIp() );
+        }
+    }
+
+    @Override
+    public void deleteAll () {
+        super.deleteAll();
+        invalidate( null );
+    }
+
+    /**
+     * Drops expired entries from the cache of IP lockouts
+     */
+    @Scheduled ( fixedDelay = 60000 )
+    public void evictExpired () {
+        ipLocks.evictExpired();
+    }
+
+    /**
+     * Checks if an IP address is locked out. The answer is usually cached, so
+     * this does not start a transaction of its own; only a lookup that misses
+     * the cache goes to the database (in a transaction of the repository's).
      *
      * @param ipAddress
      *            IP address to check
      * @return Lockout status
      */
+    @Transactional ( TxType.SUPPORTS )
     public boolean isIPLocked ( final String ipAddress ) {
-        final long now = ZonedDateTime.now().toEpochSecond();
-
-        return repository.findByIp( ipAddress ).stream().filter( e -> ( now - e.getTime().toEpochSecond() ) < 60 * 60 )
-                .collect( Collectors.toList() ).size() > 0; // locked if within
-                                                            // 60 minutes
+        return ipLocks.get( ipAddress, ip -> repository.existsByIpAndTimeAfter( ip, since( LOCKOUT_MINUTES ) ) );
     }
 
     /**
@@ -58,35 +128,31 @@ public class LoginLockoutService extends Service<LoginLockout, Long> {
      * @return Number of records deleted
      */
     public long clearIP ( final String ipAddress ) {
-        return repository.deleteByIp( ipAddress );
-
+        final long deleted = repository.deleteByIp( ipAddress );
+        invalidate( ipAddress );
+        return deleted;
     }
 
     /**
-     * Gets the number of IP lockouts for an address within the past 60 minutes
+     * Gets the number of IP lockouts for an address within the past 24 hours
      *
      * @param ipAddress
      *            IP address to check
      * @return Number of lockouts
      */
     public int getRecentIPLockouts ( final String ipAddress ) {
-        final long now = ZonedDateTime.now().toEpochSecond();
-        return repository.findByIp( ipAddress ).stream()
-                .filter( e -> ( now - e.getTime().toEpochSecond() ) < 1440 * 60 ).collect( Collectors.toList() ).size(); // 1440
-                                                                                                                         // minutes
+        return (int) repository.countByIpAndTimeAfter( ipAddress, since( BAN_WINDOW_MINUTES ) );
     }
 
     /**
-     * Gets the number of lockouts for a user within the past 60 minutes
+     * Gets the number of lockouts for a user within the past 24 hours
      *
      * @param user
      *            to check
      * @return Number of lockouts
      */
     public int getRecentUserLockouts ( final User user ) {
-        final long now = ZonedDateTime.now().toEpochSecond();
-        return repository.findByUser( user ).stream().filter( e -> ( now - e.getTime().toEpochSecond() ) < 1440 * 60 )
-                .collect( Collectors.toList() ).size(); // 1440 minutes
+        return (int) repository.countByUserAndTimeAfter( user, since( BAN_WINDOW_MINUTES ) );
     }
 
     /**
@@ -109,10 +175,48 @@ public class LoginLockoutService extends Service<LoginLockout, Long> {
      * @return Lockout status
      */
     public boolean isUserLocked ( final User user ) {
-        final long now = ZonedDateTime.now().toEpochSecond();
-        return repository.findByUser( user ).stream().filter( e -> ( now - e.getTime().toEpochSecond() ) < 60 * 60 )
-                .collect( Collectors.toList() ).size() > 0; // locked if within
-                                                            // 60 minutes
+        return repository.existsByUserAndTimeAfter( user, since( LOCKOUT_MINUTES ) );
+    }
+
+    /**
+     * Gets the start of a window ending now
+     *
+     * @param minutes
+     *            Length of the window
+     * @return When the window starts
+     */
+    private static ZonedDateTime since ( final long minutes ) {
+        return ZonedDateTime.now().minusMinutes( minutes );
+    }
+
+    /**
+     * Drops an IP address from the cache, both now and once the current
+     * transaction commits, so that a lookup which runs in between can't cache
+     * the old answer.
+     *
+     * @param ipAddress
+     *            Address to drop, or null to drop everything
+     */
+    private void invalidate ( final String ipAddress ) {
+        if ( null == ipAddress ) {
+            ipLocks.invalidateAll();
+        }
+        else {
+            ipLocks.invalidate( ipAddress );
+        }
+        if ( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit () {
+                    if ( null == ipAddress ) {
+                        ipLocks.invalidateAll();
+                    }
+                    else {
+                        ipLocks.invalidate( ipAddress );
+                    }
+                }
+            } );
+        }
     }
 
 }
@@ -0,0 +1,139 @@
+package edu.ncsu.csc.iTrust2.services.security;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.iTrust2.repositories.security.LoginLockoutRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Periodically deletes login records that can no longer affect anything:
+ * LoginLockouts older than the window in which they count towards a ban.
+ * LoginBans don't expire, so they are left alone, and failed attempts are
+ * only ever counted by the LoginThrottleService, never stored.
+ *
+ * Rows are deleted in small batches, each in its own transaction and by
+ * primary key, so the job never holds locks on more than one batch at a time.
+ * Deleting rows that are already gone is harmless, so it is safe for every
+ * node to run the job, even at the same time.
+ *
+ * The number of rows removed and the time spent are published through the
+ * actuator `metrics` endpoint as `itrust2.security.purge.rows` and
+ * `itrust2.security.purge`, both tagged with the table.
+ */
+@Component
+public class LoginPurgeService {
+
+    /** Logger, for reporting what was purged */
+    private static final Logger    LOG = LoggerFactory.getLogger( LoginPurgeService.class );
+
+    /** Repository for LoginLockouts */
+    @Autowired
+    private LoginLockoutRepository lockoutRepository;
+
+    /** Meter registry the metrics are published to */
+    @Autowired
+    private MeterRegistry          registry;
+
+    /** Rows deleted per batch */
+    @Value ( "${itrust2.login.purge.batch-size:500}" )
+    private int                    batchSize;
+
+    /** How long (minutes) lockouts are counted for, when deciding on a ban */
+    @Value ( "${itrust2.login.lockout-window-minutes:1440}" )
+    private long                   lockoutWindowMinutes;
+
+    /** LoginLockout rows removed */
+    private Counter                lockoutRows;
+
+    /** Time spent purging LoginLockouts */
+    private Timer                  lockoutTimer;
+
+    /**
+     * Registers the metrics
+     */
+    @PostConstruct
+    public void register () {
+        lockoutRows = Counter.builder( "itrust2.security.purge.rows" ).tag( "table", "login_lockout" )
+                .description( "Expired rows deleted" ).register( registry );
+        lockoutTimer = Timer.builder( "itrust2.security.purge" ).tag( "table", "login_lockout" )
+                .description( "Time spent deleting expired rows" ).register( registry );
+    }
+
+    /**
+     * Deletes every expired LoginLockout
+     *
+     * @return Number of rows deleted
+     */
+    @Scheduled ( cron = "${itrust2.login.purge.cron:0 */10 * * * *}" )
+    public int purgeExpired () {
+        final int lockouts = purgeLockouts();
+        if ( lockouts > 0 ) {
+            LOG.info( "Purged {} expired lockouts", lockouts );
+        }
+        return lockouts;
+    }
+
+    /**
+     * Deletes LoginLockouts older than the window in which they count towards
+     * a ban. These are all long past the hour a lockout lasts, so no cached
+     * lockout status is affected.
+     *
+     * @return Number of rows deleted
+     */
+    public int purgeLockouts () {
+        return purge( ZonedDateTime.now().minusMinutes( lockoutWindowMinutes ), lockoutRepository::findIdsBefore,
+                lockoutRepository::deleteByIds, lockoutRows, lockoutTimer );
+    }
+
+    /**
+     * Deletes rows from before a cutoff, a batch at a time, until there are
+     * none left
+     *
+     * @param cutoff
+     *            Delete rows from before this time
+     * @param find
+     *            Finds the IDs of a batch of rows from before a time
+     * @param delete
+     *            Deletes rows by ID
+     * @param rows
+     *            Counter to add the deleted rows to
+     * @param timer
+     *            Timer to record the time taken with
+     * @return Number of rows deleted
+     */
+    private int purge ( final ZonedDateTime cutoff, final BiFunction<ZonedDateTime, Pageable, List<Long>> find,
+            final Function<List<Long>, Integer> delete, final Counter rows, final Timer timer ) {
+        final Pageable batch = PageRequest.of( 0, batchSize );
+        return timer.record( () -> {
+            int deleted = 0;
+            List<Long> ids;
+            do {
+                ids = find.apply( cutoff, batch );
+                if ( !ids.isEmpty() ) {
+                    final int n = delete.apply( ids );
+                    rows.increment( n );
+                    deleted += n;
+                }
+            }
+            while ( ids.size() == batchSize );
+            return deleted;
+        } );
+    }
+
+}
@@ -0,0 +1,149 @@
+package edu.ncsu.csc.iTrust2.services.security;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.iTrust2.utils.ThrottleStateStore;
+
+/**
+ * Decides when repeated failed logins should lock out or ban an IP address or
+ * username. Failed attempts and recent lockouts are counted over windows of
+ * time in a ThrottleStateStore, so a failed login costs a couple of atomic
+ * increments rather than several database queries; only the resulting
+ * lockouts and bans are saved, through LoginLockoutService and
+ * LoginBanService.
+ *
+ * Once an IP address or username has failed more than the allowed number of
+ * times within the attempt window, it is locked out. If it has already been
+ * locked out the allowed number of times within the lockout window, it is
+ * banned instead.
+ *
+ * By default counts are kept in memory, per application instance; when
+ * running several nodes, point them all at a shared store instead (see
+ * `itrust2.login.store` in application.yml).
+ */
+@Component
+public class LoginThrottleService {
+
+    /**
+     * What should happen after a failed login
+     */
+    public enum Decision {
+        /** Nothing yet; the attempt was counted */
+        NONE,
+        /** Too many failures; lock out */
+        LOCKOUT,
+        /** Too many lockouts; ban */
+        BAN
+    }
+
+    /** Prefix of keys counting failed attempts per IP address */
+    private static final String IP_FAILURES   = "ip-failures:";
+
+    /** Prefix of keys counting failed attempts per username */
+    private static final String USER_FAILURES = "user-failures:";
+
+    /** Prefix of keys counting recent lockouts per IP address */
+    private static final String IP_LOCKOUTS   = "ip-lockouts:";
+
+    /** Prefix of keys counting recent lockouts per username */
+    private static final String USER_LOCKOUTS = "user-lockouts:";
+
+    /** Where the counts are kept */
+    @Autowired
+    private ThrottleStateStore  store;
+
+    /** Failed attempts allowed per IP address before it is locked out */
+    @Value ( "${itrust2.login.ip-attempts:5}" )
+    private int                 ipAttempts;
+
+    /** Failed attempts allowed per user before they are locked out */
+    @Value ( "${itrust2.login.user-attempts:2}" )
+    private int                 userAttempts;
+
+    /** Lockouts allowed before the next one becomes a ban */
+    @Value ( "${itrust2.login.lockouts-before-ban:2}" )
+    private int                 lockoutsBeforeBan;
+
+    /** How long (minutes) failed attempts are counted for */
+    @Value ( "${itrust2.login.attempt-window-minutes:60}" )
+    private long                attemptWindowMinutes;
+
+    /** How long (minutes) lockouts are counted for, when deciding on a ban */
+    @Value ( "${itrust2.login.lockout-window-minutes:1440}" )
+    private long                lockoutWindowMinutes;
+
+    /**
+     * Records a failed login from an IP address
+     *
+     * @param ipAddress
+     *            Address the login came from
+     * @return Whether the address should now be locked out or banned
+     */
+    public Decision failedIPAttempt ( final String ipAddress ) {
+        return decide( IP_FAILURES + ipAddress, IP_LOCKOUTS + ipAddress, ipAttempts );
+    }
+
+    /**
+     * Records a failed login for a username. Only pass usernames that belong
+     * to a user: anything else is attacker-controlled, and counting it would
+     * let the number of keys in the store grow without bound.
+     *
+     * @param username
+     *            Username that was tried, as stored
+     * @return Whether the user should now be locked out or banned
+     */
+    public Decision failedUserAttempt ( final String username ) {
+        return decide( USER_FAILURES + username, USER_LOCKOUTS + username, userAttempts );
+    }
+
+    /**
+     * Forgets the failed attempts for an IP address and username, after a
+     * successful login
+     *
+     * @param ipAddress
+     *            Address the login came from
+     * @param username
+     *            User that logged in
+     */
+    public void clearAttempts ( final String ipAddress, final String username ) {
+        store.reset( IP_FAILURES + ipAddress );
+        if ( null != username ) {
+            store.reset( USER_FAILURES + username );
+        }
+    }
+
+    /**
+     * Drops counts that have aged out of their windows, so that keys from
+     * one-off failures don't accumulate
+     */
+    @Scheduled ( fixedDelay = 60000 )
+    public void evictExpired () {
+        store.evictExpired();
+    }
+
+    /**
+     * Counts a failed attempt and decides what to do about it. When the
+     * threshold is crossed, the attempts are reset; only the caller that
+     * resets them gets a lockout or ban back, so concurrent failures (even on
+     * different nodes) can't lock out (or ban) the same key twice.
+     */
+    private Decision decide ( final String failures, final String lockouts, final int allowed ) {
+        final long attemptMs = TimeUnit.MINUTES.toMillis( attemptWindowMinutes );
+        final long lockoutMs = TimeUnit.MINUTES.toMillis( lockoutWindowMinutes );
+        if ( store.increment( failures, attemptMs ) <= allowed || !store.reset( failures ) ) {
+            return Decision.NONE;
+        }
+        if ( store.count( lockouts, lockoutMs ) >= lockoutsBeforeBan ) {
+            store.reset( lockouts );
+            return Decision.BAN;
+        }
+        store.increment( lockouts, lockoutMs );
+        return Decision.LOCKOUT;
+    }
+
+}
@@ -0,0 +1,288 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+import edu.ncsu.csc.iTrust2.services.security.LogEntryService;
+
+/**
+ * Writes LogEntries to the database off of the request thread. Entries are
+ * placed onto a bounded in-memory queue, which a single background thread
+ * drains and saves in batches (see `hibernate.jdbc.batch_size` in
+ * application.yml). If the queue is full, the caller waits briefly for space,
+ * and if there still is none, saves the entry itself so that nothing is lost.
+ * Anything left on the queue when the application shuts down is written before
+ * the writer stops. With `itrust2.audit.async` turned off (as the tests do, so
+ * that entries are rolled back with the test's transaction) no thread is
+ * started and every entry is saved on the calling thread.
+ */
+@Component
+public class AuditLogWriter implements AuditSink {
+
+    /** Logger, for reporting failed batches */
+    private static final Logger         LOG       = LoggerFactory.getLogger( AuditLogWriter.class );
+
+    /** LogEntry service, for saving batches of events to the database */
+    @Autowired
+    private LogEntryService             service;
+
+    /** Metrics, for timing how long entries and batches take to save */
+    @Autowired
+    private AuditMetrics                metrics;
+
+    /** Whether entries are written by the background thread at all */
+    @Value ( "${itrust2.audit.async:true}" )
+    private boolean                     async;
+
+    /** Maximum number of entries that can be waiting to be written */
+    @Value ( "${itrust2.audit.queue-capacity:10000}" )
+    private int                         queueCapacity;
+
+    /** Maximum number of entries written in a single batch */
+    @Value ( "${itrust2.audit.batch-size:50}" )
+    private int                         batchSize;
+
+    /** How long (ms) the writer waits for new entries before flushing */
+    @Value ( "${itrust2.audit.flush-interval-ms:250}" )
+    private long                        flushIntervalMs;
+
+    /** How long (ms) a caller waits for queue space before saving directly */
+    @Value ( "${itrust2.audit.offer-timeout-ms:50}" )
+    private long                        offerTimeoutMs;
+
+    /** Entries waiting to be written */
+    private BlockingQueue<LogEntry>     queue;
+
+    /** Background thread draining the queue */
+    private Thread                      worker;
+
+    /** Whether the background thread should keep running */
+    private volatile boolean            running;
+
+    /**
+     * Held while a batch is being written, so that only one thread writes at
+     * a time. Also waited on by flush() for the background thread to finish
+     * with entries it has already taken off the queue.
+     */
+    private final Object                writeLock = new Object();
+
+    /** Number of entries ever put onto the queue */
+    private final AtomicLong            queued    = new AtomicLong();
+
+    /** Number of those that have since been written (or dropped) */
+    private final AtomicLong            written   = new AtomicLong();
+
+    /**
+     * Creates the queue and, unless asynchronous writing is turned off, starts
+     * the background writer thread.
+     */
+    @PostConstruct
+    public void start () {
+        queue = new ArrayBlockingQueue<LogEntry>( queueCapacity );
+        if ( !async ) {
+            return;
+        }
+        running = true;
+        worker = new Thread( this::run, "audit-log-writer" );
+        worker.setDaemon( true );
+        worker.start();
+    }
+
+    /**
+     * Stops the background writer thread and writes out anything that is
+     * still waiting on the queue.
+     */
+    @PreDestroy
+    public void stop () {
+        running = false;
+        if ( null != worker ) {
+            worker.interrupt();
+            try {
+                worker.join( TimeUnit.SECONDS.toMillis( 10 ) );
+            }
+            catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+        flush();
+    }
+
+    /**
+     * Queues up a LogEntry to be written. If the queue stays full for longer
+     * than the configured timeout, the entry is saved on the calling thread
+     * instead.
+     *
+     * @param entry
+     *            The LogEntry to write
+     */
+    @Override
+    public void write ( final LogEntry entry ) {
+        if ( !running ) {
+            save( entry );
+            return;
+        }
+        // counted first, so that a flush() that starts once the entry is on
+        // the queue waits for it
+        queued.incrementAndGet();
+        try {
+            if ( queue.offer( entry, offerTimeoutMs, TimeUnit.MILLISECONDS ) ) {
+                // raced with stop(); make sure the entry doesn't get stranded
+                if ( !running ) {
+                    flush();
+                }
+                return;
+            }
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            save( entry );
+        }
+        finally {
+            done( 1 );
+        }
+    }
+
+    /**
+     * Writes every entry currently on the queue, on the calling thread, then
+     * waits for the background thread to finish writing any it had already
+     * taken off the queue.
+     */
+    public void flush () {
+        final long target = queued.get();
+        final List<LogEntry> batch = new ArrayList<LogEntry>( batchSize );
+        synchronized ( writeLock ) {
+            while ( queue.drainTo( batch, batchSize ) > 0 ) {
+                writeBatch( batch );
+            }
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( 10 );
+            long remaining;
+            while ( written.get() < target && ( remaining = deadline - System.nanoTime() ) > 0 ) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait( writeLock, remaining );
+                }
+                catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries waiting to be written
+     *
+     * @return Size of the queue
+     */
+    public int pending () {
+        return queue.size();
+    }
+
+    /**
+     * Main loop of the background thread. Waits up to the flush interval for
+     * an entry, then takes as many more as will fit in a batch and writes them
+     * all at once. The lock is only taken for the write, so that a flush()
+     * never has to wait out an idle poll.
+     */
+    private void run () {
+        final List<LogEntry> batch = new ArrayList<LogEntry>( batchSize );
+        while ( running ) {
+            final LogEntry first;
+            try {
+                first = queue.poll( flushIntervalMs, TimeUnit.MILLISECONDS );
+            }
+            catch ( final InterruptedException e ) {
+                // stop() interrupts us; anything left is written there
+                continue;
+            }
+            if ( null == first ) {
+                continue;
+            }
+            batch.add( first );
+            synchronized ( writeLock ) {
+                queue.drainTo( batch, batchSize - 1 );
+                writeBatch( batch );
+            }
+        }
+    }
+
+    /**
+     * Saves a batch of entries and clears it. If the batch cannot be saved as
+     * a whole, falls back to saving the entries one at a time so that a single
+     * bad entry doesn't take the rest of the batch with it. Must be called
+     * holding the writeLock.
+     *
+     * @param batch
+     *            Entries to save
+     */
+    private void writeBatch ( final List<LogEntry> batch ) {
+        final long start = System.nanoTime();
+        boolean saved = false;
+        try {
+            service.saveAll( batch );
+            saved = true;
+        }
+        catch ( final Exception e ) {
+            LOG.error( "Failed to write batch of " + batch.size() + " log entries, retrying individually", e );
+            for ( final LogEntry entry : batch ) {
+                try {
+                    service.save( entry );
+                }
+                catch ( final Exception ex ) {
+                    LOG.error( "Dropping log entry " + entry.getLogCode() + " for " + entry.getPrimaryUser(), ex );
+                }
+            }
+        }
+        finally {
+            metrics.recordBatch( System.nanoTime() - start, saved );
+            done( batch.size() );
+            batch.clear();
+        }
+    }
+
+    /**
+     * Saves a single entry on the calling thread, timing how long it takes
+     *
+     * @param entry
+     *            Entry to save
+     */
+    private void save ( final LogEntry entry ) {
+        final long start = System.nanoTime();
+        try {
+            service.save( entry );
+        }
+        finally {
+            metrics.recordWrite( this, System.nanoTime() - start );
+        }
+    }
+
+    /**
+     * Records that entries have been written, and wakes up anyone flushing
+     *
+     * @param count
+     *            Number of entries written
+     */
+    private void done ( final int count ) {
+        written.addAndGet( count );
+        synchronized ( writeLock ) {
+            writeLock.notifyAll();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Live counts of logged events, published through the actuator `metrics`
+ * endpoint so that they can be watched without querying the audit table.
+ *
+ * For every TransactionType there is
+ * <ul>
+ * <li>`itrust2.audit.events`: total number of events logged</li>
+ * <li>`itrust2.audit.events.rate`: events per second, averaged over roughly
+ * the last minute</li>
+ * </ul>
+ * both tagged with the type's name, eg
+ * `/actuator/metrics/itrust2.audit.events?tag=type:LOGIN_FAILURE`. There is
+ * also `itrust2.audit.write`, the time taken to write a single event (tagged
+ * by sink), and `itrust2.audit.batch`, the time the AuditLogWriter took to save
+ * each batch of events to the database, tagged with whether the batch saved
+ * (`outcome:success`) or had to be retried an entry at a time
+ * (`outcome:failure`).
+ *
+ * Recording an event only increments a couple of striped counters, so it
+ * never blocks the thread doing the logging.
+ */
+@Component
+public class AuditMetrics {
+
+    /** How often (ms) the event rates are updated */
+    private static final long            TICK_MS = 5000;
+
+    /**
+     * Weight given to the latest tick when updating the rates, so that they
+     * average over about a minute (as with a Unix load average)
+     */
+    private static final double          ALPHA   = 1 - Math.exp( -TICK_MS / 60000.0 );
+
+    /** Meter registry the metrics are published to */
+    @Autowired
+    private MeterRegistry                registry;
+
+    /** Total count of each TransactionType, by ordinal */
+    private Counter[]                    counters;
+
+    /** Events of each TransactionType since the last tick, by ordinal */
+    private LongAdder[]                  sinceTick;
+
+    /** Moving average rate of each TransactionType, by ordinal */
+    private volatile double[]            rates;
+
+    /** Time taken to save a batch to the database, when it saved */
+    private Timer                        batchTimer;
+
+    /** Time taken to save a batch to the database, when it failed */
+    private Timer                        failedBatchTimer;
+
+    /** Time taken to hand an event to each sink, by sink class */
+    private final Map<Class< ? >, Timer> writeTimers = new ConcurrentHashMap<Class< ? >, Timer>();
+
+    /**
+     * Registers the meters for every TransactionType up front, so that
+     * recording an event never has to look anything up in the registry.
+     */
+    @PostConstruct
+    public void register () {
+        final TransactionType[] types = TransactionType.values();
+        counters = new Counter[types.length];
+        sinceTick = new LongAdder[types.length];
+        rates = new double[types.length];
+        for ( final TransactionType type : types ) {
+            final int i = type.ordinal();
+            counters[i] = Counter.builder( "itrust2.audit.events" ).tag( "type", type.name() )
+                    .description( "Events logged" ).register( registry );
+            sinceTick[i] = new LongAdder();
+            Gauge.builder( "itrust2.audit.events.rate", this, m -> m.rates[i] ).tag( "type", type.name() )
+                    .description( "Events logged per second, over about a minute" ).baseUnit( "events/s" )
+                    .register( registry );
+        }
+        batchTimer = Timer.builder( "itrust2.audit.batch" ).tag( "outcome", "success" )
+                .description( "Time to save a batch of log entries" ).register( registry );
+        failedBatchTimer = Timer.builder( "itrust2.audit.batch" ).tag( "outcome", "failure" )
+                .description( "Time to save a batch of log entries" ).register( registry );
+    }
+
+    /**
+     * Counts one logged event
+     *
+     * @param type
+     *            The TransactionType of the event
+     */
+    public void recordEvent ( final TransactionType type ) {
+        counters[type.ordinal()].increment();
+        sinceTick[type.ordinal()].increment();
+    }
+
+    /**
+     * Records how long it took to write an event
+     *
+     * @param sink
+     *            The sink the event was written to
+     * @param nanos
+     *            Time taken, in nanoseconds
+     */
+    public void recordWrite ( final AuditSink sink, final long nanos ) {
+        writeTimers.computeIfAbsent( sink.getClass(),
+                cls -> Timer.builder( "itrust2.audit.write" ).tag( "sink", cls.getSimpleName() )
+                        .description( "Time to write a log entry" ).register( registry ) )
+                .record( nanos, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Records how long it took to save a batch of events to the database
+     *
+     * @param nanos
+     *            Time taken, in nanoseconds, including any retries
+     * @param saved
+     *            Whether the batch saved as a whole
+     */
+    public void recordBatch ( final long nanos, final boolean saved ) {
+        ( saved ? batchTimer : failedBatchTimer ).record( nanos, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Folds the events seen since the last tick into the moving average rates
+     */
+    @Scheduled ( fixedRate = TICK_MS )
+    public void tick () {
+        final double[] next = new double[rates.length];
+        for ( int i = 0; i < next.length; i++ ) {
+            final double instant = sinceTick[i].sumThenReset() * 1000.0 / TICK_MS;
+            next[i] = rates[i] + ALPHA * ( instant - rates[i] );
+        }
+        rates = next;
+    }
+
+}
@@ -0,0 +1,22 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+
+/**
+ * Somewhere that logged events can be written to. LoggerUtil picks a sink for
+ * each event based on its TransactionType: clinical and security events go to
+ * the database (through the AuditLogWriter), while high-volume request
+ * telemetry can be sent elsewhere (see SegmentedAuditLog).
+ */
+public interface AuditSink {
+
+    /**
+     * Records a logged event. Implementations may write it out
+     * asynchronously, but must not lose it.
+     *
+     * @param entry
+     *            The event to record
+     */
+    void write ( LogEntry entry );
+
+}
@@ -0,0 +1,143 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import edu.ncsu.csc.iTrust2.models.User;
+import edu.ncsu.csc.iTrust2.repositories.UserRepository;
+
+/**
+ * Gets the User that is logged in, for controllers and services that need
+ * more than their name. Most requests need the current user at least once, and
+ * some several times, so rather than each looking them up:
+ * <ul>
+ * <li>the User is looked up at most once per request, and kept as a request
+ * attribute for any later calls</li>
+ * <li>it is also cached for a short time by username, so a burst of requests
+ * from one browser (eg, a page and its API calls) shares a single lookup</li>
+ * </ul>
+ * UserService drops a user's cached entry whenever that user is saved or
+ * deleted, so changes are seen by their next request; everyone else's entries
+ * are kept. Outside of a request (eg, in scheduled jobs) the User is simply
+ * looked up.
+ *
+ * The User returned may be shared with other requests by the same user, so it
+ * must not be modified; look the user up through UserService to do that.
+ */
+@Component
+public class CurrentUser {
+
+    /** Request attribute the User is kept under */
+    private static final String         ATTRIBUTE  = CurrentUser.class.getName();
+
+    /** Maximum number of users cached */
+    private static final int            CACHE_SIZE = 10000;
+
+    /** Repository for looking up users */
+    @Autowired
+    private UserRepository<User>        repository;
+
+    /** How long (seconds) to cache each User for */
+    @Value ( "${itrust2.session.user-cache-seconds:30}" )
+    private long                        cacheSeconds;
+
+    /** Users, by username */
+    private ExpiringCache<String, User> byUsername;
+
+    /**
+     * Sets up the cache
+     */
+    @PostConstruct
+    public void init () {
+        byUsername = new ExpiringCache<String, User>( TimeUnit.SECONDS.toMillis( cacheSeconds ), CACHE_SIZE );
+    }
+
+    /**
+     * Gets the User that is logged in
+     *
+     * @return The User, or null if there is no such user
+     */
+    public User get () {
+        final String username = LoggerUtil.currentUser();
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if ( null == attributes ) {
+            return repository.findByUsername( username );
+        }
+
+        final Object cached = attributes.getAttribute( ATTRIBUTE, RequestAttributes.SCOPE_REQUEST );
+        if ( cached instanceof User && username.equals( ( (User) cached ).getUsername() ) ) {
+            return (User) cached;
+        }
+
+        final User user = byUsername.get( username, repository::findByUsername );
+        if ( null != user ) {
+            attributes.setAttribute( ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST );
+        }
+        return user;
+    }
+
+    /**
+     * Drops the cached User with the given username, so that their next
+     * request (and the rest of this one, if it is theirs) looks them up
+     * afresh. Called when a user is saved or deleted, and again once the
+     * transaction commits so that no request can cache the old User in
+     * between.
+     *
+     * @param username
+     *            User to drop, or null to drop every cached User
+     */
+    public void invalidate ( final String username ) {
+        evict( username );
+        if ( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit () {
+                    evict( username );
+                }
+            } );
+        }
+    }
+
+    /**
+     * Drops a cached User (or all of them), including the one kept for this
+     * request if it matches
+     *
+     * @param username
+     *            User to drop, or null for all of them
+     */
+    private void evict ( final String username ) {
+        if ( null == username ) {
+            byUsername.invalidateAll();
+        }
+        else {
+            byUsername.invalidate( username );
+        }
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if ( null == attributes ) {
+            return;
+        }
+        final Object cached = attributes.getAttribute( ATTRIBUTE, RequestAttributes.SCOPE_REQUEST );
+        if ( null == username || cached instanceof User && username.equals( ( (User) cached ).getUsername() ) ) {
+            attributes.removeAttribute( ATTRIBUTE, RequestAttributes.SCOPE_REQUEST );
+        }
+    }
+
+    /**
+     * Drops expired entries from the cache
+     */
+    @Scheduled ( fixedDelay = 60000 )
+    public void evictExpired () {
+        byUsername.evictExpired();
+    }
+
+}
@@ -0,0 +1,193 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * A simple in-memory cache where every entry expires a fixed time after it was
+ * loaded. Values are loaded on demand, and can be invalidated explicitly when
+ * the data behind them changes. Both positive and negative answers (eg, "this
+ * IP is not banned") are cached, which is what lets the common case skip the
+ * database entirely.
+ *
+ * The cache holds at most a fixed number of entries; if it fills up, the entry
+ * that was used least recently is dropped to make room. A flood of lookups for
+ * keys that are never seen again (eg, random usernames) therefore only pushes
+ * out the entries that aren't being used, rather than emptying the cache.
+ *
+ * Lookups hold a lock only while reading or updating the map, never while a
+ * value is being loaded.
+ *
+ * @param <K>
+ *            Type of the keys
+ * @param <V>
+ *            Type of the values
+ */
+public class ExpiringCache <K, V> {
+
+    /** How long (ms) an entry is kept for */
+    private final long             ttlMs;
+
+    /** Maximum number of entries */
+    private final int              maxSize;
+
+    /** Source of the current time (ms) */
+    private final LongSupplier     clock;
+
+    /**
+     * Cached entries, least recently used first. Guarded by its own lock, as
+     * even reads reorder it.
+     */
+    private final Map<K, Entry<V>> entries;
+
+    /** Bumped on every invalidation, to catch loads that raced with one */
+    private final AtomicLong       generation = new AtomicLong();
+
+    /**
+     * Creates a cache
+     *
+     * @param ttlMs
+     *            How long (ms) an entry is kept for
+     * @param maxSize
+     *            Maximum number of entries
+     */
+    public ExpiringCache ( final long ttlMs, final int maxSize ) {
+        this( ttlMs, maxSize, System::currentTimeMillis );
+    }
+
+    /**
+     * Creates a cache with its own clock
+     *
+     * @param ttlMs
+     *            How long (ms) an entry is kept for
+     * @param maxSize
+     *            Maximum number of entries
+     * @param clock
+     *            Source of the current time (ms)
+     */
+    public ExpiringCache ( final long ttlMs, final int maxSize, final LongSupplier clock ) {
+        this.ttlMs = ttlMs;
+        this.maxSize = maxSize;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry ( final Map.Entry<K, Entry<V>> eldest ) {
+                return size() > ExpiringCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the value for a key, loading it if it isn't cached or has expired.
+     * Null values are cached like any other.
+     *
+     * @param key
+     *            Key to look up
+     * @param loader
+     *            Loads the value for the key
+     * @return The value
+     */
+    public V get ( final K key, final Function< ? super K, ? extends V> loader ) {
+        final long now = clock.getAsLong();
+        final long gen;
+        synchronized ( entries ) {
+            final Entry<V> cached = entries.get( key );
+            if ( null != cached && cached.expires > now ) {
+                return cached.value;
+            }
+            gen = generation.get();
+        }
+        final V value = loader.apply( key );
+        synchronized ( entries ) {
+            // If anything was invalidated while we were loading, what we
+            // loaded may already be out of date, so don't keep it
+            if ( generation.get() == gen ) {
+                entries.put( key, new Entry<V>( value, now + ttlMs ) );
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops the cached value for a key, so the next lookup loads it afresh
+     *
+     * @param key
+     *            Key to drop
+     */
+    public void invalidate ( final K key ) {
+        synchronized ( entries ) {
+            entries.remove( key );
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops the cached values for every key that matches
+     *
+     * @param matches
+     *            Which keys to drop
+     */
+    public void invalidateIf ( final Predicate< ? super K> matches ) {
+        synchronized ( entries ) {
+            entries.keySet().removeIf( matches );
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops every cached value
+     */
+    public void invalidateAll () {
+        synchronized ( entries ) {
+            entries.clear();
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops every expired entry
+     */
+    public void evictExpired () {
+        final long now = clock.getAsLong();
+        synchronized ( entries ) {
+            entries.values().removeIf( e -> e.expires <= now );
+        }
+    }
+
+    /**
+     * Gets the number of entries in the cache, including any that have expired
+     * but not yet been dropped
+     *
+     * @return Number of entries
+     */
+    public int size () {
+        synchronized ( entries ) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * A cached value and when it expires
+     */
+    private static final class Entry <V> {
+
+        /** The value */
+        private final V    value;
+
+        /** When (ms) the value expires */
+        private final long expires;
+
+        Entry ( final V value, final long expires ) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * ThrottleStateStore that keeps counts in memory, in a SlidingWindowCounter
+ * per window length. Counts aren't shared between nodes and start over when
+ * the application restarts, so this is only suitable when running a single
+ * node. It is used unless `itrust2.login.store.type` says otherwise.
+ */
+@Component
+@ConditionalOnProperty ( name = "itrust2.login.store.type", havingValue = "local", matchIfMissing = true )
+public class LocalThrottleStateStore implements ThrottleStateStore {
+
+    /** Number of buckets each window is split into */
+    private static final int                               BUCKETS  = 60;
+
+    /** Counters, by window length (ms) */
+    private final ConcurrentMap<Long, SlidingWindowCounter> counters = new ConcurrentHashMap<Long,
+            SlidingWindowCounter>();
+
+    @Override
+    public long increment ( final String key, final long windowMs ) {
+        return counter( windowMs ).record( key );
+    }
+
+    @Override
+    public long count ( final String key, final long windowMs ) {
+        return counter( windowMs ).count( key );
+    }
+
+    @Override
+    public boolean reset ( final String key ) {
+        boolean removed = false;
+        for ( final SlidingWindowCounter counter : counters.values() ) {
+            removed |= counter.reset( key );
+        }
+        return removed;
+    }
+
+    @Override
+    public void evictExpired () {
+        counters.values().forEach( SlidingWindowCounter::evictExpired );
+    }
+
+    /**
+     * Gets the counter for a window length, creating it if needed
+     *
+     * @param windowMs
+     *            Length of the window (ms)
+     * @return The counter
+     */
+    private SlidingWindowCounter counter ( final long windowMs ) {
+        return counters.computeIfAbsent( windowMs, w -> new SlidingWindowCounter( w, BUCKETS ) );
+    }
+
+}
@@ -23,16 +23,37 @@ import edu.ncsu.csc.iTrust2.services.security.LogEntryService;
 public class LoggerUtil {
 
     /**
-     * LogEntry service, for saving events to the database and finding saved
-     * events
+     * LogEntry service, for finding saved events
      */
     @Autowired
-    private LogEntryService service;
+    private LogEntryService   service;
+
+    /**
+     * Writer that saves events to the database in the background
+     */
+    @Autowired
+    private AuditLogWriter    writer;
+
+    /**
+     * File-based store for HTTP request telemetry; absent if disabled with
+     * `itrust2.audit.segments.enabled`, in which case it goes to the database
+     */
+    @Autowired ( required = false )
+    private SegmentedAuditLog segmentLog;
+
+    /**
+     * Live counts of logged events, for the actuator metrics endpoint
+     */
+    @Autowired
+    private AuditMetrics      metrics;
 
     /**
      * Most complete logger utility. Usually won't need all of this information,
      * but if you do, it has it all. The time of the event is added
-     * automatically and is assumed to be the current time.
+     * automatically and is assumed to be the current time. Most events are
+     * handed off to the AuditLogWriter and saved asynchronously; HTTP request
+     * events are appended to the SegmentedAuditLog instead. Every event is
+     * also counted in AuditMetrics.
      *
      * @param code
      *            The TransactionType of the event that occurred
@@ -46,7 +67,33 @@ public class LoggerUtil {
     public void log ( final TransactionType code, final String primaryUser, final String secondaryUser,
             final String message ) {
         final LogEntry le = new LogEntry( code, primaryUser, secondaryUser, message );
-        service.save( le );
+        final AuditSink sink = sinkFor( code );
+        if ( sink == writer ) {
+            // queued up; the writer times the save itself
+            sink.write( le );
+        }
+        else {
+            final long start = System.nanoTime();
+            sink.write( le );
+            metrics.recordWrite( sink, System.nanoTime() - start );
+        }
+        metrics.recordEvent( code );
+    }
+
+    /**
+     * Picks where an event should be written to, based on its type
+     *
+     * @param code
+     *            The TransactionType of the event
+     * @return The sink to write the event to
+     */
+    private AuditSink sinkFor ( final TransactionType code ) {
+        // once the segments are closed (at shutdown), requests still being
+        // served are logged to the database instead
+        if ( TransactionType.HTTP_REQUEST == code && null != segmentLog && !segmentLog.isClosed() ) {
+            return segmentLog;
+        }
+        return writer;
     }
 
     /**
@@ -110,28 +157,17 @@ public class LoggerUtil {
     }
 
     /**
-     * Get the top logged events for a single user specified by name.
+     * Get the most recent logged events for a single user specified by name.
      *
      * @param user
      *            User to find LogEntries for
      * @param top
      *            Number of events to find
-     * @return A List of the LogEntry Entries for the user. If the number of
-     *         Entries is less than `top`, returns all
+     * @return A List of the LogEntry Entries for the user, newest first. If the
+     *         number of Entries is less than `top`, returns all
      */
-    public Object getTopForUser ( final String user, final Integer top ) {
-        final List<LogEntry> all = getAllForUser( user );
-        all.sort( ( x1, x2 ) -> x1.getTime().compareTo( x2.getTime() ) );
-        try {
-            return all.subList( 0, top );
-        }
-        /*
-         * If num < top (ie, fewer records exist than were requested) return all
-         */
-        catch ( final IndexOutOfBoundsException e ) {
-            return all;
-        }
-
+    public List<LogEntry> getTopForUser ( final String user, final Integer top ) {
+        return service.findTopForUser( user, null == top ? 0 : top );
     }
 
     /**
@@ -0,0 +1,226 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+
+/**
+ * ThrottleStateStore that keeps counts in a Redis server shared by every node,
+ * so that failed logins are counted across the whole cluster. Enabled with
+ * `itrust2.login.store.type: redis`.
+ *
+ * Counts use fixed windows: the first event for a key sets it to expire after
+ * the window, and later events just increment it. Each increment runs INCR and
+ * (for a new key) PEXPIRE together in one script, which Redis runs atomically,
+ * so a key can never be left counting without an expiry, however a node dies.
+ * Commands from every thread share one connection (Lettuce pipelines them), so
+ * there is no pool to size.
+ *
+ * If the server can't be reached, or a command fails, the store stops trying it
+ * for `itrust2.login.store.retry-ms` and counts in a LocalThrottleStateStore
+ * instead, so failed logins are still throttled (per node) and a login never
+ * waits on a timeout more than once per interval. After the interval, one
+ * caller tries the server again; once it answers, counting goes back to the
+ * server. Counts made while it was down are not copied over.
+ */
+@Component
+@ConditionalOnProperty ( name = "itrust2.login.store.type", havingValue = "redis" )
+public class RedisThrottleStateStore implements ThrottleStateStore {
+
+    /** Logger, for reporting connection problems */
+    private static final Logger            LOG       = LoggerFactory.getLogger( RedisThrottleStateStore.class );
+
+    /**
+     * Increments a key, and starts its window if this created it. Returns the
+     * new count.
+     */
+    private static final RedisScript<Long> INCREMENT = new DefaultRedisScript<Long>(
+            "local c = redis.call('INCR', KEYS[1]) "
+                    + "if c == 1 then redis.call('PEXPIRE', KEYS[1], ARGV[1]) end return c",
+            Long.class );
+
+    /** Host the server runs on */
+    private final String                   host;
+
+    /** Port the server listens on */
+    private final int                      port;
+
+    /** Prefix for every key, to keep them apart from anything else stored */
+    private final String                   prefix;
+
+    /** How long (ms) to leave the server alone after it fails */
+    private final long                     retryMs;
+
+    /** Connections to the server */
+    private final LettuceConnectionFactory connections;
+
+    /** Runs commands on the shared connection */
+    private final StringRedisTemplate      redis;
+
+    /** Where events are counted while the server is unavailable */
+    private final LocalThrottleStateStore  fallback  = new LocalThrottleStateStore();
+
+    /**
+     * When the server can next be tried (epoch ms), or 0 if it is working
+     */
+    private final AtomicLong               retryAt   = new AtomicLong();
+
+    /**
+     * Creates the store. The connection is opened when it is first needed.
+     *
+     * @param host
+     *            Host the server runs on
+     * @param port
+     *            Port the server listens on
+     * @param timeoutMs
+     *            Connect and command timeout (ms)
+     * @param prefix
+     *            Prefix for every key
+     * @param retryMs
+     *            How long (ms) to use the local fallback for after the server
+     *            fails, before trying it again
+     */
+    public RedisThrottleStateStore ( @Value ( "${itrust2.login.store.host:localhost}" ) final String host,
+            @Value ( "${itrust2.login.store.port:6379}" ) final int port,
+            @Value ( "${itrust2.login.store.timeout-ms:500}" ) final int timeoutMs,
+            @Value ( "${itrust2.login.store.key-prefix:itrust2:throttle:}" ) final String prefix,
+            @Value ( "${itrust2.login.store.retry-ms:5000}" ) final long retryMs ) {
+        this.host = host;
+        this.port = port;
+        this.prefix = prefix;
+        this.retryMs = retryMs;
+        final Duration timeout = Duration.ofMillis( timeoutMs );
+        // Fail commands straight away while disconnected, rather than
+        // queueing them until they time out; the fallback takes over instead
+        final ClientOptions options = ClientOptions.builder()
+                .socketOptions( SocketOptions.builder().connectTimeout( timeout ).build() )
+                .disconnectedBehavior( ClientOptions.DisconnectedBehavior.REJECT_COMMANDS ).build();
+        connections = new LettuceConnectionFactory( new RedisStandaloneConfiguration( host, port ),
+                LettuceClientConfiguration.builder().commandTimeout( timeout ).clientOptions( options ).build() );
+        connections.afterPropertiesSet();
+        redis = new StringRedisTemplate( connections );
+    }
+
+    @Override
+    public long increment ( final String key, final long windowMs ) {
+        if ( !available() ) {
+            return fallback.increment( key, windowMs );
+        }
+        try {
+            final Long count = redis.execute( INCREMENT, Collections.singletonList( prefix + key ),
+                    Long.toString( windowMs ) );
+            recovered();
+            return count;
+        }
+        catch ( final RuntimeException e ) {
+            trip( e );
+            return fallback.increment( key, windowMs );
+        }
+    }
+
+    @Override
+    public long count ( final String key, final long windowMs ) {
+        if ( !available() ) {
+            return fallback.count( key, windowMs );
+        }
+        try {
+            final String value = redis.opsForValue().get( prefix + key );
+            recovered();
+            return null == value ? 0 : Long.parseLong( value );
+        }
+        catch ( final RuntimeException e ) {
+            trip( e );
+            return fallback.count( key, windowMs );
+        }
+    }
+
+    @Override
+    public boolean reset ( final String key ) {
+        // Whatever was counted while the server was down goes too
+        final boolean local = fallback.reset( key );
+        if ( !available() ) {
+            return local;
+        }
+        try {
+            final boolean removed = Boolean.TRUE.equals( redis.delete( prefix + key ) );
+            recovered();
+            return removed || local;
+        }
+        catch ( final RuntimeException e ) {
+            trip( e );
+            return local;
+        }
+    }
+
+    @Override
+    public void evictExpired () {
+        fallback.evictExpired();
+    }
+
+    /**
+     * Closes the connection to the server
+     */
+    @PreDestroy
+    public void close () {
+        connections.destroy();
+    }
+
+    /**
+     * Checks whether the server should be tried. While it is being left alone
+     * after a failure, it isn't; once the interval is up, only one caller gets
+     * to try it.
+     *
+     * @return Whether to send the command, rather than use the fallback
+     */
+    private boolean available () {
+        final long retry = retryAt.get();
+        if ( 0 == retry ) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        return now >= retry && retryAt.compareAndSet( retry, now + retryMs );
+    }
+
+    /**
+     * Notes that a command succeeded, which ends any interval the server was
+     * being left alone for
+     */
+    private void recovered () {
+        if ( 0 != retryAt.getAndSet( 0 ) ) {
+            LOG.info( "Throttle store at {}:{} is back; failed logins are counted there again", host, port );
+        }
+    }
+
+    /**
+     * Stops using the server for the retry interval, and drops the shared
+     * connection, so that the next try starts on a fresh one
+     *
+     * @param e
+     *            What went wrong
+     */
+    private void trip ( final RuntimeException e ) {
+        if ( 0 == retryAt.getAndSet( System.currentTimeMillis() + retryMs ) ) {
+            LOG.warn( "Throttle store at {}:{} failed; counting failed logins on this node for the next {}ms", host,
+                    port, retryMs, e );
+        }
+        connections.resetConnection();
+    }
+
+}
@@ -0,0 +1,797 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
+import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+
+/**
+ * Append-only, file-based store for high-volume audit events (HTTP request
+ * telemetry), so that they don't compete with clinical data for database I/O.
+ *
+ * Events are appended to a memory-mapped segment file in the configured
+ * directory. Once a segment is full, it is sealed and a new one is started.
+ * Each record is laid out as:
+ *
+ * <pre>
+ * int    length of the rest of the record
+ * long   time of the event (epoch millis)
+ * short  TransactionType ordinal (same as the LogEntry table)
+ * string primary user
+ * string secondary user
+ * string message
+ * </pre>
+ *
+ * where each string is a short byte count (-1 for null) followed by UTF-8
+ * bytes. The length is written last, so a record that was only partially
+ * written when the process died reads as the end of the segment.
+ *
+ * Alongside each segment is a sparse index file, holding one (watermark,
+ * position) pair every `index-interval` bytes, where the watermark is the
+ * latest event time of any record before that position. A time-range scan
+ * skips whole segments that can't hold matching events, then uses the index
+ * to seek to the first record that could match.
+ *
+ * Segment files are preallocated at their full size, so once every event in a
+ * sealed segment is older than `retention-days`, a nightly job deletes it.
+ */
+@Component
+@ConditionalOnProperty ( name = "itrust2.audit.segments.enabled", havingValue = "true", matchIfMissing = true )
+public class SegmentedAuditLog implements AuditSink {
+
+    /** Logger, for reporting I/O problems */
+    private static final Logger            LOG            = LoggerFactory.getLogger( SegmentedAuditLog.class );
+
+    /** File extension of segment files */
+    private static final String            SEGMENT_SUFFIX = ".seg";
+
+    /** File extension of sparse index files */
+    private static final String            INDEX_SUFFIX   = ".idx";
+
+    /** Size of one index entry: long watermark, int position */
+    private static final int               INDEX_ENTRY    = Long.BYTES + Integer.BYTES;
+
+    /**
+     * Events are timestamped when they're created, not when they're written,
+     * so records can be very slightly out of order. Scans keep reading this
+     * far past the end of the requested range to make sure they don't stop
+     * early.
+     */
+    private static final long              MAX_SKEW_MS    = 1000;
+
+    /** TransactionTypes, by ordinal */
+    private static final TransactionType[] TYPES          = TransactionType.values();
+
+    /** Directory the segment files are stored in */
+    @Value ( "${itrust2.audit.segments.directory:audit-segments}" )
+    private String                         directory;
+
+    /** Size (bytes) of each segment file */
+    @Value ( "${itrust2.audit.segments.segment-size:67108864}" )
+    private int                            segmentSize;
+
+    /** How often (bytes) to add an entry to a segment's sparse index */
+    @Value ( "${itrust2.audit.segments.index-interval:4096}" )
+    private int                            indexInterval;
+
+    /** How long (days) to keep events for */
+    @Value ( "${itrust2.audit.segments.retention-days:365}" )
+    private int                            retentionDays;
+
+    /** All segments, oldest first; the last one is being written to */
+    private final List<Segment>            segments       = new ArrayList<Segment>();
+
+    /** Segment currently being written to */
+    private Segment                        active;
+
+    /** Whether the store has been closed; nothing more is written once it is */
+    private boolean                        closed;
+
+    /**
+     * Opens the segment directory, picking up any existing segments, and
+     * starts writing at the end of the newest one.
+     *
+     * @throws IOException
+     *             If the directory or segments cannot be read
+     */
+    @PostConstruct
+    public synchronized void open () throws IOException {
+        final Path dir = Paths.get( directory );
+        Files.createDirectories( dir );
+
+        final List<Path> files = new ArrayList<Path>();
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream( dir, "*" + SEGMENT_SUFFIX ) ) {
+            stream.forEach( files::add );
+        }
+        files.sort( null );
+
+        for ( final Path file : files ) {
+            final String name = file.getFileName().toString();
+            final long sequence = Long.parseLong( name.substring( 0, name.length() - SEGMENT_SUFFIX.length() ) );
+            segments.add( Segment.recover( dir, sequence, indexInterval ) );
+        }
+
+        closed = false;
+        if ( segments.isEmpty() ) {
+            active = Segment.create( dir, 0, segmentSize );
+            segments.add( active );
+        }
+        else {
+            active = segments.get( segments.size() - 1 );
+            active.openForAppend();
+        }
+    }
+
+    /**
+     * Flushes the active segment to disk and closes it. Events written after
+     * this are dropped.
+     */
+    @PreDestroy
+    public synchronized void close () {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        try {
+            active.seal();
+        }
+        catch ( final IOException e ) {
+            LOG.error( "Failed to close audit segment " + active.file, e );
+        }
+    }
+
+    /**
+     * Appends an event to the active segment, starting a new segment if it
+     * does not fit. If the store has already been closed (eg, a request
+     * finishing while the application shuts down), the event is dropped.
+     *
+     * @param entry
+     *            The event to record
+     */
+    @Override
+    public synchronized void write ( final LogEntry entry ) {
+        final byte[] primary = encode( entry.getPrimaryUser() );
+        final byte[] secondary = encode( entry.getSecondaryUser() );
+        final byte[] message = encode( entry.getMessage() );
+        final int length = Long.BYTES + Short.BYTES + sizeOf( primary ) + sizeOf( secondary ) + sizeOf( message );
+        if ( Integer.BYTES + length > segmentSize ) {
+            LOG.error( "Audit record of " + length + " bytes does not fit in a segment; dropping it" );
+            return;
+        }
+
+        if ( closed ) {
+            LOG.warn( "Audit segments are closed; dropping " + entry.getLogCode() + " record" );
+            return;
+        }
+        try {
+            if ( !active.fits( length ) ) {
+                roll();
+            }
+            active.append( entry.getTime().toInstant().toEpochMilli(), (short) entry.getLogCode().ordinal(), primary,
+                    secondary, message, length, indexInterval );
+        }
+        catch ( final IOException e ) {
+            LOG.error( "Failed to write audit record to " + active.file, e );
+        }
+    }
+
+    /**
+     * Reads back every event between two times (inclusive), oldest segment
+     * first. Events within a segment are in the order they were written.
+     *
+     * @param from
+     *            Start of the range
+     * @param to
+     *            End of the range
+     * @param consumer
+     *            Called with each matching event
+     * @throws IOException
+     *             If a segment cannot be read
+     */
+    public void scan ( final ZonedDateTime from, final ZonedDateTime to, final Consumer<LogEntry> consumer )
+            throws IOException {
+        try {
+            read( from, to ).forEachRemaining( consumer );
+        }
+        catch ( final UncheckedIOException e ) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads back every event between two times (inclusive), in the same order
+     * as `scan`. The events are read from the segments as the iterator is
+     * advanced, so any number of them can be read without holding them all in
+     * memory. The iterator sees the store as it was when this was called;
+     * events written after that are not included.
+     *
+     * @param from
+     *            Start of the range
+     * @param to
+     *            End of the range
+     * @return The matching events. If a segment cannot be read, the iterator
+     *         throws an UncheckedIOException.
+     */
+    public Iterator<LogEntry> read ( final ZonedDateTime from, final ZonedDateTime to ) {
+        final long fromMillis = from.toInstant().toEpochMilli();
+        final long toMillis = to.toInstant().toEpochMilli();
+
+        // Take a consistent snapshot of every segment (including its index)
+        // under the lock; everything below a segment's end is never modified
+        // again, so it can then be read without holding the lock
+        final List<View> views = new ArrayList<View>();
+        synchronized ( this ) {
+            for ( final Segment segment : segments ) {
+                if ( segment.maxTime >= fromMillis && segment.minTime <= toMillis ) {
+                    views.add( segment.view( segment == active ) );
+                }
+            }
+        }
+        return new Reader( views.iterator(), fromMillis, toMillis );
+    }
+
+    /**
+     * Deletes every segment whose events are all older than the retention
+     * period. Runs nightly by default (see `itrust2.audit.segments.cron`).
+     */
+    @Scheduled ( cron = "${itrust2.audit.segments.cron:0 45 2 * * *}" )
+    public void deleteExpired () {
+        deleteBefore( ZonedDateTime.now().minusDays( retentionDays ) );
+    }
+
+    /**
+     * Deletes every sealed segment whose events are all older than the given
+     * time. Scans that are already reading a segment can finish doing so.
+     *
+     * @param cutoff
+     *            Time that every event in a deleted segment is older than
+     * @return Number of segments deleted
+     */
+    public int deleteBefore ( final ZonedDateTime cutoff ) {
+        final long cutoffMillis = cutoff.toInstant().toEpochMilli();
+        final List<Segment> expired = new ArrayList<Segment>();
+        synchronized ( this ) {
+            final Iterator<Segment> it = segments.iterator();
+            while ( it.hasNext() ) {
+                final Segment segment = it.next();
+                if ( segment != active && segment.maxTime < cutoffMillis ) {
+                    expired.add( segment );
+                    it.remove();
+                }
+            }
+        }
+
+        for ( final Segment segment : expired ) {
+            try {
+                Files.deleteIfExists( segment.file );
+                Files.deleteIfExists( segment.indexFile );
+            }
+            catch ( final IOException e ) {
+                LOG.error( "Failed to delete expired audit segment " + segment.file, e );
+            }
+        }
+        if ( !expired.isEmpty() ) {
+            LOG.info( "Deleted " + expired.size() + " expired audit segments" );
+        }
+        return expired.size();
+    }
+
+    /**
+     * Returns whether the store has been closed
+     *
+     * @return Whether events written now would be dropped
+     */
+    public synchronized boolean isClosed () {
+        return closed;
+    }
+
+    /**
+     * Returns the number of segments in the store
+     *
+     * @return Number of segments
+     */
+    public synchronized int segmentCount () {
+        return segments.size();
+    }
+
+    /**
+     * Seals the active segment and starts a new one.
+     *
+     * @throws IOException
+     *             If the new segment cannot be created
+     */
+    private void roll () throws IOException {
+        active.seal();
+        active = Segment.create( active.file.getParent(), active.sequence + 1, segmentSize );
+        segments.add( active );
+    }
+
+    /**
+     * Reads the remainder of a record (after its length and time)
+     *
+     * @param buffer
+     *            Buffer positioned just after the record's time
+     * @param time
+     *            Time of the record
+     * @return The event
+     */
+    private static LogEntry decode ( final ByteBuffer buffer, final long time ) {
+        final LogEntry entry = new LogEntry();
+        entry.setLogCode( TYPES[buffer.getShort()] );
+        entry.setPrimaryUser( readString( buffer ) );
+        final String secondary = readString( buffer );
+        if ( null != secondary ) {
+            entry.setSecondaryUser( secondary );
+        }
+        entry.setMessage( readString( buffer ) );
+        entry.setTime( Instant.ofEpochMilli( time ).atZone( ZoneId.systemDefault() ) );
+        return entry;
+    }
+
+    /**
+     * Encodes a string as UTF-8, truncated to fit a record's short length
+     * field. The cut is made on a character boundary, so a multi-byte
+     * character is never split.
+     *
+     * @param value
+     *            String to encode, may be null
+     * @return The bytes, or null if the string was
+     */
+    private static byte[] encode ( final String value ) {
+        if ( null == value ) {
+            return null;
+        }
+        final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        if ( bytes.length <= Short.MAX_VALUE ) {
+            return bytes;
+        }
+        // back up over continuation bytes (10xxxxxx) to the start of the
+        // character that would be cut
+        int end = Short.MAX_VALUE;
+        while ( end > 0 && ( bytes[end] & 0xC0 ) == 0x80 ) {
+            end--;
+        }
+        return Arrays.copyOf( bytes, end );
+    }
+
+    private static int sizeOf ( final byte[] bytes ) {
+        return Short.BYTES + ( null == bytes ? 0 : bytes.length );
+    }
+
+    private static void writeString ( final ByteBuffer buffer, final byte[] bytes ) {
+        if ( null == bytes ) {
+            buffer.putShort( (short) -1 );
+        }
+        else {
+            buffer.putShort( (short) bytes.length );
+            buffer.put( bytes );
+        }
+    }
+
+    private static String readString ( final ByteBuffer buffer ) {
+        final short length = buffer.getShort();
+        if ( length < 0 ) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * One segment file and its sparse index. Everything but the file names is
+     * guarded by the store's lock; scans read a View of it instead.
+     */
+    private static final class Segment {
+
+        /** Position of this segment in the store */
+        private final long      sequence;
+
+        /** The segment file */
+        private final Path      file;
+
+        /** The sparse index file */
+        private final Path      indexFile;
+
+        /** Capacity of the segment file */
+        private final int       capacity;
+
+        /** Mapping of the segment file; only set while it's being written */
+        private MappedByteBuffer buffer;
+
+        /** Index file, open for appending while the segment is being written */
+        private FileChannel     indexChannel;
+
+        /** Position just past the last complete record */
+        private int             end;
+
+        /** Earliest event time in the segment (may be a slight underestimate) */
+        private long            minTime = Long.MAX_VALUE;
+
+        /** Latest event time in the segment */
+        private long            maxTime = Long.MIN_VALUE;
+
+        /**
+         * Watermarks of the sparse index entries. Entries are only ever added
+         * past `indexCount`, and the array is replaced rather than resized, so
+         * the first `indexCount` entries of any array seen under the lock never
+         * change.
+         */
+        private long[]          indexTimes     = new long[16];
+
+        /** Positions of the sparse index entries; as for `indexTimes` */
+        private int[]           indexPositions = new int[16];
+
+        /** Number of sparse index entries */
+        private int             indexCount;
+
+        private Segment ( final Path dir, final long sequence, final int capacity ) {
+            this.sequence = sequence;
+            this.file = dir.resolve( String.format( "%019d", sequence ) + SEGMENT_SUFFIX );
+            this.indexFile = dir.resolve( String.format( "%019d", sequence ) + INDEX_SUFFIX );
+            this.capacity = capacity;
+        }
+
+        /**
+         * Creates a new, empty segment and opens it for writing.
+         */
+        static Segment create ( final Path dir, final long sequence, final int capacity ) throws IOException {
+            final Segment segment = new Segment( dir, sequence, capacity );
+            segment.openForAppend();
+            return segment;
+        }
+
+        /**
+         * Loads an existing segment: reads its sparse index, then scans the
+         * records after the last index entry to find where the segment ends.
+         * Any index entries that were lost are rebuilt along the way.
+         */
+        static Segment recover ( final Path dir, final long sequence, final int indexInterval ) throws IOException {
+            final Path file = dir.resolve( String.format( "%019d", sequence ) + SEGMENT_SUFFIX );
+            final Segment segment = new Segment( dir, sequence, (int) Files.size( file ) );
+
+            if ( Files.exists( segment.indexFile ) ) {
+                final ByteBuffer index = ByteBuffer.wrap( Files.readAllBytes( segment.indexFile ) );
+                while ( index.remaining() >= INDEX_ENTRY ) {
+                    segment.addIndex( index.getLong(), index.getInt() );
+                }
+            }
+
+            final ByteBuffer data = segment.mapReadOnly();
+            int position = 0;
+            if ( segment.indexCount > 0 ) {
+                position = segment.indexPositions[segment.indexCount - 1];
+                segment.maxTime = segment.indexTimes[segment.indexCount - 1];
+            }
+            final List<long[]> rebuilt = new ArrayList<long[]>();
+            while ( position + Integer.BYTES + Long.BYTES <= segment.capacity ) {
+                final int length = data.getInt( position );
+                if ( length <= 0 || position + Integer.BYTES + length > segment.capacity ) {
+                    break;
+                }
+                final int lastIndexed = segment.indexCount > 0 ? segment.indexPositions[segment.indexCount - 1]
+                        : -indexInterval;
+                if ( position - lastIndexed >= indexInterval ) {
+                    segment.addIndex( segment.maxTime, position );
+                    rebuilt.add( new long[] { segment.maxTime, position } );
+                }
+                segment.maxTime = Math.max( segment.maxTime, data.getLong( position + Integer.BYTES ) );
+                position += Integer.BYTES + length;
+            }
+            segment.end = position;
+            if ( position > 0 ) {
+                segment.minTime = data.getLong( Integer.BYTES ) - MAX_SKEW_MS;
+            }
+
+            if ( !rebuilt.isEmpty() ) {
+                try ( FileChannel index = FileChannel.open( segment.indexFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND ) ) {
+                    for ( final long[] entry : rebuilt ) {
+                        index.write( indexEntry( entry[0], (int) entry[1] ) );
+                    }
+                }
+            }
+            return segment;
+        }
+
+        /**
+         * Maps the segment file for writing and opens its index for appending
+         */
+        void openForAppend () throws IOException {
+            try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE ) ) {
+                buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, capacity );
+            }
+            indexChannel = FileChannel.open( indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND );
+        }
+
+        /**
+         * Maps the segment file for reading
+         */
+        ByteBuffer mapReadOnly () throws IOException {
+            try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+                return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            }
+        }
+
+        /**
+         * Whether a record of the given length fits in the rest of the segment
+         */
+        boolean fits ( final int length ) {
+            return end + Integer.BYTES + length <= capacity;
+        }
+
+        /**
+         * Appends one record, adding a sparse index entry first if enough has
+         * been written since the last one.
+         */
+        void append ( final long time, final short type, final byte[] primary, final byte[] secondary,
+                final byte[] message, final int length, final int indexInterval ) throws IOException {
+            final int position = end;
+            final int lastIndexed = indexCount > 0 ? indexPositions[indexCount - 1] : -indexInterval;
+            if ( position - lastIndexed >= indexInterval ) {
+                addIndex( maxTime, position );
+                indexChannel.write( indexEntry( maxTime, position ) );
+            }
+
+            // Body first, then the length, so a torn write reads as the end
+            final ByteBuffer record = buffer.duplicate();
+            record.position( position + Integer.BYTES );
+            record.putLong( time );
+            record.putShort( type );
+            writeString( record, primary );
+            writeString( record, secondary );
+            writeString( record, message );
+            buffer.putInt( position, length );
+
+            minTime = Math.min( minTime, time );
+            maxTime = Math.max( maxTime, time );
+            end = position + Integer.BYTES + length;
+        }
+
+        /**
+         * Flushes the segment and its index to disk and stops writing to it
+         */
+        void seal () throws IOException {
+            if ( null != buffer ) {
+                buffer.force();
+                // Scans of sealed segments map the file for themselves
+                buffer = null;
+            }
+            if ( null != indexChannel ) {
+                indexChannel.force( true );
+                indexChannel.close();
+                indexChannel = null;
+            }
+        }
+
+        /**
+         * Takes a snapshot of the segment for a scan. Must be called while
+         * holding the store's lock.
+         *
+         * @param isActive
+         *            Whether the segment is still being written to
+         */
+        View view ( final boolean isActive ) {
+            // A sealed segment's mapping has been released; map it afresh
+            return new View( this, isActive && null != buffer ? buffer.duplicate() : null, end, indexTimes,
+                    indexPositions, indexCount );
+        }
+
+        private void addIndex ( final long watermark, final int position ) {
+            if ( indexCount == indexTimes.length ) {
+                indexTimes = Arrays.copyOf( indexTimes, indexCount * 2 );
+                indexPositions = Arrays.copyOf( indexPositions, indexCount * 2 );
+            }
+            indexTimes[indexCount] = watermark;
+            indexPositions[indexCount] = position;
+            indexCount++;
+        }
+
+        private static ByteBuffer indexEntry ( final long watermark, final int position ) {
+            final ByteBuffer entry = ByteBuffer.allocate( INDEX_ENTRY );
+            entry.putLong( watermark ).putInt( position ).flip();
+            return entry;
+        }
+
+    }
+
+    /**
+     * A segment as it was at one moment: where it ended, and its index up to
+     * that point. Nothing it refers to is modified after it is taken, so it
+     * can be read without holding the lock.
+     */
+    private static final class View {
+
+        /** The segment */
+        private final Segment segment;
+
+        /** Mapping of the active segment, or null if it was sealed */
+        private final ByteBuffer buffer;
+
+        /** Position just past the last complete record */
+        private final int     end;
+
+        /** Watermarks of the sparse index entries */
+        private final long[]  indexTimes;
+
+        /** Positions of the sparse index entries */
+        private final int[]   indexPositions;
+
+        /** Number of sparse index entries */
+        private final int     indexCount;
+
+        View ( final Segment segment, final ByteBuffer buffer, final int end, final long[] indexTimes,
+                final int[] indexPositions, final int indexCount ) {
+            this.segment = segment;
+            this.buffer = buffer;
+            this.end = end;
+            this.indexTimes = indexTimes;
+            this.indexPositions = indexPositions;
+            this.indexCount = indexCount;
+        }
+
+        /**
+         * Gets the records of the segment, positioned at the first one that
+         * could have a time at or after the given time
+         *
+         * @return The records, or null if the segment has since been deleted
+         */
+        ByteBuffer open ( final long time ) throws IOException {
+            final ByteBuffer data;
+            if ( null != buffer ) {
+                data = buffer;
+            }
+            else {
+                try {
+                    data = segment.mapReadOnly();
+                }
+                catch ( final NoSuchFileException e ) {
+                    // Aged out since the scan started
+                    return null;
+                }
+            }
+            data.limit( end );
+            data.position( seek( time ) );
+            return data;
+        }
+
+        /**
+         * Finds the position of the first record that could have a time at or
+         * after the given time: the last index entry whose watermark is before
+         * it, since every record before that entry is older still.
+         */
+        private int seek ( final long time ) {
+            int low = 0;
+            int high = indexCount - 1;
+            int found = 0;
+            while ( low <= high ) {
+                final int mid = ( low + high ) >>> 1;
+                if ( indexTimes[mid] < time ) {
+                    found = indexPositions[mid];
+                    low = mid + 1;
+                }
+                else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+    }
+
+    /**
+     * Reads the matching records out of a series of segments, one at a time
+     */
+    private static final class Reader implements Iterator<LogEntry> {
+
+        /** Segments still to be read */
+        private final Iterator<View> views;
+
+        /** Start of the range (epoch millis) */
+        private final long           from;
+
+        /** End of the range (epoch millis) */
+        private final long           to;
+
+        /** Records of the segment being read, or null between segments */
+        private ByteBuffer           buffer;
+
+        /** The next matching event, if it has been read already */
+        private LogEntry             next;
+
+        Reader ( final Iterator<View> views, final long from, final long to ) {
+            this.views = views;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext () {
+            if ( null == next ) {
+                try {
+                    next = advance();
+                }
+                catch ( final IOException e ) {
+                    throw new UncheckedIOException( e );
+                }
+            }
+            return null != next;
+        }
+
+        @Override
+        public LogEntry next () {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            final LogEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        /**
+         * Reads up to the next matching record
+         *
+         * @return The event, or null if there are no more
+         */
+        private LogEntry advance () throws IOException {
+            while ( true ) {
+                if ( null == buffer ) {
+                    if ( !views.hasNext() ) {
+                        return null;
+                    }
+                    buffer = views.next().open( from );
+                    continue;
+                }
+                if ( buffer.remaining() < Integer.BYTES ) {
+                    buffer = null;
+                    continue;
+                }
+                final int length = buffer.getInt();
+                final long time = buffer.getLong();
+                if ( time > to + MAX_SKEW_MS ) {
+                    buffer = null;
+                    continue;
+                }
+                if ( time < from || time > to ) {
+                    buffer.position( buffer.position() + length - Long.BYTES );
+                    continue;
+                }
+                return decode( buffer, time );
+            }
+        }
+
+    }
+
+}
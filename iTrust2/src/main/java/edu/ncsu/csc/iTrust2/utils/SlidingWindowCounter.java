@@ -0,0 +1,192 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts events per key (eg, failed logins per IP address) over a sliding
+ * window of time, entirely in memory.
+ *
+ * The window is split into a fixed number of buckets. Each key has a ring of
+ * buckets, and an event is added to the bucket for the current slice of time;
+ * the count for a key is the sum of the buckets that are still within the
+ * window. Keys live in a ConcurrentHashMap and buckets are updated with
+ * atomic operations, so recording an event never takes a lock. Counts are
+ * accurate to within one bucket's worth of time.
+ *
+ * Keys with no events left in the window are removed by `evictExpired()`,
+ * which should be called periodically.
+ */
+public class SlidingWindowCounter {
+
+    /** Length (ms) of each bucket */
+    private final long                        bucketMs;
+
+    /** Number of buckets in the window */
+    private final int                         buckets;
+
+    /** Source of the current time (ms) */
+    private final LongSupplier                clock;
+
+    /** Buckets for each key */
+    private final ConcurrentMap<String, Ring> rings = new ConcurrentHashMap<String, Ring>();
+
+    /**
+     * Creates a counter
+     *
+     * @param windowMs
+     *            Length of the window (ms)
+     * @param buckets
+     *            Number of buckets to split the window into; more buckets make
+     *            the window slide more smoothly
+     */
+    public SlidingWindowCounter ( final long windowMs, final int buckets ) {
+        this( windowMs, buckets, System::currentTimeMillis );
+    }
+
+    /**
+     * Creates a counter with its own clock
+     *
+     * @param windowMs
+     *            Length of the window (ms)
+     * @param buckets
+     *            Number of buckets to split the window into
+     * @param clock
+     *            Source of the current time (ms)
+     */
+    public SlidingWindowCounter ( final long windowMs, final int buckets, final LongSupplier clock ) {
+        if ( windowMs < 1 || buckets < 1 ) {
+            throw new IllegalArgumentException( "Window and bucket count must be positive" );
+        }
+        this.buckets = buckets;
+        this.bucketMs = Math.max( 1, windowMs / buckets );
+        this.clock = clock;
+    }
+
+    /**
+     * Records an event for a key
+     *
+     * @param key
+     *            Key to record the event for
+     * @return Number of events for the key within the window, including this
+     *         one
+     */
+    public long record ( final String key ) {
+        final long slice = clock.getAsLong() / bucketMs;
+        final Ring ring = rings.computeIfAbsent( key, k -> new Ring( buckets ) );
+        ring.add( slice );
+        return ring.sum( slice );
+    }
+
+    /**
+     * Gets the number of events for a key within the window
+     *
+     * @param key
+     *            Key to check
+     * @return Number of events
+     */
+    public long count ( final String key ) {
+        final Ring ring = rings.get( key );
+        return null == ring ? 0 : ring.sum( clock.getAsLong() / bucketMs );
+    }
+
+    /**
+     * Forgets every event for a key. When several threads race to reset the
+     * same key, only one of them is told that it did so, which makes this
+     * suitable for deciding who acts on a threshold being crossed.
+     *
+     * @param key
+     *            Key to reset
+     * @return Whether there were events for the key that this call removed
+     */
+    public boolean reset ( final String key ) {
+        return null != rings.remove( key );
+    }
+
+    /**
+     * Removes keys that have no events left within the window
+     *
+     * @return Number of keys removed
+     */
+    public int evictExpired () {
+        final long slice = clock.getAsLong() / bucketMs;
+        int removed = 0;
+        for ( final String key : rings.keySet() ) {
+            final Ring ring = rings.get( key );
+            if ( null != ring && ring.sum( slice ) == 0 && rings.remove( key, ring ) ) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the number of keys currently being tracked
+     *
+     * @return Number of keys
+     */
+    public int size () {
+        return rings.size();
+    }
+
+    /**
+     * Ring of buckets for one key. Each bucket is a single long holding both
+     * the time slice it is counting for (upper 48 bits) and its count (lower
+     * 16 bits), so that a bucket left over from an earlier trip around the
+     * ring can be recognised as stale and reset in the same atomic step as
+     * the event is added. Counts saturate at 65535 per bucket, which is far
+     * beyond any threshold they are compared against.
+     */
+    private static final class Ring {
+
+        /** Bits of each bucket used for the count */
+        private static final int      COUNT_BITS = 16;
+
+        /** Mask for the count in a bucket */
+        private static final long     COUNT_MASK = ( 1L << COUNT_BITS ) - 1;
+
+        /** Slice and count of each bucket */
+        private final AtomicLongArray cells;
+
+        Ring ( final int buckets ) {
+            cells = new AtomicLongArray( buckets );
+        }
+
+        void add ( final long slice ) {
+            final int i = (int) ( slice % cells.length() );
+            while ( true ) {
+                final long current = cells.get( i );
+                final long count = current & COUNT_MASK;
+                final long next;
+                if ( ( current >>> COUNT_BITS ) < slice ) {
+                    // First event in this slice; start the bucket over
+                    next = slice << COUNT_BITS | 1;
+                }
+                else if ( count < COUNT_MASK ) {
+                    next = current + 1;
+                }
+                else {
+                    return;
+                }
+                if ( cells.compareAndSet( i, current, next ) ) {
+                    return;
+                }
+            }
+        }
+
+        long sum ( final long slice ) {
+            long total = 0;
+            for ( int i = 0; i < cells.length(); i++ ) {
+                final long cell = cells.get( i );
+                if ( slice - ( cell >>> COUNT_BITS ) < cells.length() ) {
+                    total += cell & COUNT_MASK;
+                }
+            }
+            return total;
+        }
+
+    }
+
+}
@@ -0,0 +1,60 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+/**
+ * Somewhere that login throttling counts (failed attempts and recent lockouts,
+ * per IP address or username) are kept. LoginThrottleService only ever
+ * increments, reads, and resets these counts, so they can live in memory on a
+ * single node (LocalThrottleStateStore) or in a store shared by every node in
+ * a cluster (RedisThrottleStateStore), so that an attacker can't get extra
+ * attempts by spreading them across nodes.
+ *
+ * Each count covers a window of time; events older than the window stop
+ * counting. Implementations may approximate the window (eg, by counting in
+ * fixed windows that start at the first event).
+ */
+public interface ThrottleStateStore {
+
+    /**
+     * Atomically records an event for a key, and returns the count including
+     * it. If the key had no events within the window, its count starts over
+     * and expires after the window.
+     *
+     * @param key
+     *            Key to record the event for
+     * @param windowMs
+     *            Length of the window (ms)
+     * @return Number of events for the key within the window
+     */
+    long increment ( String key, long windowMs );
+
+    /**
+     * Gets the number of events for a key within the window
+     *
+     * @param key
+     *            Key to check
+     * @param windowMs
+     *            Length of the window (ms); must be the same as the key is
+     *            incremented with
+     * @return Number of events
+     */
+    long count ( String key, long windowMs );
+
+    /**
+     * Forgets every event for a key. When several callers (on any node) race
+     * to reset the same key, only one of them is told that it did so.
+     *
+     * @param key
+     *            Key to reset
+     * @return Whether there were events for the key that this call removed
+     */
+    boolean reset ( String key );
+
+    /**
+     * Drops keys whose events have all expired, for stores that don't do so
+     * on their own
+     */
+    default void evictExpired () {
+        // Nothing to do by default
+    }
+
+}
@@ -11,6 +11,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import javax.transaction.Transactional;
@@ -22,6 +23,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -176,4 +178,32 @@ public class APIICDCodeTest {
         assertThat( getContent, containsString("B13"));
         assertThat( getContent, not(containsString("B12")));
     }
+
+    @Test
+    @Transactional
+    @WithMockUser ( username = "admin", roles = { "USER", "ADMIN" } )
+    public void testCodeListVersion () throws Exception {
+        final ICDCodeForm form = new ICDCodeForm();
+        form.setCode( "T12" );
+        form.setDescription( "Test Code" );
+        form.setIsOphthalmology( false );
+        mvc.perform( post( "/api/v1/icdcodes" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( form ) ) ).andExpect( status().isOk() );
+
+        final String version = mvc.perform( get( "/api/v1/icdcodes" ) ).andExpect( status().isOk() )
+                .andExpect( header().exists( HttpHeaders.ETAG ) ).andReturn().getResponse()
+                .getHeader( HttpHeaders.ETAG );
+
+        // A client that has the codes already doesn't get them again
+        mvc.perform( get( "/api/v1/icdcodes" ).header( HttpHeaders.IF_NONE_MATCH, version ) )
+                .andExpect( status().isNotModified() );
+
+        // Until they change
+        form.setCode( "T13" );
+        mvc.perform( post( "/api/v1/icdcodes" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( form ) ) ).andExpect( status().isOk() );
+        final String content = mvc.perform( get( "/api/v1/icdcodes" ).header( HttpHeaders.IF_NONE_MATCH, version ) )
+                .andExpect( status().isOk() ).andReturn().getResponse().getContentAsString();
+        assertThat( content, containsString( "T13" ) );
+    }
 }
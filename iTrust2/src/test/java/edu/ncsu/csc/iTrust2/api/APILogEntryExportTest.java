@@ -0,0 +1,208 @@
+package edu.ncsu.csc.iTrust2.api;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.HttpCookie;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.ncsu.csc.iTrust2.forms.UserForm;
+import edu.ncsu.csc.iTrust2.models.Personnel;
+import edu.ncsu.csc.iTrust2.models.User;
+import edu.ncsu.csc.iTrust2.models.enums.Role;
+import edu.ncsu.csc.iTrust2.services.UserService;
+import edu.ncsu.csc.iTrust2.services.security.LogEntryExportService;
+
+/**
+ * Tests that an audit log export is streamed in full even when it takes
+ * longer than the servlet container's default async timeout (30s for
+ * Tomcat). This runs against a real server, as MockMvc doesn't enforce async
+ * timeouts; the export itself is replaced with one that is deliberately slow.
+ *
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest ( webEnvironment = WebEnvironment.RANDOM_PORT )
+public class APILogEntryExportTest {
+
+    /** Admin the export is taken as */
+    private static final String   ADMIN    = "exportTimeoutAdmin";
+
+    /** Password the admin is created with */
+    private static final String   PASSWORD = "123456";
+
+    /** Lines the slow export writes, one a second */
+    private static final int      LINES    = 40;
+
+    /** Port the server is listening on */
+    @LocalServerPort
+    private int                   port;
+
+    /** Users, for creating the admin */
+    @Autowired
+    private UserService<User>     userService;
+
+    /** Export, replaced with a slow one */
+    @MockBean
+    private LogEntryExportService exportService;
+
+    /** Cookies for the session, set by logging in */
+    private CookieManager         cookies;
+
+    /**
+     * Creates the admin and logs them in
+     *
+     * @throws Exception
+     */
+    @Before
+    public void setup () throws Exception {
+        final User admin = userService.findByName( ADMIN );
+        if ( null != admin ) {
+            userService.delete( admin );
+        }
+        userService.save( new Personnel( new UserForm( ADMIN, PASSWORD, Role.ROLE_ADMIN, 1 ) ) );
+
+        cookies = new CookieManager( null, CookiePolicy.ACCEPT_ALL );
+        // The login form carries the CSRF token, which has to be sent back
+        final String page = read( request( "GET", "/login", null ) );
+        final Matcher token = Pattern.compile( "name=\"_csrf\"\\s+value=\"([^\"]+)\"" ).matcher( page );
+        Assert.assertTrue( "The login page should have a CSRF token", token.find() );
+        final String csrf = token.group( 1 );
+
+        final HttpURLConnection login = request( "POST", "/login",
+                "username=" + ADMIN + "&password=" + PASSWORD + "&_csrf=" + URLEncoder.encode( csrf, "UTF-8" ) );
+        Assert.assertEquals( 302, login.getResponseCode() );
+        Assert.assertFalse( "Logging in should succeed", login.getHeaderField( "Location" ).contains( "?" ) );
+    }
+
+    /**
+     * Removes the admin
+     */
+    @After
+    public void tearDown () {
+        final User admin = userService.findByName( ADMIN );
+        if ( null != admin ) {
+            userService.delete( admin );
+        }
+    }
+
+    /**
+     * Tests that an export taking longer than the container's default async
+     * timeout is still streamed to the end
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSlowExportIsNotCutOff () throws Exception {
+        doAnswer( invocation -> {
+            final OutputStream out = invocation.getArgument( 5 );
+            for ( int i = 0; i < LINES; i++ ) {
+                out.write( ( "{\"line\":" + i + "}\n" ).getBytes( StandardCharsets.UTF_8 ) );
+                out.flush();
+                Thread.sleep( 1000 );
+            }
+            return (long) LINES;
+        } ).when( exportService ).export( any(), any(), any(), any(), any(), any() );
+
+        final long start = System.nanoTime();
+        final HttpURLConnection export = request( "GET", "/api/v1/logentries/export", null );
+        Assert.assertEquals( 200, export.getResponseCode() );
+        int lines = 0;
+        String last = null;
+        try ( BufferedReader in = new BufferedReader(
+                new InputStreamReader( export.getInputStream(), StandardCharsets.UTF_8 ) ) ) {
+            for ( String line = in.readLine(); null != line; line = in.readLine() ) {
+                lines++;
+                last = line;
+            }
+        }
+        Assert.assertTrue( "The export should have run past the default timeout",
+                System.nanoTime() - start > TimeUnit.SECONDS.toNanos( 30 ) );
+        Assert.assertEquals( "Every line should have been received", LINES, lines );
+        Assert.assertEquals( "{\"line\":" + ( LINES - 1 ) + "}", last );
+    }
+
+    /**
+     * Reads the whole body of a response
+     *
+     * @param connection
+     *            Connection to read from
+     * @return The body
+     * @throws Exception
+     */
+    private static String read ( final HttpURLConnection connection ) throws Exception {
+        final StringBuilder body = new StringBuilder();
+        try ( BufferedReader in = new BufferedReader(
+                new InputStreamReader( connection.getInputStream(), StandardCharsets.UTF_8 ) ) ) {
+            for ( String line = in.readLine(); null != line; line = in.readLine() ) {
+                body.append( line ).append( '\n' );
+            }
+        }
+        return body.toString();
+    }
+
+    /**
+     * Sends a request to the server with the session's cookies, without
+     * following redirects
+     *
+     * @param method
+     *            HTTP method
+     * @param path
+     *            Path to request
+     * @param form
+     *            Form body to post, or null for none
+     * @return The connection, with the request sent
+     * @throws Exception
+     */
+    private HttpURLConnection request ( final String method, final String path, final String form )
+            throws Exception {
+        final URL url = new URL( "http://localhost:" + port + path );
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod( method );
+        connection.setInstanceFollowRedirects( false );
+        connection.setReadTimeout( (int) TimeUnit.MINUTES.toMillis( 2 ) );
+        final StringBuilder header = new StringBuilder();
+        for ( final HttpCookie cookie : cookies.getCookieStore().getCookies() ) {
+            header.append( header.length() == 0 ? "" : "; " ).append( cookie.getName() ).append( '=' )
+                    .append( cookie.getValue() );
+        }
+        if ( header.length() > 0 ) {
+            connection.setRequestProperty( "Cookie", header.toString() );
+        }
+        if ( null != form ) {
+            connection.setDoOutput( true );
+            connection.setRequestProperty( "Content-Type", "application/x-www-form-urlencoded" );
+            try ( OutputStreamWriter out = new OutputStreamWriter( connection.getOutputStream(),
+                    StandardCharsets.UTF_8 ) ) {
+                out.write( form );
+            }
+        }
+        connection.getResponseCode();
+        cookies.put( url.toURI(), connection.getHeaderFields() );
+        return connection;
+    }
+
+}
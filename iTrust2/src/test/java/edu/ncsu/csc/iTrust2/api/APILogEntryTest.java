@@ -2,7 +2,11 @@ package edu.ncsu.csc.iTrust2.api;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.google.gson.Gson;
@@ -10,11 +14,14 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import javax.transaction.Transactional;
 import java.io.UnsupportedEncodingException;
+import java.time.YearMonth;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -22,7 +29,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
@@ -31,7 +40,9 @@ import edu.ncsu.csc.iTrust2.controllers.api.comm.LogEntryRequestBody;
 import edu.ncsu.csc.iTrust2.controllers.api.comm.LogEntryTableRow;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+import edu.ncsu.csc.iTrust2.services.security.LogEntryArchiveService;
 import edu.ncsu.csc.iTrust2.services.security.LogEntryService;
+import edu.ncsu.csc.iTrust2.utils.SegmentedAuditLog;
 
 /**
  * Class for testing logs API.
@@ -51,6 +62,18 @@ public class APILogEntryTest {
     @Autowired
     private LogEntryService service;
 
+    /** Request log, to write HTTP requests to directly */
+    @Autowired
+    private SegmentedAuditLog segmentLog;
+
+    /** Archive, to move old entries to */
+    @Autowired
+    private LogEntryArchiveService archive;
+
+    /** Directory to archive entries to, instead of the configured one */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Sets up test
      */
@@ -102,4 +125,251 @@ public class APILogEntryTest {
 
     }
 
+    /**
+     * Tests paging through log entries using the cursor handed back on each
+     * row.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Transactional
+    @WithMockUser ( username = "admin", roles = { "USER", "ADMIN" } )
+    public void testLogCursorPaging () throws Exception {
+        final ZonedDateTime now = ZonedDateTime.now();
+        for ( int i = 0; i < 25; i++ ) {
+            final LogEntry logEntry = new LogEntry();
+            logEntry.setLogCode( TransactionType.LOGIN_SUCCESS );
+            logEntry.setPrimaryUser( "admin" );
+            logEntry.setMessage( "Logged In " + i );
+            logEntry.setTime( now.minusMinutes( i ) );
+            service.save( logEntry );
+        }
+
+        final LogEntryRequestBody body = new LogEntryRequestBody();
+        body.setStartDate( "" );
+        body.setEndDate( "" );
+        body.setPageLength( 10 );
+        body.setPage( 1 );
+
+        final Gson gson = new GsonBuilder().create();
+        final List<LogEntryTableRow> seen = new ArrayList<LogEntryTableRow>();
+        final int[] expectedSizes = { 10, 10, 5 };
+        for ( int page = 0; page < expectedSizes.length; page++ ) {
+            final String content = mvc
+                    .perform( post( "/api/v1/logentries/range" ).contentType( MediaType.APPLICATION_JSON )
+                            .content( TestUtils.asJsonString( body ) ) )
+                    .andExpect( status().isOk() ).andReturn().getResponse().getContentAsString();
+            final List<LogEntryTableRow> rows = gson.fromJson( content,
+                    new TypeToken<ArrayList<LogEntryTableRow>>() {
+                    }.getType() );
+            assertEquals( expectedSizes[page], rows.size() );
+            assertEquals( 3, rows.get( 0 ).getNumPages() );
+            seen.addAll( rows );
+
+            body.setPage( page + 2 );
+            body.setCursor( rows.get( rows.size() - 1 ).getCursor() );
+        }
+
+        // Newest first, and no entry is repeated or skipped between pages
+        for ( int i = 1; i < seen.size(); i++ ) {
+            assertTrue( ZonedDateTime.parse( seen.get( i - 1 ).getDateTime() )
+                    .isAfter( ZonedDateTime.parse( seen.get( i ).getDateTime() ) ) );
+        }
+
+        body.setCursor( "not a cursor" );
+        mvc.perform( post( "/api/v1/logentries/range" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( body ) ) ).andExpect( status().isBadRequest() );
+    }
+
+    /**
+     * Tests that patients are only shown patient-viewable entries, and that
+     * the page count only includes those entries.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Transactional
+    @WithMockUser ( username = "logpatient", roles = { "PATIENT" } )
+    public void testPatientOnlySeesViewableEntries () throws Exception {
+        final ZonedDateTime now = ZonedDateTime.now();
+        for ( int i = 0; i < 10; i++ ) {
+            final LogEntry logEntry = new LogEntry();
+            logEntry.setLogCode( i % 2 == 0 ? TransactionType.LOGIN_SUCCESS : TransactionType.HTTP_REQUEST );
+            logEntry.setPrimaryUser( "logpatient" );
+            logEntry.setTime( now.minusMinutes( i ) );
+            service.save( logEntry );
+        }
+
+        final LogEntryRequestBody body = new LogEntryRequestBody();
+        body.setStartDate( "" );
+        body.setEndDate( "" );
+        body.setPageLength( 3 );
+        body.setPage( 1 );
+
+        final Gson gson = new GsonBuilder().create();
+        final int[] expectedSizes = { 3, 2 };
+        for ( int page = 0; page < expectedSizes.length; page++ ) {
+            final String content = mvc
+                    .perform( post( "/api/v1/logentries/range" ).contentType( MediaType.APPLICATION_JSON )
+                            .content( TestUtils.asJsonString( body ) ) )
+                    .andExpect( status().isOk() ).andReturn().getResponse().getContentAsString();
+            final List<LogEntryTableRow> rows = gson.fromJson( content,
+                    new TypeToken<ArrayList<LogEntryTableRow>>() {
+                    }.getType() );
+            assertEquals( expectedSizes[page], rows.size() );
+            for ( final LogEntryTableRow row : rows ) {
+                assertEquals( 2, row.getNumPages() );
+                assertEquals( TransactionType.LOGIN_SUCCESS.getDescription(), row.getTransactionType() );
+            }
+
+            body.setPage( page + 2 );
+            body.setCursor( rows.get( rows.size() - 1 ).getCursor() );
+        }
+    }
+
+    /**
+     * Tests that the audit log can be exported as NDJSON and CSV, with
+     * filters applied. Not transactional, as the export reads the log over
+     * its own connection.
+     *
+     * @throws Exception
+     */
+    @Test
+    @WithMockUser ( username = "admin", roles = { "USER", "ADMIN" } )
+    public void testExport () throws Exception {
+        final ZonedDateTime now = ZonedDateTime.now();
+        final List<LogEntry> entries = new ArrayList<LogEntry>();
+        for ( int i = 0; i < 6; i++ ) {
+            final LogEntry logEntry = new LogEntry( i % 3 == 0 ? TransactionType.LOGIN_FAILURE
+                    : TransactionType.LOGIN_SUCCESS, i % 2 == 0 ? "exportA" : "exportB", null, "Login, \"" + i + "\"" );
+            logEntry.setTime( now.minusMinutes( 10 - i ) );
+            entries.add( logEntry );
+        }
+        service.saveAll( entries );
+
+        String content = export(
+                "/api/v1/logentries/export?user=exportA&type=LOGIN_SUCCESS&type=LOGIN_FAILURE" );
+        String[] lines = content.split( "\n" );
+        assertEquals( 3, lines.length );
+        final Gson gson = new GsonBuilder().create();
+        for ( final String line : lines ) {
+            final LogEntryRow row = gson.fromJson( line, LogEntryRow.class );
+            assertEquals( "exportA", row.primaryUser );
+        }
+        assertEquals( "Login, \"0\"", gson.fromJson( lines[0], LogEntryRow.class ).message );
+
+        content = export( "/api/v1/logentries/export?format=csv&type=LOGIN_FAILURE" );
+        lines = content.split( "\r\n" );
+        assertEquals( "id,time,code,type,primaryUser,secondaryUser,message", lines[0] );
+        assertEquals( 3, lines.length );
+        assertTrue( lines[1].endsWith( ",LOGIN_FAILURE,exportA,,\"Login, \"\"0\"\"\"" ) );
+
+        mvc.perform( get( "/api/v1/logentries/export?type=NOT_A_TYPE" ) ).andExpect( status().isBadRequest() );
+        mvc.perform( get( "/api/v1/logentries/export?format=xml" ) ).andExpect( status().isBadRequest() );
+    }
+
+    /**
+     * Tests that HTTP request events, which are kept in the SegmentedAuditLog
+     * rather than the database, are merged into the export in time order
+     *
+     * @throws Exception
+     */
+    @Test
+    @WithMockUser ( username = "admin", roles = { "USER", "ADMIN" } )
+    public void testExportIncludesRequests () throws Exception {
+        // The segments outlive the test, so use a user no earlier run has
+        final String user = "export" + System.nanoTime() + ":127.0.0.1";
+        final ZonedDateTime now = ZonedDateTime.now();
+        for ( int i = 0; i < 3; i++ ) {
+            final LogEntry request = new LogEntry( TransactionType.HTTP_REQUEST, user, "GET", "/request/" + i );
+            request.setTime( now.minusMinutes( 10 - 2 * i ) );
+            segmentLog.write( request );
+        }
+        final LogEntry login = new LogEntry( TransactionType.LOGIN_SUCCESS, user, null, "/login" );
+        login.setTime( now.minusMinutes( 7 ) );
+        service.save( login );
+
+        final String[] lines = export( "/api/v1/logentries/export?user=" + user ).split( "\n" );
+        final Gson gson = new GsonBuilder().create();
+        final List<String> messages = new ArrayList<String>();
+        for ( final String line : lines ) {
+            messages.add( gson.fromJson( line, LogEntryRow.class ).message );
+        }
+        assertEquals( List.of( "/request/0", "/request/1", "/login", "/request/2" ), messages );
+
+        // Leaving out HTTP requests leaves out the segments entirely
+        assertEquals( 1, export( "/api/v1/logentries/export?type=LOGIN_SUCCESS&user=" + user ).split( "\n" ).length );
+    }
+
+    /**
+     * Tests that entries which have been moved out to the archive are still
+     * exported, in time order with the entries left in the database
+     *
+     * @throws Exception
+     */
+    @Test
+    @WithMockUser ( username = "admin", roles = { "USER", "ADMIN" } )
+    public void testExportIncludesArchive () throws Exception {
+        final Object directory = ReflectionTestUtils.getField( archive, "directory" );
+        ReflectionTestUtils.setField( archive, "directory", folder.getRoot().getAbsolutePath() );
+        archive.load();
+        try {
+            final ZonedDateTime now = ZonedDateTime.now();
+            final List<LogEntry> entries = new ArrayList<LogEntry>();
+            for ( int i = 0; i < 4; i++ ) {
+                // Two months well over a year ago, then two recent entries
+                final LogEntry le = new LogEntry( TransactionType.LOGIN_SUCCESS, "exportArchived", null,
+                        "Login " + i );
+                le.setTime( i < 2 ? now.minusMonths( 20 - i ).withDayOfMonth( 10 ) : now.minusMinutes( 4 - i ) );
+                entries.add( le );
+            }
+            service.saveAll( entries );
+            assertEquals( 2, archive.archiveBefore( YearMonth.now().minusMonths( 12 ) ) );
+
+            final String[] lines = export( "/api/v1/logentries/export?user=exportArchived" ).split( "\n" );
+            final Gson gson = new GsonBuilder().create();
+            final List<String> messages = new ArrayList<String>();
+            for ( final String line : lines ) {
+                messages.add( gson.fromJson( line, LogEntryRow.class ).message );
+            }
+            assertEquals( List.of( "Login 0", "Login 1", "Login 2", "Login 3" ), messages );
+
+            // Types that were never logged leave out the archive too
+            assertEquals( "", export( "/api/v1/logentries/export?user=exportArchived&type=LOGIN_FAILURE" ) );
+        }
+        finally {
+            ReflectionTestUtils.setField( archive, "directory", directory );
+            archive.load();
+        }
+    }
+
+    /**
+     * Tests that only admins can export the audit log
+     *
+     * @throws Exception
+     */
+    @Test
+    @WithMockUser ( username = "hcp", roles = { "HCP" } )
+    public void testExportForbidden () throws Exception {
+        mvc.perform( get( "/api/v1/logentries/export" ) ).andExpect( status().isForbidden() );
+    }
+
+    /**
+     * Runs an export and waits for all of it to be streamed back
+     */
+    private String export ( final String url ) throws Exception {
+        final MvcResult result = mvc.perform( get( url ) ).andExpect( request().asyncStarted() ).andReturn();
+        return mvc.perform( asyncDispatch( result ) ).andExpect( status().isOk() ).andReturn().getResponse()
+                .getContentAsString();
+    }
+
+    /**
+     * One line of an NDJSON export
+     */
+    private static class LogEntryRow {
+        private String primaryUser;
+
+        private String message;
+    }
+
 }
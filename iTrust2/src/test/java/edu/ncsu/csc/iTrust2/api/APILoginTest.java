@@ -0,0 +1,192 @@
+package edu.ncsu.csc.iTrust2.api;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestBuilders.formLogin;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import edu.ncsu.csc.iTrust2.config.PasswordEncoderBusyException;
+import edu.ncsu.csc.iTrust2.forms.UserForm;
+import edu.ncsu.csc.iTrust2.models.Personnel;
+import edu.ncsu.csc.iTrust2.models.User;
+import edu.ncsu.csc.iTrust2.models.enums.Role;
+import edu.ncsu.csc.iTrust2.services.UserService;
+import edu.ncsu.csc.iTrust2.services.security.LoginBanService;
+import edu.ncsu.csc.iTrust2.services.security.LoginLockoutService;
+
+/**
+ * Tests the lockouts and bans that the FailureHandler hands out for failed
+ * logins, going through the real security filter chain. With the default
+ * settings, an IP address is locked out on its 6th failure in an hour, a user
+ * on their 3rd, and the next time after 2 lockouts in a day is a ban.
+ *
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+public class APILoginTest {
+
+    /** Password the test user is created with */
+    private static final String                   PASSWORD = "123456";
+
+    /** User whose password is guessed */
+    private static final String                   VICTIM   = "throttleVictim";
+
+    /** Web context, to run the security filters in */
+    @Autowired
+    private WebApplicationContext                 context;
+
+    /** Handler for failed logins, to hand a busy encoder's rejection to */
+    @Autowired
+    private SimpleUrlAuthenticationFailureHandler failureHandler;
+
+    /** Users, for creating the victim */
+    @Autowired
+    private UserService<User>                     userService;
+
+    /** Lockouts, to check and clear */
+    @Autowired
+    private LoginLockoutService                   loginLockoutService;
+
+    /** Bans, to check and clear */
+    @Autowired
+    private LoginBanService                       loginBanService;
+
+    /** MockMvc with Spring Security applied */
+    private MockMvc                               mvc;
+
+    /**
+     * Sets up the test
+     */
+    @Before
+    public void setup () {
+        mvc = MockMvcBuilders.webAppContextSetup( context ).apply( springSecurity() ).build();
+        loginLockoutService.deleteAll();
+        loginBanService.deleteAll();
+    }
+
+    /**
+     * Removes any lockouts and bans, so the addresses and user used here
+     * don't affect other tests
+     */
+    @After
+    public void tearDown () {
+        loginLockoutService.deleteAll();
+        loginBanService.deleteAll();
+    }
+
+    /**
+     * Tests that an IP address is locked out on its 6th failure, whatever
+     * usernames are tried, and banned after two lockouts
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIPLockoutAndBan () throws Exception {
+        final String ip = "10.77.0.1";
+        for ( int lockout = 0; lockout < 2; lockout++ ) {
+            for ( int i = 0; i < 5; i++ ) {
+                Assert.assertEquals( "/login?error", login( "ghost" + lockout + "_" + i, ip ) );
+            }
+            Assert.assertEquals( "/login?iplocked", login( "ghost" + lockout + "_5", ip ) );
+            Assert.assertTrue( loginLockoutService.isIPLocked( ip ) );
+            Assert.assertEquals( "Unknown usernames shouldn't be locked out", 1, loginLockoutService.count() );
+
+            // Let the address try again, as it could once the hour is up
+            loginLockoutService.clearIP( ip );
+        }
+
+        for ( int i = 0; i < 5; i++ ) {
+            Assert.assertEquals( "/login?error", login( "ghost2_" + i, ip ) );
+        }
+        Assert.assertEquals( "/login?ipbanned", login( "ghost2_5", ip ) );
+        Assert.assertTrue( loginBanService.isIPBanned( ip ) );
+    }
+
+    /**
+     * Tests that a user is locked out on their 3rd failure, even when each
+     * attempt comes from a different address, and banned after two lockouts
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUserLockoutAndBan () throws Exception {
+        final User victim = new Personnel( new UserForm( VICTIM, PASSWORD, Role.ROLE_HCP, 1 ) );
+        userService.save( victim );
+
+        int attempt = 0;
+        for ( int lockout = 0; lockout < 2; lockout++ ) {
+            Assert.assertEquals( "/login?error", login( VICTIM, "10.77.1." + ++attempt ) );
+            Assert.assertEquals( "/login?error", login( VICTIM, "10.77.1." + ++attempt ) );
+            Assert.assertEquals( "/login?locked", login( VICTIM, "10.77.1." + ++attempt ) );
+            Assert.assertEquals( lockout + 1,
+                    loginLockoutService.getRecentUserLockouts( userService.findByName( VICTIM ) ) );
+        }
+
+        Assert.assertEquals( "/login?error", login( VICTIM, "10.77.1." + ++attempt ) );
+        Assert.assertEquals( "/login?error", login( VICTIM, "10.77.1." + ++attempt ) );
+        Assert.assertEquals( "/login?banned", login( VICTIM, "10.77.1." + ++attempt ) );
+        Assert.assertTrue( loginBanService.isUserBanned( userService.findByName( VICTIM ) ) );
+        Assert.assertEquals( "No address failed often enough to be locked out", 0,
+                loginLockoutService.getRecentIPLockouts( "10.77.1.1" ) );
+    }
+
+    /**
+     * Tests that logins turned away because the password encoder is busy
+     * send the user back with /login?busy and don't count towards a lockout
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBusyDoesNotCount () throws Exception {
+        final String ip = "10.77.2.1";
+        for ( int i = 0; i < 10; i++ ) {
+            final MockHttpServletRequest request = new MockHttpServletRequest( "POST", "/login" );
+            request.setRemoteAddr( ip );
+            request.setParameter( UsernamePasswordAuthenticationFilter.SPRING_SECURITY_FORM_USERNAME_KEY,
+                    "ghost" + i );
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            failureHandler.onAuthenticationFailure( request, response,
+                    new PasswordEncoderBusyException( "Too many logins in progress", null ) );
+            Assert.assertEquals( "/login?busy", response.getRedirectedUrl() );
+        }
+        Assert.assertFalse( loginLockoutService.isIPLocked( ip ) );
+
+        // The address still gets its full 5 real tries
+        for ( int i = 0; i < 5; i++ ) {
+            Assert.assertEquals( "/login?error", login( "ghost" + i, ip ) );
+        }
+        Assert.assertEquals( "/login?iplocked", login( "ghost5", ip ) );
+    }
+
+    /**
+     * Tries to log in with the wrong password
+     *
+     * @param username
+     *            User to log in as
+     * @param ip
+     *            Address the attempt comes from
+     * @return Where the login was redirected to
+     * @throws Exception
+     */
+    private String login ( final String username, final String ip ) throws Exception {
+        return mvc.perform( formLogin( "/login" ).user( username ).password( "wrong" ).with( request -> {
+            request.setRemoteAddr( ip );
+            return request;
+        } ) ).andReturn().getResponse().getRedirectedUrl();
+    }
+
+}
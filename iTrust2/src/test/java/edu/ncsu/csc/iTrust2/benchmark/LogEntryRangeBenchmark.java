@@ -0,0 +1,182 @@
+package edu.ncsu.csc.iTrust2.benchmark;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import edu.ncsu.csc.iTrust2.TestConfig;
+import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
+import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+import edu.ncsu.csc.iTrust2.services.security.LogEntryService;
+
+/**
+ * Measures how long it takes to look up one user's log entries for a single
+ * week as the total number of log entries (for other users, and at other
+ * times) grows. With the lookup done by the (user, time) indexes, the latency
+ * should stay roughly flat regardless of table size.
+ *
+ * The median and p95 latency at each volume are written as JSON to
+ * `target/log-entry-range-report.json` (or `-Dbenchmark.report=...`).
+ *
+ * This is not part of the regular test run, as it inserts a large number of
+ * rows. Run it explicitly with
+ * `mvn test -Dtest=LogEntryRangeBenchmark [-Dbenchmark.volumes=2000,10000,50000]`
+ */
+@RunWith ( SpringRunner.class )
+@EnableAutoConfiguration
+@SpringBootTest ( classes = TestConfig.class )
+public class LogEntryRangeBenchmark {
+
+    /** User whose entries are looked up */
+    private static final String TARGET_USER = "benchmarkPatient";
+
+    /** Entries the target user has within the searched week */
+    private static final int    TARGET_ROWS = 20;
+
+    /** Untimed lookups run before measuring at each volume */
+    private static final int    WARMUP      = 20;
+
+    /** Timed lookups at each volume */
+    private static final int    ITERATIONS  = 100;
+
+    /** LogEntry service, to fill the table and query it */
+    @Autowired
+    private LogEntryService     service;
+
+    /**
+     * Starts with an empty table
+     */
+    @Before
+    public void setup () {
+        service.deleteAll();
+    }
+
+    /**
+     * Removes the benchmark's entries
+     */
+    @After
+    public void tearDown () {
+        service.deleteAll();
+    }
+
+    /**
+     * Times the lookup at each volume, and checks that it didn't grow with
+     * the size of the table
+     *
+     * @throws Exception
+     */
+    @Test
+    public void benchmarkFindByDateRange () throws Exception {
+        final String[] sizes = System.getProperty( "benchmark.volumes", "2000,10000,50000" ).split( "," );
+        final int[] volumes = Arrays.stream( sizes ).map( String::trim ).mapToInt( Integer::parseInt ).sorted()
+                .toArray();
+
+        final ZonedDateTime weekStart = ZonedDateTime.now().minusDays( 7 );
+        final ZonedDateTime weekEnd = ZonedDateTime.now();
+
+        final List<LogEntry> mine = new ArrayList<LogEntry>();
+        for ( int i = 0; i < TARGET_ROWS; i++ ) {
+            final LogEntry le = new LogEntry( TransactionType.VIEW_DEMOGRAPHICS, TARGET_USER, null, "benchmark" );
+            le.setTime( weekStart.plusHours( 1 + i ) );
+            mine.add( le );
+        }
+        service.saveAll( mine );
+
+        final long[] medians = new long[volumes.length];
+        final List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        int inserted = 0;
+        for ( int v = 0; v < volumes.length; v++ ) {
+            inserted = insertNoise( inserted, volumes[v] );
+
+            for ( int i = 0; i < WARMUP; i++ ) {
+                service.findByDateRange( TARGET_USER, weekStart, weekEnd );
+            }
+            final long[] timings = new long[ITERATIONS];
+            for ( int i = 0; i < ITERATIONS; i++ ) {
+                final long start = System.nanoTime();
+                final List<LogEntry> found = service.findByDateRange( TARGET_USER, weekStart, weekEnd );
+                timings[i] = ( System.nanoTime() - start ) / 1000;
+                Assert.assertEquals( TARGET_ROWS, found.size() );
+            }
+            Arrays.sort( timings );
+            medians[v] = timings[ITERATIONS / 2];
+            final Map<String, Object> result = new LinkedHashMap<String, Object>();
+            result.put( "rows", volumes[v] );
+            result.put( "p50Us", medians[v] );
+            result.put( "p95Us", timings[ITERATIONS * 95 / 100] );
+            results.add( result );
+        }
+
+        final Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put( "time", ZonedDateTime.now().toString() );
+        report.put( "targetRows", TARGET_ROWS );
+        report.put( "iterations", ITERATIONS );
+        report.put( "volumes", results );
+
+        final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        final Path out = Paths.get( System.getProperty( "benchmark.report", "target/log-entry-range-report.json" ) );
+        if ( null != out.getParent() ) {
+            Files.createDirectories( out.getParent() );
+        }
+        try ( Writer w = Files.newBufferedWriter( out, StandardCharsets.UTF_8 ) ) {
+            gson.toJson( report, w );
+        }
+
+        // Allow for noise, but a scan of the whole table would grow roughly
+        // linearly with the number of rows
+        final long allowed = Math.max( medians[0] * 3, medians[0] + 5000 );
+        Assert.assertTrue( "Lookup latency grew from " + medians[0] + "us to " + medians[volumes.length - 1]
+                + "us as the table grew", medians[volumes.length - 1] <= allowed );
+    }
+
+    /**
+     * Adds entries for other users, spread across the past year, until the
+     * table holds the requested number of them.
+     *
+     * @param from
+     *            Number of noise entries already inserted
+     * @param to
+     *            Number of noise entries wanted
+     * @return Number of noise entries now in the table
+     */
+    private int insertNoise ( final int from, final int to ) {
+        final ZonedDateTime now = ZonedDateTime.now();
+        final List<LogEntry> batch = new ArrayList<LogEntry>();
+        for ( int i = from; i < to; i++ ) {
+            final LogEntry le = new LogEntry( TransactionType.HTTP_REQUEST, "noiseUser" + ( i % 500 ),
+                    "noiseHcp" + ( i % 50 ), "benchmark" );
+            le.setTime( now.minusMinutes( i % ( 365 * 24 * 60 ) ) );
+            batch.add( le );
+            if ( batch.size() == 1000 ) {
+                service.saveAll( batch );
+                batch.clear();
+            }
+        }
+        if ( !batch.isEmpty() ) {
+            service.saveAll( batch );
+        }
+        return to;
+    }
+
+}
@@ -0,0 +1,389 @@
+package edu.ncsu.csc.iTrust2.benchmark;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestBuilders.formLogin;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import edu.ncsu.csc.iTrust2.forms.UserForm;
+import edu.ncsu.csc.iTrust2.models.Personnel;
+import edu.ncsu.csc.iTrust2.models.User;
+import edu.ncsu.csc.iTrust2.models.enums.Role;
+import edu.ncsu.csc.iTrust2.services.UserService;
+import edu.ncsu.csc.iTrust2.services.security.LoginBanService;
+import edu.ncsu.csc.iTrust2.services.security.LoginLockoutService;
+
+/**
+ * Load test for the whole login path: form logins go through the real
+ * security filter chain, so every one passes through the IPFilter, the
+ * password check, and then either the FailureHandler or the
+ * LoginAuditingListener. It runs against an embedded database (the `loadtest`
+ * profile), so results are reproducible without a MySQL server.
+ *
+ * Logins are a shuffled mix of
+ * <ul>
+ * <li>successful logins by ordinary users, from their own IP addresses</li>
+ * <li>attacking IP addresses, each trying one more bad password (for unknown
+ * usernames) than is allowed, from several threads at once</li>
+ * <li>victim users, each given one more bad password than is allowed, every
+ * attempt from a different IP address</li>
+ * </ul>
+ * Afterwards, every attacking IP address and every victim must have been
+ * locked out exactly once, and nobody else at all.
+ *
+ * Latency (p50/p99 per kind of login), database statements per login, and the
+ * lockout checks are written as JSON to `target/login-load-report.json` (or
+ * `-Dbenchmark.report=...`), so that runs can be compared across releases.
+ *
+ * This is not part of the regular test run. Run it explicitly with
+ * `mvn test -Dtest=LoginLoadBenchmark [-Dbenchmark.threads=32] [-Dbenchmark.users=50]
+ * [-Dbenchmark.rounds=4] [-Dbenchmark.attackers=10] [-Dbenchmark.victims=10]`
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+@ActiveProfiles ( "loadtest" )
+public class LoginLoadBenchmark {
+
+    /** Password every user is created with */
+    private static final String   PASSWORD = "123456";
+
+    /** Kinds of login */
+    private static final String[] KINDS    = { "success", "attacker", "victim" };
+
+    /** Web context, to run the security filters in */
+    @Autowired
+    private WebApplicationContext context;
+
+    /** For counting database statements */
+    @Autowired
+    private EntityManagerFactory  entityManagerFactory;
+
+    /** Users, for creating the ones who log in */
+    @Autowired
+    private UserService<User>     userService;
+
+    /** Lockouts, to check and clear */
+    @Autowired
+    private LoginLockoutService   loginLockoutService;
+
+    /** Bans, to check and clear */
+    @Autowired
+    private LoginBanService       loginBanService;
+
+    /** Failures an IP address is allowed before a lockout */
+    @Value ( "${itrust2.login.ip-attempts:5}" )
+    private int                   ipAttempts;
+
+    /** Failures a user is allowed before a lockout */
+    @Value ( "${itrust2.login.user-attempts:2}" )
+    private int                   userAttempts;
+
+    /** MockMvc with Spring Security applied */
+    private MockMvc               mvc;
+
+    /**
+     * Starts with no users, lockouts or bans
+     */
+    @Before
+    public void setup () {
+        mvc = MockMvcBuilders.webAppContextSetup( context ).apply( springSecurity() ).build();
+        loginLockoutService.deleteAll();
+        loginBanService.deleteAll();
+        userService.deleteAll();
+    }
+
+    /**
+     * Runs the shuffled logins on many threads at once, writes the report, and
+     * checks that exactly the expected lockouts were handed out
+     *
+     * @throws Exception
+     */
+    @Test
+    public void benchmarkLogins () throws Exception {
+        final int threads = Integer.getInteger( "benchmark.threads", 32 );
+        final int users = Integer.getInteger( "benchmark.users", 50 );
+        final int rounds = Integer.getInteger( "benchmark.rounds", 4 );
+        final int attackers = Integer.getInteger( "benchmark.attackers", 10 );
+        final int victims = Integer.getInteger( "benchmark.victims", 10 );
+
+        final List<User> created = new ArrayList<User>();
+        for ( int i = 0; i < users; i++ ) {
+            created.add( new Personnel( new UserForm( "loadUser" + i, PASSWORD, Role.ROLE_HCP, 1 ) ) );
+        }
+        for ( int i = 0; i < victims; i++ ) {
+            created.add( new Personnel( new UserForm( "loadVictim" + i, PASSWORD, Role.ROLE_HCP, 1 ) ) );
+        }
+        userService.saveAll( created );
+
+        final List<Login> logins = new ArrayList<Login>();
+        for ( int r = 0; r < rounds; r++ ) {
+            for ( int i = 0; i < users; i++ ) {
+                logins.add( new Login( "success", "loadUser" + i, PASSWORD, userIp( i ) ) );
+            }
+        }
+        for ( int a = 0; a < attackers; a++ ) {
+            for ( int i = 0; i <= ipAttempts; i++ ) {
+                logins.add( new Login( "attacker", "loadGhost" + a + "_" + i, "wrong", attackerIp( a ) ) );
+            }
+        }
+        for ( int v = 0; v < victims; v++ ) {
+            for ( int i = 0; i <= userAttempts; i++ ) {
+                logins.add( new Login( "victim", "loadVictim" + v, "wrong", victimIp( v, i ) ) );
+            }
+        }
+        Collections.shuffle( logins, new Random( 42 ) );
+
+        final Statistics stats = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+        stats.setStatisticsEnabled( true );
+        stats.clear();
+
+        final Map<String, List<Long>> latencies = new ConcurrentHashMap<String, List<Long>>();
+        final Map<String, Map<String, Integer>> outcomes = new ConcurrentHashMap<String, Map<String, Integer>>();
+        for ( final String kind : KINDS ) {
+            latencies.put( kind, Collections.synchronizedList( new ArrayList<Long>() ) );
+            outcomes.put( kind, new ConcurrentHashMap<String, Integer>() );
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool( threads );
+        final long start = System.nanoTime();
+        final List<Future< ? >> futures = new ArrayList<Future< ? >>();
+        for ( final Login login : logins ) {
+            futures.add( pool.submit( () -> {
+                final long begin = System.nanoTime();
+                final MvcResult result = mvc.perform( formLogin( "/login" ).user( login.username )
+                        .password( login.password ).with( request -> {
+                            request.setRemoteAddr( login.ip );
+                            return request;
+                        } ) ).andReturn();
+                latencies.get( login.kind ).add( ( System.nanoTime() - begin ) / 1000 );
+                outcomes.get( login.kind ).merge( outcome( result.getResponse().getRedirectedUrl() ), 1,
+                        Integer::sum );
+                return null;
+            } ) );
+        }
+        for ( final Future< ? > f : futures ) {
+            f.get();
+        }
+        final long elapsedMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        pool.shutdown();
+        final long statements = stats.getPrepareStatementCount();
+
+        // Lockout correctness
+        int attackersLockedOnce = 0;
+        for ( int a = 0; a < attackers; a++ ) {
+            if ( loginLockoutService.getRecentIPLockouts( attackerIp( a ) ) == 1 ) {
+                attackersLockedOnce++;
+            }
+        }
+        int victimsLockedOnce = 0;
+        for ( int v = 0; v < victims; v++ ) {
+            if ( loginLockoutService.getRecentUserLockouts( userService.findByName( "loadVictim" + v ) ) == 1 ) {
+                victimsLockedOnce++;
+            }
+        }
+        final long expectedLockouts = attackers + victims;
+        final long totalLockouts = loginLockoutService.count();
+        final long bans = loginBanService.count();
+
+        final Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put( "time", ZonedDateTime.now().toString() );
+        final Map<String, Object> config = new LinkedHashMap<String, Object>();
+        config.put( "threads", threads );
+        config.put( "users", users );
+        config.put( "rounds", rounds );
+        config.put( "attackers", attackers );
+        config.put( "victims", victims );
+        config.put( "ipAttempts", ipAttempts );
+        config.put( "userAttempts", userAttempts );
+        config.put( "cores", Runtime.getRuntime().availableProcessors() );
+        report.put( "config", config );
+        report.put( "logins", logins.size() );
+        report.put( "elapsedMs", elapsedMs );
+        report.put( "loginsPerSecond", logins.size() * 1000.0 / Math.max( 1, elapsedMs ) );
+        report.put( "statements", statements );
+        report.put( "statementsPerLogin", statements / (double) logins.size() );
+        final Map<String, Object> kinds = new LinkedHashMap<String, Object>();
+        for ( final String kind : KINDS ) {
+            final long[] sorted = latencies.get( kind ).stream().mapToLong( Long::longValue ).sorted().toArray();
+            final Map<String, Object> k = new LinkedHashMap<String, Object>();
+            k.put( "count", sorted.length );
+            k.put( "p50Us", percentile( sorted, 50 ) );
+            k.put( "p99Us", percentile( sorted, 99 ) );
+            k.put( "maxUs", sorted.length == 0 ? 0 : sorted[sorted.length - 1] );
+            k.put( "outcomes", outcomes.get( kind ) );
+            kinds.put( kind, k );
+        }
+        report.put( "latency", kinds );
+        final Map<String, Object> lockouts = new LinkedHashMap<String, Object>();
+        lockouts.put( "attackersLockedOnce", attackersLockedOnce );
+        lockouts.put( "victimsLockedOnce", victimsLockedOnce );
+        lockouts.put( "expectedLockouts", expectedLockouts );
+        lockouts.put( "totalLockouts", totalLockouts );
+        lockouts.put( "bans", bans );
+        lockouts.put( "correct", attackersLockedOnce == attackers && victimsLockedOnce == victims
+                && totalLockouts == expectedLockouts && bans == 0 );
+        report.put( "lockouts", lockouts );
+
+        final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        final Path out = Paths.get( System.getProperty( "benchmark.report", "target/login-load-report.json" ) );
+        if ( null != out.getParent() ) {
+            Files.createDirectories( out.getParent() );
+        }
+        try ( Writer w = Files.newBufferedWriter( out, StandardCharsets.UTF_8 ) ) {
+            gson.toJson( report, w );
+        }
+
+        Assert.assertEquals( "Every successful login should have gone to the home page", users * rounds,
+                (int) outcomes.get( "success" ).getOrDefault( "home", 0 ) );
+        Assert.assertEquals( "Every attacking IP should be locked out exactly once", attackers, attackersLockedOnce );
+        Assert.assertEquals( "Every victim should be locked out exactly once", victims, victimsLockedOnce );
+        Assert.assertEquals( "Nobody else should be locked out", expectedLockouts, totalLockouts );
+        Assert.assertEquals( "Nobody should be banned", 0, bans );
+    }
+
+    /**
+     * Sorts a login's redirect into what happened
+     *
+     * @param redirect
+     *            Where the login was redirected to
+     * @return Short name for the outcome, eg `home` or `iplocked`
+     */
+    private static String outcome ( final String redirect ) {
+        if ( null == redirect ) {
+            return "none";
+        }
+        if ( "/".equals( redirect ) ) {
+            return "home";
+        }
+        final int q = redirect.indexOf( '?' );
+        return q < 0 ? redirect : redirect.substring( q + 1 );
+    }
+
+    /**
+     * Picks a percentile out of sorted timings
+     *
+     * @param sorted
+     *            Timings, in ascending order
+     * @param p
+     *            Percentile wanted, 0 to 100
+     * @return The timing, or 0 if there are none
+     */
+    private static long percentile ( final long[] sorted, final int p ) {
+        if ( sorted.length == 0 ) {
+            return 0;
+        }
+        return sorted[Math.min( sorted.length - 1, (int) Math.ceil( sorted.length * p / 100.0 ) - 1 )];
+    }
+
+    /**
+     * Gets the address an ordinary user logs in from
+     *
+     * @param i
+     *            Number of the user
+     * @return The address
+     */
+    private static String userIp ( final int i ) {
+        return "10.1." + i / 250 + "." + ( i % 250 + 1 );
+    }
+
+    /**
+     * Gets the address of an attacker
+     *
+     * @param a
+     *            Number of the attacker
+     * @return The address
+     */
+    private static String attackerIp ( final int a ) {
+        return "10.2." + a / 250 + "." + ( a % 250 + 1 );
+    }
+
+    /**
+     * Gets the address one of a victim's bad logins comes from, which is
+     * different for every attempt
+     *
+     * @param v
+     *            Number of the victim
+     * @param attempt
+     *            Number of the attempt
+     * @return The address
+     */
+    private static String victimIp ( final int v, final int attempt ) {
+        return "10.3." + v % 250 + "." + ( attempt % 250 + 1 );
+    }
+
+    /**
+     * One login to attempt
+     */
+    private static final class Login {
+
+        /** Kind of login, one of KINDS */
+        private final String kind;
+
+        /** User to log in as */
+        private final String username;
+
+        /** Password to log in with */
+        private final String password;
+
+        /** Address the login comes from */
+        private final String ip;
+
+        /**
+         * Creates the login
+         *
+         * @param kind
+         *            Kind of login, one of KINDS
+         * @param username
+         *            User to log in as
+         * @param password
+         *            Password to log in with
+         * @param ip
+         *            Address the login comes from
+         */
+        Login ( final String kind, final String username, final String password, final String ip ) {
+            this.kind = kind;
+            this.username = username;
+            this.password = password;
+            this.ip = ip;
+        }
+
+    }
+
+}
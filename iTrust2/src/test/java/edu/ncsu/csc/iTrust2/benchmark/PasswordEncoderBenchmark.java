@@ -0,0 +1,132 @@
+package edu.ncsu.csc.iTrust2.benchmark;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import edu.ncsu.csc.iTrust2.config.BoundedPasswordEncoder;
+import edu.ncsu.csc.iTrust2.config.PasswordEncoderBusyException;
+
+/**
+ * Measures how many password checks (ie, logins) per second the
+ * BoundedPasswordEncoder gets through, per core, while far more clients than
+ * cores are trying to log in at once. Logins that can't get into the queue are
+ * rejected; the rest should be served at roughly the rate the cores allow.
+ *
+ * Logins served per second (overall and per core) and the number rejected are
+ * written as JSON to `target/password-encoder-report.json` (or
+ * `-Dbenchmark.report=...`).
+ *
+ * This is not part of the regular test run, as it keeps every core busy for a
+ * while. Run it explicitly with
+ * `mvn test -Dtest=PasswordEncoderBenchmark [-Dbenchmark.strength=10] [-Dbenchmark.seconds=10]`
+ */
+public class PasswordEncoderBenchmark {
+
+    /** Concurrent clients per core */
+    private static final int    CLIENTS_PER_CORE = 8;
+
+    /** Passwords that may wait for a thread */
+    private static final int    QUEUE_CAPACITY   = 64;
+
+    /** Password being checked */
+    private static final String PASSWORD         = "123456";
+
+    /**
+     * Runs the wave of logins for the configured time, then reports and
+     * checks how many were served
+     *
+     * @throws Exception
+     */
+    @Test
+    public void benchmarkLoginWave () throws Exception {
+        final int strength = Integer.getInteger( "benchmark.strength", 10 );
+        final int seconds = Integer.getInteger( "benchmark.seconds", 10 );
+        final int cores = Runtime.getRuntime().availableProcessors();
+
+        final BoundedPasswordEncoder encoder = new BoundedPasswordEncoder( new BCryptPasswordEncoder( strength ),
+                cores, QUEUE_CAPACITY );
+        final String hash = encoder.encode( PASSWORD );
+
+        // Warm up
+        for ( int i = 0; i < cores; i++ ) {
+            encoder.matches( PASSWORD, hash );
+        }
+
+        final AtomicLong served = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong starved = new AtomicLong();
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos( seconds );
+        final ExecutorService clients = Executors.newFixedThreadPool( cores * CLIENTS_PER_CORE );
+        for ( int i = 0; i < cores * CLIENTS_PER_CORE; i++ ) {
+            clients.submit( () -> {
+                long mine = 0;
+                while ( System.nanoTime() < end ) {
+                    try {
+                        Assert.assertTrue( encoder.matches( PASSWORD, hash ) );
+                        served.incrementAndGet();
+                        mine++;
+                    }
+                    catch ( final PasswordEncoderBusyException e ) {
+                        rejected.incrementAndGet();
+                        // A real client would be sent back to the login page
+                        Thread.sleep( 10 );
+                    }
+                }
+                if ( 0 == mine ) {
+                    starved.incrementAndGet();
+                }
+                return null;
+            } );
+        }
+        clients.shutdown();
+        Assert.assertTrue( clients.awaitTermination( seconds + 60, TimeUnit.SECONDS ) );
+        encoder.shutdown();
+
+        final double perSecond = served.get() / (double) seconds;
+
+        final Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put( "time", ZonedDateTime.now().toString() );
+        final Map<String, Object> config = new LinkedHashMap<String, Object>();
+        config.put( "strength", strength );
+        config.put( "seconds", seconds );
+        config.put( "cores", cores );
+        config.put( "clients", cores * CLIENTS_PER_CORE );
+        config.put( "queueCapacity", QUEUE_CAPACITY );
+        report.put( "config", config );
+        report.put( "served", served.get() );
+        report.put( "rejected", rejected.get() );
+        report.put( "starvedClients", starved.get() );
+        report.put( "loginsPerSecond", perSecond );
+        report.put( "loginsPerSecondPerCore", perSecond / cores );
+
+        final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        final Path out = Paths.get( System.getProperty( "benchmark.report", "target/password-encoder-report.json" ) );
+        if ( null != out.getParent() ) {
+            Files.createDirectories( out.getParent() );
+        }
+        try ( Writer w = Files.newBufferedWriter( out, StandardCharsets.UTF_8 ) ) {
+            gson.toJson( report, w );
+        }
+
+        Assert.assertTrue( "Some logins should have been served", served.get() > 0 );
+        Assert.assertEquals( "Every client should have got a login through eventually", 0, starved.get() );
+    }
+
+}
@@ -0,0 +1,188 @@
+package edu.ncsu.csc.iTrust2.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A tiny, in-process stand-in for a Redis server, for testing
+ * RedisThrottleStateStore without one. It speaks just enough of the protocol
+ * to serve the commands the store uses (GET, DEL, PING, and EVAL), each
+ * handled atomically, on a random local port. It can't run Lua, so EVAL runs
+ * the one script the store sends (INCR, plus PEXPIRE if that created the key)
+ * whatever its text, and EVALSHA always asks for the script to be sent again.
+ */
+public class EmbeddedThrottleStoreServer implements AutoCloseable {
+
+    /** Socket the server listens on */
+    private final ServerSocket        server;
+
+    /**
+     * Stored counts by key, as { value, expiry time (ms), or 0 for none }
+     */
+    private final Map<String, long[]> values = new HashMap<String, long[]>();
+
+    /** Thread accepting connections */
+    private final Thread              acceptor;
+
+    /**
+     * Starts the server on a free port
+     *
+     * @throws IOException
+     *             If it can't listen
+     */
+    public EmbeddedThrottleStoreServer () throws IOException {
+        this( 0 );
+    }
+
+    /**
+     * Starts the server on the given port
+     *
+     * @param port
+     *            Port to listen on, or 0 for any free one
+     * @throws IOException
+     *             If it can't listen
+     */
+    public EmbeddedThrottleStoreServer ( final int port ) throws IOException {
+        server = new ServerSocket( port, 50, InetAddress.getLoopbackAddress() );
+        acceptor = new Thread( this::accept, "embedded-throttle-store" );
+        acceptor.setDaemon( true );
+        acceptor.start();
+    }
+
+    /**
+     * Gets the port the server is listening on
+     *
+     * @return The port
+     */
+    public int getPort () {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections
+     */
+    @Override
+    public void close () throws IOException {
+        server.close();
+    }
+
+    /**
+     * Accepts connections until the server is closed, serving each on its own
+     * thread
+     */
+    private void accept () {
+        while ( !server.isClosed() ) {
+            try {
+                final Socket socket = server.accept();
+                final Thread t = new Thread( () -> serve( socket ) );
+                t.setDaemon( true );
+                t.start();
+            }
+            catch ( final IOException e ) {
+                // Closed
+            }
+        }
+    }
+
+    /**
+     * Reads commands from a connection and writes back their replies, until
+     * the client disconnects
+     *
+     * @param socket
+     *            Connection to serve
+     */
+    private void serve ( final Socket socket ) {
+        try ( Socket s = socket ) {
+            final InputStream in = new BufferedInputStream( s.getInputStream() );
+            final OutputStream out = new BufferedOutputStream( s.getOutputStream() );
+            while ( true ) {
+                final String header = readLine( in );
+                if ( null == header ) {
+                    return;
+                }
+                final String[] args = new String[Integer.parseInt( header.substring( 1 ) )];
+                for ( int i = 0; i < args.length; i++ ) {
+                    readLine( in );
+                    args[i] = readLine( in );
+                }
+                out.write( execute( args ).getBytes( StandardCharsets.UTF_8 ) );
+                if ( in.available() == 0 ) {
+                    out.flush();
+                }
+            }
+        }
+        catch ( final IOException e ) {
+            // Client went away
+        }
+    }
+
+    /**
+     * Runs a single command, dropping any expired keys first
+     *
+     * @param args
+     *            Command name, followed by its arguments
+     * @return The reply, in the Redis protocol
+     */
+    private synchronized String execute ( final String[] args ) {
+        final long now = System.currentTimeMillis();
+        values.entrySet().removeIf( e -> e.getValue()[1] > 0 && e.getValue()[1] <= now );
+        final long[] value = args.length > 1 ? values.get( args[1] ) : null;
+        switch ( args[0].toUpperCase() ) {
+            case "PING":
+                return "+PONG\r\n";
+            case "EVALSHA":
+                return "-NOSCRIPT No matching script. Please use EVAL.\r\n";
+            case "EVAL":
+                // EVAL script 1 key window
+                final long[] counted = values.get( args[3] );
+                if ( null == counted ) {
+                    values.put( args[3], new long[] { 1, now + Long.parseLong( args[4] ) } );
+                    return ":1\r\n";
+                }
+                return ":" + ++counted[0] + "\r\n";
+            case "GET":
+                if ( null == value ) {
+                    return "$-1\r\n";
+                }
+                final String s = Long.toString( value[0] );
+                return "$" + s.length() + "\r\n" + s + "\r\n";
+            case "DEL":
+                return ":" + ( null == values.remove( args[1] ) ? 0 : 1 ) + "\r\n";
+            default:
+                return "-ERR unknown command '" + args[0] + "'\r\n";
+        }
+    }
+
+    /**
+     * Reads a line ending in CRLF
+     *
+     * @param in
+     *            Stream to read from
+     * @return The line, without the CRLF, or null at the end of the stream
+     * @throws IOException
+     *             If reading fails
+     */
+    private static String readLine ( final InputStream in ) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ( ( b = in.read() ) != '\r' ) {
+            if ( b < 0 ) {
+                return null;
+            }
+            line.write( b );
+        }
+        in.read();
+        return new String( line.toByteArray(), StandardCharsets.UTF_8 );
+    }
+
+}
@@ -0,0 +1,87 @@
+package edu.ncsu.csc.iTrust2.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Tests that the BoundedPasswordEncoder turns logins away, without waiting,
+ * once its queue is full
+ *
+ */
+public class BoundedPasswordEncoderTest {
+
+    /**
+     * Tests that with the one thread busy and the one queue slot taken, the
+     * next check is rejected straight away while encoding a new password still
+     * works, and that the others still finish
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRejectsWhenFull () throws Exception {
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final BoundedPasswordEncoder encoder = new BoundedPasswordEncoder( new PasswordEncoder() {
+            @Override
+            public String encode ( final CharSequence rawPassword ) {
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches ( final CharSequence rawPassword, final String encodedPassword ) {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString().equals( encodedPassword );
+            }
+        }, 1, 1 );
+
+        final ExecutorService clients = Executors.newFixedThreadPool( 2 );
+        try {
+            final Future<Boolean> running = clients.submit( () -> encoder.matches( "a", "a" ) );
+            assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+            final Future<Boolean> queued = clients.submit( () -> encoder.matches( "b", "b" ) );
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( 10 );
+            while ( encoder.getQueued() < 1 && System.nanoTime() < deadline ) {
+                Thread.sleep( 10 );
+            }
+            assertEquals( 1, encoder.getQueued() );
+
+            final long start = System.nanoTime();
+            try {
+                encoder.matches( "c", "c" );
+                fail( "A check with the queue full should be rejected" );
+            }
+            catch ( final PasswordEncoderBusyException e ) {
+                assertTrue( "The rejection should not wait for a thread",
+                        System.nanoTime() - start < TimeUnit.SECONDS.toNanos( 1 ) );
+            }
+
+            assertEquals( "Encoding a new password should not be turned away", "d", encoder.encode( "d" ) );
+
+            release.countDown();
+            assertTrue( running.get( 10, TimeUnit.SECONDS ) );
+            assertTrue( queued.get( 10, TimeUnit.SECONDS ) );
+        }
+        finally {
+            release.countDown();
+            clients.shutdownNow();
+            encoder.shutdown();
+        }
+    }
+
+}
@@ -267,4 +267,39 @@ public class CovidVaccineTest {
 
     }
 
+    @Test
+    public void testCachedLookup () {
+        // a vaccine that isn't there yet is looked up (and cached) as missing
+        Assert.assertNull( service.findByCode( "0000-0000-00" ) );
+
+        final CovidVaccineForm pfizerForm = new CovidVaccineForm();
+        pfizerForm.setCode( "0000-0000-00" );
+        pfizerForm.setDescription( "Covid shot" );
+        pfizerForm.setName( "Pfizer" );
+        final ArrayList<Integer> ageRange = new ArrayList<Integer>();
+        ageRange.add( 12 );
+        ageRange.add( 100 );
+        pfizerForm.setAgeRange( ageRange );
+        pfizerForm.setNumDoses( (short) 2 );
+        pfizerForm.setDoseInterval( new DoseInterval( ChronoUnit.MONTHS, 1 ) );
+        service.save( new CovidVaccine( pfizerForm ) );
+
+        // saving it drops the cached miss
+        final CovidVaccine first = service.findByCode( "0000-0000-00" );
+        Assert.assertNotNull( first );
+        Assert.assertEquals( 100, first.getAgeRange().get( 1 ).intValue() );
+
+        // and later lookups are answered from the cache
+        Assert.assertSame( first, service.findByCode( "0000-0000-00" ) );
+
+        // until the vaccine is changed
+        final CovidVaccine toEdit = service.findById( first.getId() );
+        toEdit.setDescription( "Covid shot, updated" );
+        service.save( toEdit );
+        Assert.assertEquals( "Covid shot, updated", service.findByCode( "0000-0000-00" ).getDescription() );
+
+        service.delete( toEdit );
+        Assert.assertNull( service.findByCode( "0000-0000-00" ) );
+    }
+
 }
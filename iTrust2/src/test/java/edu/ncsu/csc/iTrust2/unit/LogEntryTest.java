@@ -1,24 +1,37 @@
 package edu.ncsu.csc.iTrust2.unit;
 
+import java.nio.file.Files;
+import java.time.YearMonth;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Transactional;
 
 import edu.ncsu.csc.iTrust2.TestConfig;
 import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
 import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+import edu.ncsu.csc.iTrust2.repositories.security.LogEntryRepository;
+import edu.ncsu.csc.iTrust2.services.security.LogEntryArchiveService;
 import edu.ncsu.csc.iTrust2.services.security.LogEntryService;
+import edu.ncsu.csc.iTrust2.utils.AuditLogWriter;
+import edu.ncsu.csc.iTrust2.utils.LoggerUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @RunWith ( SpringRunner.class )
 @EnableAutoConfiguration
@@ -26,11 +39,31 @@ import edu.ncsu.csc.iTrust2.services.security.LogEntryService;
 public class LogEntryTest {
 
     @Autowired
-    private LogEntryService     service;
+    private LogEntryService        service;
 
-    private static final String USER_1 = "testUser123";
+    /** Logger, for logging through the writer */
+    @Autowired
+    private LoggerUtil             loggerUtil;
+
+    /** Writer, to flush and to switch to the background thread */
+    @Autowired
+    private AuditLogWriter         writer;
+
+    /** Archive, to move old entries to */
+    @Autowired
+    private LogEntryArchiveService archive;
+
+    /** Registry the audit metrics are published to */
+    @Autowired
+    private MeterRegistry          registry;
 
-    private static final String USER_2 = "testUser1234";
+    /** Directory to archive entries to, instead of the configured one */
+    @Rule
+    public TemporaryFolder         folder = new TemporaryFolder();
+
+    private static final String    USER_1 = "testUser123";
+
+    private static final String    USER_2 = "testUser1234";
 
     @Before
     public void setup () {
@@ -79,4 +112,295 @@ public class LogEntryTest {
                 3, service.findAllForUser( USER_1 ).size() );
 
     }
+
+    /**
+     * Tests that entries logged through the background writer are all saved
+     * once it is flushed, and that saving the batches is timed
+     */
+    @Test
+    public void testAsyncLogging () {
+        // The tests save entries synchronously (see pom.xml); start the
+        // background thread for just this test
+        final Object async = ReflectionTestUtils.getField( writer, "async" );
+        writer.stop();
+        ReflectionTestUtils.setField( writer, "async", true );
+        writer.start();
+        try {
+            final long batches = registry.get( "itrust2.audit.batch" ).tag( "outcome", "success" ).timer().count();
+            for ( int i = 0; i < 120; i++ ) {
+                loggerUtil.log( TransactionType.LOGIN_SUCCESS, USER_1, "User has logged in successfully" );
+            }
+            loggerUtil.log( TransactionType.LOGOUT, USER_2 );
+
+            writer.flush();
+
+            Assert.assertEquals( "Flushing the writer should leave nothing waiting", 0, writer.pending() );
+
+            Assert.assertEquals( "Every logged event should be saved once the writer is flushed", 120,
+                    service.findAllForUser( USER_1 ).size() );
+
+            Assert.assertEquals( "Every logged event should be saved once the writer is flushed", 1,
+                    service.findAllForUser( USER_2 ).size() );
+
+            Assert.assertTrue( "Saving the batches should be timed",
+                    registry.get( "itrust2.audit.batch" ).tag( "outcome", "success" ).timer().count() >= batches
+                            + 3 );
+        }
+        finally {
+            writer.stop();
+            ReflectionTestUtils.setField( writer, "async", async );
+            writer.start();
+            service.deleteAll();
+        }
+    }
+
+    /**
+     * Tests that looking up a user's entries by time finds only theirs within
+     * the range, whether they are the primary or secondary user
+     */
+    @Test
+    @Transactional
+    public void testFindByDateRange () {
+        final ZonedDateTime now = ZonedDateTime.now();
+
+        service.save( new LogEntry( TransactionType.LOGIN_SUCCESS, USER_1, null, "In range" ) );
+        service.save( new LogEntry( TransactionType.APPOINTMENT_REQUEST_SUBMITTED, USER_2, USER_1,
+                "In range, secondary" ) );
+        service.save( new LogEntry( TransactionType.LOGIN_SUCCESS, USER_2, null, "Other user" ) );
+
+        final LogEntry old = new LogEntry( TransactionType.LOGIN_SUCCESS, USER_1, null, "Out of range" );
+        old.setTime( now.minusDays( 30 ) );
+        service.save( old );
+
+        Assert.assertEquals( "Only the user's entries within the range should be found", 2,
+                service.findByDateRange( USER_1, now.minusDays( 1 ), now.plusDays( 1 ) ).size() );
+
+        Assert.assertEquals( "Entries where the user is not involved should not be found", 2,
+                service.findByDateRange( USER_2, now.minusDays( 1 ), now.plusDays( 1 ) ).size() );
+
+        Assert.assertEquals( "Older entries should be found with a wider range", 3,
+                service.findByDateRange( USER_1, now.minusDays( 31 ), now.plusDays( 1 ) ).size() );
+    }
+
+    /**
+     * Tests that a user's newest entries are returned, newest first
+     */
+    @Test
+    @Transactional
+    public void testGetTopForUser () {
+        final ZonedDateTime now = ZonedDateTime.now();
+        for ( int i = 0; i < 15; i++ ) {
+            final LogEntry le = new LogEntry( TransactionType.LOGIN_SUCCESS, USER_1, null, "Login " + i );
+            le.setTime( now.minusHours( i ) );
+            service.save( le );
+        }
+        service.save( new LogEntry( TransactionType.LOGIN_SUCCESS, USER_2, null, "Other user" ) );
+
+        final List<LogEntry> top = loggerUtil.getTopForUser( USER_1, 10 );
+        Assert.assertEquals( "Asking for the top 10 entries should return 10 entries", 10, top.size() );
+        Assert.assertEquals( "The newest entry should come first", "Login 0", top.get( 0 ).getMessage() );
+        Assert.assertEquals( "Only the newest entries should be returned", "Login 9", top.get( 9 ).getMessage() );
+
+        Assert.assertEquals( "Asking for more entries than exist should return all of them", 15,
+                loggerUtil.getTopForUser( USER_1, 100 ).size() );
+    }
+
+    /**
+     * Tests that old months are moved to the archive, and that archived
+     * entries are still found when paging through a user's log by number and by
+     * cursor
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testArchiveOldEntries () throws Exception {
+        final Object directory = ReflectionTestUtils.getField( archive, "directory" );
+        ReflectionTestUtils.setField( archive, "directory", folder.getRoot().getAbsolutePath() );
+        archive.load();
+        try {
+            final ZonedDateTime now = ZonedDateTime.now();
+            final List<LogEntry> entries = new ArrayList<LogEntry>();
+            for ( int i = 0; i < 3; i++ ) {
+                // Three months, each well over a year ago
+                for ( int j = 0; j < 5; j++ ) {
+                    final LogEntry le = new LogEntry( TransactionType.LOGIN_SUCCESS, j % 2 == 0 ? USER_1 : USER_2,
+                            null, "Old login" );
+                    le.setTime( now.minusMonths( 20 + i ).withDayOfMonth( 10 + j ) );
+                    entries.add( le );
+                }
+            }
+            entries.add( new LogEntry( TransactionType.LOGIN_SUCCESS, USER_1, null, "Recent login" ) );
+            service.saveAll( entries );
+
+            Assert.assertEquals( "Every month older than the cutoff should be archived", 15,
+                    archive.archiveBefore( YearMonth.now().minusMonths( 12 ) ) );
+            Assert.assertEquals( "Each archived month should have its own archive file", 3,
+                    archive.getPartitions().size() );
+            Assert.assertEquals( "Archived entries should be removed from the database", 1, service.count() );
+
+            Assert.assertEquals( "Lookups should include archived entries", 10,
+                    service.findByDateRange( USER_1, now.minusYears( 3 ), now.plusDays( 1 ) ).size() );
+            Assert.assertEquals( "Lookups should only read archived entries within the range", 3,
+                    service.findByDateRange( USER_1, now.minusMonths( 20 ).withDayOfMonth( 1 ),
+                            now.minusMonths( 20 ).withDayOfMonth( 28 ) ).size() );
+
+            // Paging, by number or from the last entry seen, should walk
+            // through the archived entries too, newest first
+            Assert.assertEquals( 10, service.countForUser( USER_1, null, null, null ) );
+            final List<LogEntry> byNumber = new ArrayList<LogEntry>();
+            final List<LogEntry> byCursor = new ArrayList<LogEntry>();
+            for ( int page = 0; page < 4; page++ ) {
+                byNumber.addAll( service.findPageForUser( USER_1, null, null, null, page, 3 ) );
+                final LogEntry last = byCursor.isEmpty() ? null : byCursor.get( byCursor.size() - 1 );
+                byCursor.addAll( null == last ? service.findPageForUser( USER_1, null, null, null, 0, 3 )
+                        : service.findPageForUserAfter( USER_1, null, null, null, last.getTime(), last.getId(), 3 ) );
+            }
+            Assert.assertEquals( 10, byNumber.size() );
+            Assert.assertEquals( "Recent login", byNumber.get( 0 ).getMessage() );
+            for ( int i = 1; i < byNumber.size(); i++ ) {
+                Assert.assertTrue( "Entries should be newest first",
+                        byNumber.get( i - 1 ).getTime().isAfter( byNumber.get( i ).getTime() ) );
+                Assert.assertEquals( byNumber.get( i ).getId(), byCursor.get( i ).getId() );
+            }
+            Assert.assertTrue( "A page past the end should be empty",
+                    service.findPageForUser( USER_1, null, null, null, 4, 3 ).isEmpty() );
+            final List<LogEntry> second = service.findPageForUser( USER_1, null, null, null, 1, 4 );
+            Assert.assertEquals( 4, second.size() );
+            for ( int i = 0; i < second.size(); i++ ) {
+                Assert.assertEquals( "Pages of another length should line up too", byNumber.get( 4 + i ).getId(),
+                        second.get( i ).getId() );
+            }
+
+            Assert.assertEquals( "Nothing should be archived a second time", 0,
+                    archive.archiveBefore( YearMonth.now().minusMonths( 12 ) ) );
+
+            // The manifest should survive a restart
+            archive.load();
+            Assert.assertEquals( 3, archive.getPartitions().size() );
+        }
+        finally {
+            ReflectionTestUtils.setField( archive, "directory", directory );
+            archive.load();
+        }
+    }
+
+    /**
+     * Tests that when a run stops after writing an archive file but before
+     * deleting its entries, the next run deletes them rather than archiving
+     * them a second time
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testArchiveResumesDeletes () throws Exception {
+        final Object directory = ReflectionTestUtils.getField( archive, "directory" );
+        final Object repository = ReflectionTestUtils.getField( archive, "repository" );
+        ReflectionTestUtils.setField( archive, "directory", folder.getRoot().getAbsolutePath() );
+        archive.load();
+        try {
+            final ZonedDateTime now = ZonedDateTime.now();
+            final List<LogEntry> entries = new ArrayList<LogEntry>();
+            for ( int i = 0; i < 5; i++ ) {
+                final LogEntry le = new LogEntry( TransactionType.LOGIN_SUCCESS, USER_1, null, "Old login" );
+                le.setTime( now.minusMonths( 20 ).withDayOfMonth( 10 + i ) );
+                entries.add( le );
+            }
+            service.saveAll( entries );
+
+            final LogEntryRepository failing = Mockito.mock( LogEntryRepository.class,
+                    AdditionalAnswers.delegatesTo( repository ) );
+            Mockito.doThrow( new IllegalStateException( "Stopped" ) ).when( failing ).deleteByIds( Mockito.any() );
+            ReflectionTestUtils.setField( archive, "repository", failing );
+            try {
+                archive.archiveBefore( YearMonth.now().minusMonths( 12 ) );
+                Assert.fail( "The deletes should have failed" );
+            }
+            catch ( final IllegalStateException e ) {
+                // Expected
+            }
+            ReflectionTestUtils.setField( archive, "repository", repository );
+            Assert.assertEquals( "The entries should still be in the database", 5, service.count() );
+            Assert.assertEquals( 1, archive.getPartitions().size() );
+
+            Assert.assertEquals( "Nothing new should be archived", 0,
+                    archive.archiveBefore( YearMonth.now().minusMonths( 12 ) ) );
+            Assert.assertEquals( "The archived entries should have been deleted", 0, service.count() );
+            Assert.assertEquals( "No second archive file should be written", 1, archive.getPartitions().size() );
+            Assert.assertEquals( "Each entry should only be found once", 5,
+                    service.findByDateRange( USER_1, now.minusYears( 3 ), now.plusDays( 1 ) ).size() );
+        }
+        finally {
+            ReflectionTestUtils.setField( archive, "repository", repository );
+            ReflectionTestUtils.setField( archive, "directory", directory );
+            archive.load();
+        }
+    }
+
+    /**
+     * Tests that archived entries are counted from the manifest, without
+     * reading the archive files
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testArchiveCountsFromManifest () throws Exception {
+        final Object directory = ReflectionTestUtils.getField( archive, "directory" );
+        ReflectionTestUtils.setField( archive, "directory", folder.getRoot().getAbsolutePath() );
+        archive.load();
+        try {
+            final ZonedDateTime now = ZonedDateTime.now();
+            final List<LogEntry> entries = new ArrayList<LogEntry>();
+            for ( int i = 0; i < 5; i++ ) {
+                final LogEntry le = new LogEntry( i == 0 ? TransactionType.LOGIN_FAILURE
+                        : TransactionType.LOGIN_SUCCESS, USER_1, null, "Old login" );
+                le.setTime( now.minusMonths( 20 ).withDayOfMonth( 10 + i ) );
+                entries.add( le );
+            }
+            for ( int i = 0; i < 3; i++ ) {
+                final LogEntry le = new LogEntry( TransactionType.LOGIN_SUCCESS, USER_2, USER_1, "Old login" );
+                le.setTime( now.minusMonths( 21 ).withDayOfMonth( 10 + i ) );
+                entries.add( le );
+            }
+            service.saveAll( entries );
+            Assert.assertEquals( 8, archive.archiveBefore( YearMonth.now().minusMonths( 12 ) ) );
+
+            // Every file lies wholly within an open-ended range, so none of
+            // them should need to be read
+            for ( final LogEntryArchiveService.Partition partition : archive.getPartitions() ) {
+                Files.delete( folder.getRoot().toPath().resolve( partition.getFile() ) );
+            }
+            Assert.assertEquals( "Entries as the primary or secondary user should be counted", 8,
+                    service.countForUser( USER_1, null, null, null ) );
+            Assert.assertEquals( 3, service.countForUser( USER_2, null, null, null ) );
+            Assert.assertEquals( "Counts should be kept by type", 1,
+                    service.countForUser( USER_1, null, null, EnumSet.of( TransactionType.LOGIN_FAILURE ) ) );
+        }
+        finally {
+            ReflectionTestUtils.setField( archive, "directory", directory );
+            archive.load();
+        }
+    }
+
+    /**
+     * Tests that logged events are counted by type, and their saves timed
+     */
+    @Test
+    public void testEventMetrics () {
+        final double failures = registry.get( "itrust2.audit.events" ).tag( "type", "LOGIN_FAILURE" ).counter()
+                .count();
+        final double lockouts = registry.get( "itrust2.audit.events" ).tag( "type", "USER_LOCKOUT" ).counter()
+                .count();
+
+        for ( int i = 0; i < 3; i++ ) {
+            loggerUtil.log( TransactionType.LOGIN_FAILURE, USER_1 );
+        }
+        writer.flush();
+
+        Assert.assertEquals( "Each logged event should be counted", failures + 3,
+                registry.get( "itrust2.audit.events" ).tag( "type", "LOGIN_FAILURE" ).counter().count(), 0.001 );
+        Assert.assertEquals( "Other event types should not be counted", lockouts,
+                registry.get( "itrust2.audit.events" ).tag( "type", "USER_LOCKOUT" ).counter().count(), 0.001 );
+        Assert.assertTrue( "Saving the events should be timed",
+                registry.get( "itrust2.audit.write" ).tag( "sink", "AuditLogWriter" ).timer().count() >= 3 );
+    }
 }
@@ -0,0 +1,151 @@
+package edu.ncsu.csc.iTrust2.unit;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.ncsu.csc.iTrust2.TestConfig;
+import edu.ncsu.csc.iTrust2.models.security.LoginLockout;
+import edu.ncsu.csc.iTrust2.services.security.LoginBanService;
+import edu.ncsu.csc.iTrust2.services.security.LoginLockoutService;
+import edu.ncsu.csc.iTrust2.services.security.LoginPurgeService;
+
+/**
+ * Tests the time windows lockouts are counted over, purging lockouts once
+ * they have expired, and that cached lockout and ban lookups don't touch the
+ * database
+ */
+@RunWith ( SpringRunner.class )
+@EnableAutoConfiguration
+@SpringBootTest ( classes = TestConfig.class )
+public class LoginLockoutTest {
+
+    /** Address the lockouts are for */
+    private static final String IP = "10.0.0.1";
+
+    /** Lockouts, to save and look up */
+    @Autowired
+    private LoginLockoutService  service;
+
+    /** Purges expired lockouts */
+    @Autowired
+    private LoginPurgeService    purgeService;
+
+    /** Bans, to look up */
+    @Autowired
+    private LoginBanService      banService;
+
+    /** For the Hibernate statistics */
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Starts each test with no lockouts
+     */
+    @Before
+    public void setup () {
+        service.deleteAll();
+    }
+
+    /**
+     * Tests that a lockout only locks the address out for an hour, but counts
+     * towards a ban for a day
+     */
+    @Test
+    public void testLockoutWindows () {
+        Assert.assertFalse( service.isIPLocked( IP ) );
+
+        service.save( lockout( ZonedDateTime.now().minusHours( 30 ) ) );
+        service.save( lockout( ZonedDateTime.now().minusHours( 5 ) ) );
+
+        Assert.assertFalse( "Lockouts older than an hour should have expired", service.isIPLocked( IP ) );
+        Assert.assertEquals( "Only lockouts within the past day should count", 1, service.getRecentIPLockouts( IP ) );
+
+        service.save( lockout( ZonedDateTime.now().minusMinutes( 5 ) ) );
+
+        Assert.assertTrue( "Saving a lockout should take effect immediately", service.isIPLocked( IP ) );
+        Assert.assertEquals( 2, service.getRecentIPLockouts( IP ) );
+    }
+
+    /**
+     * Tests that purging removes every lockout older than a day, over several
+     * batches, and nothing newer
+     */
+    @Test
+    public void testPurgeExpired () {
+        // More than one batch's worth
+        final List<LoginLockout> old = new ArrayList<LoginLockout>();
+        for ( int i = 0; i < 1200; i++ ) {
+            old.add( lockout( ZonedDateTime.now().minusHours( 30 ).minusMinutes( i ) ) );
+        }
+        service.saveAll( old );
+        service.save( lockout( ZonedDateTime.now().minusMinutes( 5 ) ) );
+
+        Assert.assertEquals( "Only lockouts older than a day should be purged", 1200, purgeService.purgeLockouts() );
+        Assert.assertEquals( 1, service.count() );
+        Assert.assertTrue( service.isIPLocked( IP ) );
+        Assert.assertEquals( "Purging again should find nothing", 0, purgeService.purgeLockouts() );
+    }
+
+    /**
+     * Tests that repeated lockout and ban lookups for an address are answered
+     * from the cache, without a connection, transaction or statement
+     */
+    @Test
+    public void testCachedStatusSkipsDatabase () {
+        banService.deleteAll();
+        final Statistics statistics = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+        final boolean wasEnabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled( true );
+        try {
+            // The first lookups go to the database, and are then cached
+            Assert.assertFalse( service.isIPLocked( IP ) );
+            Assert.assertFalse( banService.isIPBanned( IP ) );
+
+            final long connections = statistics.getConnectCount();
+            final long transactions = statistics.getTransactionCount();
+            final long statements = statistics.getPrepareStatementCount();
+            for ( int i = 0; i < 10; i++ ) {
+                Assert.assertFalse( service.isIPLocked( IP ) );
+                Assert.assertFalse( banService.isIPBanned( IP ) );
+            }
+            Assert.assertEquals( "Cached lookups should not take a connection", connections,
+                    statistics.getConnectCount() );
+            Assert.assertEquals( "Cached lookups should not start a transaction", transactions,
+                    statistics.getTransactionCount() );
+            Assert.assertEquals( "Cached lookups should not run any statements", statements,
+                    statistics.getPrepareStatementCount() );
+        }
+        finally {
+            statistics.setStatisticsEnabled( wasEnabled );
+        }
+    }
+
+    /**
+     * Creates a lockout of the test address
+     *
+     * @param time
+     *            When the lockout happened
+     * @return The lockout
+     */
+    private static LoginLockout lockout ( final ZonedDateTime time ) {
+        final LoginLockout lockout = new LoginLockout();
+        lockout.setIp( IP );
+        lockout.setTime( time );
+        return lockout;
+    }
+
+}
@@ -81,4 +81,31 @@ public class PersonnelTest {
         }
 
     }
+
+    @Test
+    public void testFindByRole () {
+        final Personnel hcp = new Personnel( new UserForm( USER_1, PW, Role.ROLE_HCP, 1 ) );
+        service.save( hcp );
+        service.save( new Personnel( new UserForm( USER_2, PW, Role.ROLE_ADMIN, 1 ) ) );
+
+        List<Personnel> hcps = service.findByRole( Role.ROLE_HCP );
+        Assert.assertEquals( 1, hcps.size() );
+        Assert.assertEquals( USER_1, hcps.get( 0 ).getUsername() );
+        Assert.assertTrue( "Every role of the Personnel should be loaded",
+                hcps.get( 0 ).getRoles().contains( Role.ROLE_HCP ) );
+        Assert.assertSame( "Repeat lookups should come from the directory", hcps,
+                service.findByRole( Role.ROLE_HCP ) );
+        Assert.assertTrue( service.findByRole( Role.ROLE_ER ).isEmpty() );
+
+        // Changes to Personnel should apply to the next lookup
+        hcp.addRole( Role.ROLE_ER );
+        service.save( hcp );
+        Assert.assertEquals( 1, service.findByRole( Role.ROLE_ER ).size() );
+        hcps = service.findByRole( Role.ROLE_HCP );
+        Assert.assertEquals( "Personnel should keep all of their roles", 2, hcps.get( 0 ).getRoles().size() );
+
+        service.delete( hcp );
+        Assert.assertTrue( service.findByRole( Role.ROLE_HCP ).isEmpty() );
+        Assert.assertEquals( 1, service.findByRole( Role.ROLE_ADMIN ).size() );
+    }
 }
@@ -23,6 +23,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import edu.ncsu.csc.iTrust2.TestConfig;
 import edu.ncsu.csc.iTrust2.forms.SatisfactionSurveyForm;
 import edu.ncsu.csc.iTrust2.forms.UserForm;
+import edu.ncsu.csc.iTrust2.forms.display.SatisfactionSurveyNotePage;
 import edu.ncsu.csc.iTrust2.forms.display.SatisfactionSurveyStatistics;
 import edu.ncsu.csc.iTrust2.models.BasicHealthMetrics;
 import edu.ncsu.csc.iTrust2.models.Diagnosis;
@@ -35,11 +36,13 @@ import edu.ncsu.csc.iTrust2.models.Patient;
 import edu.ncsu.csc.iTrust2.models.Personnel;
 import edu.ncsu.csc.iTrust2.models.Prescription;
 import edu.ncsu.csc.iTrust2.models.SatisfactionSurvey;
+import edu.ncsu.csc.iTrust2.models.SatisfactionSurveyTotals;
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.AppointmentType;
 import edu.ncsu.csc.iTrust2.models.enums.HouseholdSmokingStatus;
 import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.models.enums.WaitTime;
+import edu.ncsu.csc.iTrust2.repositories.SatisfactionSurveyTotalsRepository;
 import edu.ncsu.csc.iTrust2.services.BasicHealthMetricsService;
 import edu.ncsu.csc.iTrust2.services.DrugService;
 import edu.ncsu.csc.iTrust2.services.HospitalService;
@@ -86,6 +89,9 @@ public class SatisfactionSurveyTest {
     @Autowired
     private SatisfactionSurveyStatisticsService satisfactionSurveyStatisticsService;
 
+    @Autowired
+    private SatisfactionSurveyTotalsRepository totalsRepository;
+
     @Before
     public void setup () {
         officeVisitService.deleteAll();
@@ -222,12 +228,128 @@ public class SatisfactionSurveyTest {
         assertEquals(WaitTime.FIVE_TO_TEN, statisticsHcp.getAverageWaitingRoomTime());
         assertEquals(WaitTime.FIFTEEN_TO_TWENTY, statisticsHcp.getAverageExaminationResponseTime());
 
-        assertNotNull(statisticsHcp.getNotes());
-        assertEquals(1, statisticsHcp.getNotes().size());
-        assertEquals("It was very good", statisticsHcp.getNotes().get(0).getComments());
-        assertEquals(3, statisticsHcp.getNotes().get(0).getAverageSatisfaction().intValue());
+        final SatisfactionSurveyNotePage notes = satisfactionSurveyStatisticsService
+                .findNotes( visit.getHcp().getUsername(), null, null, null, 10 );
+        assertEquals(1, notes.getNotes().size());
+        assertEquals("It was very good", notes.getNotes().get(0).getComments());
+        assertEquals(3, notes.getNotes().get(0).getAverageSatisfaction().intValue());
+        assertNull(notes.getNext());
+
+
+    }
+
+    @Test
+    public void testStatisticsForSeveralHcps () {
+        satisfactionSurveyService.deleteAll();
+
+        final User hcpA = new Personnel( new UserForm( "surveyHcpA", "123456", Role.ROLE_HCP, 1 ) );
+        final User hcpB = new Personnel( new UserForm( "surveyHcpB", "123456", Role.ROLE_HCP, 1 ) );
+        final User hcpC = new Personnel( new UserForm( "surveyHcpC", "123456", Role.ROLE_HCP, 1 ) );
+        userService.saveAll( List.of( hcpA, hcpB, hcpC ) );
+        final User alice = userService.findByName( "AliceThirteen" );
+
+        satisfactionSurveyService.saveAll( List.of(
+                survey( alice, hcpA, 5, 4, WaitTime.LESS_THAN_FIVE, WaitTime.FIFTEEN_TO_TWENTY, "Great" ),
+                survey( alice, hcpA, 4, 2, WaitTime.TEN_TO_FIFTEEN, WaitTime.FIFTEEN_TO_TWENTY, "Fine" ),
+                survey( alice, hcpA, 2, 1, WaitTime.TEN_TO_FIFTEEN, WaitTime.OVER_TWENTY_FIVE, "Slow" ),
+                survey( alice, hcpB, 3, 3, WaitTime.FIVE_TO_TEN, WaitTime.FIVE_TO_TEN, "Okay" ) ) );
+
+        final List<SatisfactionSurveyStatistics> statistics = satisfactionSurveyStatisticsService
+                .findForHcps( List.of( hcpA, hcpB, hcpC ) );
+        assertEquals( 3, statistics.size() );
+
+        // Averages round down, as they always have: 11/3, 7/3, 7/3 and 14/3
+        final SatisfactionSurveyStatistics a = statistics.get( 0 );
+        assertEquals( "surveyHcpA", a.getHcp().getUsername() );
+        assertEquals( 3, a.getNumberOfSurveys().intValue() );
+        assertEquals( 3, a.getAverageVisitSatisfaction().intValue() );
+        assertEquals( 2, a.getAverageTreatmentSatisfaction().intValue() );
+        assertEquals( WaitTime.FIVE_TO_TEN, a.getAverageWaitingRoomTime() );
+        assertEquals( WaitTime.FIFTEEN_TO_TWENTY, a.getAverageExaminationResponseTime() );
+
+        assertEquals( 1, statistics.get( 1 ).getNumberOfSurveys().intValue() );
+        assertEquals( 3, statistics.get( 1 ).getAverageVisitSatisfaction().intValue() );
+
+        final SatisfactionSurveyStatistics c = statistics.get( 2 );
+        assertEquals( "HCPs without surveys should still be included", 0, c.getNumberOfSurveys().intValue() );
+        assertEquals( 0, c.getAverageVisitSatisfaction().intValue() );
+        assertNull( c.getAverageWaitingRoomTime() );
+
+        // Notes are paged through newest first
+        SatisfactionSurveyNotePage notes = satisfactionSurveyStatisticsService.findNotes( "surveyHcpA", null, null,
+                null, 2 );
+        assertEquals( 2, notes.getNotes().size() );
+        assertEquals( "Slow", notes.getNotes().get( 0 ).getComments() );
+        assertEquals( "Fine", notes.getNotes().get( 1 ).getComments() );
+        assertNotNull( notes.getNext() );
+        notes = satisfactionSurveyStatisticsService.findNotes( "surveyHcpA", notes.getNext(), null, null, 2 );
+        assertEquals( 1, notes.getNotes().size() );
+        assertEquals( "Great", notes.getNotes().get( 0 ).getComments() );
+        assertEquals( 4, notes.getNotes().get( 0 ).getAverageSatisfaction().intValue() );
+        assertNull( "The last page should have no cursor", notes.getNext() );
+
+        // Filtering on the average satisfaction of each note, rounded down
+        assertEquals( 2, satisfactionSurveyStatisticsService.findNotes( "surveyHcpA", null, 3, null, 10 ).getNotes()
+                .size() );
+        notes = satisfactionSurveyStatisticsService.findNotes( "surveyHcpA", null, null, 1, 10 );
+        assertEquals( 1, notes.getNotes().size() );
+        assertEquals( "Slow", notes.getNotes().get( 0 ).getComments() );
+
+        satisfactionSurveyService.deleteAll();
+    }
 
+    @Test
+    public void testTotals () {
+        satisfactionSurveyService.deleteAll();
+
+        final User hcp = new Personnel( new UserForm( "surveyHcpA", "123456", Role.ROLE_HCP, 1 ) );
+        userService.save( hcp );
+        final User alice = userService.findByName( "AliceThirteen" );
+
+        final SatisfactionSurvey first = survey( alice, hcp, 5, 5, WaitTime.LESS_THAN_FIVE,
+                WaitTime.LESS_THAN_FIVE, "Great" );
+        satisfactionSurveyService.save( first );
+        satisfactionSurveyService.save(
+                survey( alice, hcp, 1, 3, WaitTime.FIVE_TO_TEN, WaitTime.TEN_TO_FIFTEEN, "Not so great" ) );
+
+        SatisfactionSurveyTotals totals = totalsRepository.findById( "surveyHcpA" ).get();
+        assertEquals( "Saving surveys should add them to the totals", 2, totals.getSurveys() );
+        assertEquals( 6, totals.getVisitSatisfaction() );
+        assertEquals( 8, totals.getTreatmentSatisfaction() );
+        assertEquals( 3, totals.getWaitingRoomTime() );
+        assertEquals( 4, totals.getExaminationResponseTime() );
+
+        first.setVisitSatisfaction( 3 );
+        satisfactionSurveyService.save( first );
+        assertEquals( "Changing a survey should update the totals", 4,
+                totalsRepository.findById( "surveyHcpA" ).get().getVisitSatisfaction() );
+
+        satisfactionSurveyService.delete( first );
+        totals = totalsRepository.findById( "surveyHcpA" ).get();
+        assertEquals( "Deleting a survey should remove it from the totals", 1, totals.getSurveys() );
+        assertEquals( 1, totals.getVisitSatisfaction() );
+
+        totalsRepository.deleteAll();
+        assertEquals( 0, satisfactionSurveyStatisticsService.findForHcp( hcp ).getNumberOfSurveys().intValue() );
+        assertEquals( "Rebuilding should backfill the totals", 1, satisfactionSurveyService.rebuildTotals() );
+        assertEquals( 1, satisfactionSurveyStatisticsService.findForHcp( hcp ).getAverageVisitSatisfaction()
+                .intValue() );
+
+        satisfactionSurveyService.deleteAll();
+        Assert.assertFalse( totalsRepository.existsById( "surveyHcpA" ) );
+    }
 
+    private static SatisfactionSurvey survey ( final User patient, final User hcp, final int visit,
+            final int treatment, final WaitTime waitingRoom, final WaitTime examination, final String comments ) {
+        final SatisfactionSurvey survey = new SatisfactionSurvey();
+        survey.setPatient( patient );
+        survey.setHcp( hcp );
+        survey.setVisitSatisfaction( visit );
+        survey.setTreatmentSatisfaction( treatment );
+        survey.setWaitingRoomTime( waitingRoom );
+        survey.setExaminationResponseTime( examination );
+        survey.setComments( comments );
+        return survey;
     }
 
 }
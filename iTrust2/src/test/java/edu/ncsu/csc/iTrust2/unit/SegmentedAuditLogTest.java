@@ -0,0 +1,254 @@
+package edu.ncsu.csc.iTrust2.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import edu.ncsu.csc.iTrust2.models.enums.TransactionType;
+import edu.ncsu.csc.iTrust2.models.security.LogEntry;
+import edu.ncsu.csc.iTrust2.utils.SegmentedAuditLog;
+
+/**
+ * Tests for the SegmentedAuditLog: writing, scanning, reopening, and ageing
+ * out old segments
+ *
+ */
+public class SegmentedAuditLogTest {
+
+    /** Directory the segments are written to for each test */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Opens a log over the temporary folder
+     *
+     * @return The log
+     * @throws Exception
+     */
+    private SegmentedAuditLog open () throws Exception {
+        // Small segments and a dense index, so that both get exercised
+        return open( 4096 );
+    }
+
+    /**
+     * Opens a log over the temporary folder with the given segment size
+     *
+     * @param segmentSize
+     *            Size (bytes) of each segment
+     * @return The log
+     * @throws Exception
+     */
+    private SegmentedAuditLog open ( final int segmentSize ) throws Exception {
+        final SegmentedAuditLog log = new SegmentedAuditLog();
+        ReflectionTestUtils.setField( log, "directory", folder.getRoot().getAbsolutePath() );
+        ReflectionTestUtils.setField( log, "segmentSize", segmentSize );
+        ReflectionTestUtils.setField( log, "indexInterval", 256 );
+        log.open();
+        return log;
+    }
+
+    /**
+     * Collects every event in the given range
+     *
+     * @param log
+     *            Log to scan
+     * @param from
+     *            Start of the range
+     * @param to
+     *            End of the range
+     * @return The events found
+     * @throws Exception
+     */
+    private List<LogEntry> scan ( final SegmentedAuditLog log, final ZonedDateTime from, final ZonedDateTime to )
+            throws Exception {
+        final List<LogEntry> found = new ArrayList<LogEntry>();
+        log.scan( from, to, found::add );
+        return found;
+    }
+
+    /**
+     * Writes a request event at the given time
+     *
+     * @param log
+     *            Log to write to
+     * @param time
+     *            Time of the event
+     * @param i
+     *            Number of the event, which goes in its message
+     */
+    private void write ( final SegmentedAuditLog log, final ZonedDateTime time, final int i ) {
+        final LogEntry le = new LogEntry( TransactionType.HTTP_REQUEST, "user:127.0.0.1", null, "/thing/" + i );
+        le.setTime( time );
+        log.write( le );
+    }
+
+    /**
+     * Tests that events can be written, scanned by range, and found again
+     * after the log is reopened
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteAndScan () throws Exception {
+        final ZonedDateTime start = ZonedDateTime.now().minusDays( 1 ).withNano( 0 );
+
+        SegmentedAuditLog log = open();
+        for ( int i = 0; i < 500; i++ ) {
+            final LogEntry le = new LogEntry( TransactionType.HTTP_REQUEST, "user" + ( i % 10 ) + ":127.0.0.1",
+                    i % 2 == 0 ? null : "GET", "/iTrust2/api/v1/thing/" + i );
+            le.setTime( start.plusMinutes( i ) );
+            log.write( le );
+        }
+        assertTrue( "Entries should have been spread across several segments", log.segmentCount() > 1 );
+
+        List<LogEntry> found = scan( log, start.plusMinutes( 100 ), start.plusMinutes( 199 ) );
+        assertEquals( 100, found.size() );
+        final LogEntry first = found.get( 0 );
+        assertEquals( TransactionType.HTTP_REQUEST, first.getLogCode() );
+        assertEquals( "user0:127.0.0.1", first.getPrimaryUser() );
+        assertNull( first.getSecondaryUser() );
+        assertEquals( "/iTrust2/api/v1/thing/100", first.getMessage() );
+        assertEquals( start.plusMinutes( 100 ).toInstant(), first.getTime().toInstant() );
+        assertEquals( "GET", found.get( 1 ).getSecondaryUser() );
+
+        assertEquals( 500, scan( log, start.minusDays( 1 ), start.plusDays( 1 ) ).size() );
+        assertEquals( 0, scan( log, start.plusDays( 1 ), start.plusDays( 2 ) ).size() );
+        log.close();
+
+        // Everything should still be there after reopening, and new entries
+        // should be appended after the old ones
+        log = open();
+        final LogEntry le = new LogEntry( TransactionType.HTTP_REQUEST, "late:127.0.0.1", null, "/late" );
+        le.setTime( start.plusMinutes( 500 ) );
+        log.write( le );
+
+        found = scan( log, start.plusMinutes( 450 ), start.plusMinutes( 600 ) );
+        assertEquals( 51, found.size() );
+        assertEquals( "/late", found.get( 50 ).getMessage() );
+        log.close();
+    }
+
+    /**
+     * Tests that a reader only sees the events that had been written when it
+     * was opened, even as the active segment keeps growing underneath it
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReadSnapshot () throws Exception {
+        final ZonedDateTime start = ZonedDateTime.now().minusHours( 1 ).withNano( 0 );
+        final SegmentedAuditLog log = open();
+        for ( int i = 0; i < 5; i++ ) {
+            write( log, start.plusSeconds( i ), i );
+        }
+
+        final Iterator<LogEntry> reader = log.read( start, start.plusHours( 1 ) );
+        for ( int i = 5; i < 10; i++ ) {
+            write( log, start.plusSeconds( i ), i );
+        }
+        int read = 0;
+        while ( reader.hasNext() ) {
+            assertEquals( "/thing/" + read, reader.next().getMessage() );
+            read++;
+        }
+        assertEquals( 5, read );
+        assertEquals( 10, scan( log, start, start.plusHours( 1 ) ).size() );
+        log.close();
+    }
+
+    /**
+     * Tests that sealed segments are deleted once all of their events are
+     * past the cutoff, and that the active segment is always kept
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDeleteBefore () throws Exception {
+        final ZonedDateTime old = ZonedDateTime.now().minusDays( 400 ).withNano( 0 );
+        final ZonedDateTime recent = ZonedDateTime.now().minusDays( 1 ).withNano( 0 );
+        final SegmentedAuditLog log = open();
+        for ( int i = 0; i < 200; i++ ) {
+            write( log, old.plusMinutes( i ), i );
+        }
+        final int oldSegments = log.segmentCount();
+        assertTrue( oldSegments > 1 );
+        for ( int i = 0; i < 200; i++ ) {
+            write( log, recent.plusMinutes( i ), i );
+        }
+
+        // The segment the recent events started in may still hold a few old
+        // ones, and has to be kept
+        final int deleted = log.deleteBefore( ZonedDateTime.now().minusDays( 365 ) );
+        assertTrue( deleted >= oldSegments - 1 );
+        assertTrue( scan( log, old, old.plusDays( 1 ) ).size() < 200 );
+        assertEquals( 200, scan( log, recent, recent.plusDays( 1 ) ).size() );
+        assertEquals( log.segmentCount(), folder.getRoot().list( ( dir, name ) -> name.endsWith( ".seg" ) ).length );
+
+        // With nothing older than the cutoff, only the active segment is left
+        log.deleteBefore( ZonedDateTime.now().plusDays( 1 ) );
+        assertEquals( 1, log.segmentCount() );
+        assertFalse( scan( log, recent, recent.plusDays( 1 ) ).isEmpty() );
+        log.close();
+    }
+
+    /**
+     * Tests that events written after the log is closed are dropped rather
+     * than failing, and that what was written before is still there
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteAfterClose () throws Exception {
+        final ZonedDateTime start = ZonedDateTime.now().withNano( 0 );
+        final SegmentedAuditLog log = open();
+        write( log, start, 0 );
+        log.close();
+        assertTrue( log.isClosed() );
+
+        write( log, start.plusSeconds( 1 ), 1 );
+        log.close();
+
+        final SegmentedAuditLog reopened = open();
+        assertFalse( reopened.isClosed() );
+        assertEquals( "Only the event written before closing should be kept", 1,
+                scan( reopened, start, start.plusMinutes( 1 ) ).size() );
+        reopened.close();
+    }
+
+    /**
+     * Tests that a message too long for a record is cut short on a character
+     * boundary, rather than through the middle of a multi-byte character
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLongMessageTruncated () throws Exception {
+        final ZonedDateTime time = ZonedDateTime.now().withNano( 0 );
+        final SegmentedAuditLog log = open( 1 << 20 );
+        final StringBuilder message = new StringBuilder();
+        for ( int i = 0; i < 20000; i++ ) {
+            message.append( "\u00e9" );
+        }
+        final LogEntry le = new LogEntry( TransactionType.HTTP_REQUEST, "user:127.0.0.1", null, message.toString() );
+        le.setTime( time );
+        log.write( le );
+
+        final List<LogEntry> found = scan( log, time, time );
+        assertEquals( 1, found.size() );
+        // 2 bytes per character, and Short.MAX_VALUE is odd
+        assertEquals( message.substring( 0, Short.MAX_VALUE / 2 ), found.get( 0 ).getMessage() );
+        log.close();
+    }
+
+}
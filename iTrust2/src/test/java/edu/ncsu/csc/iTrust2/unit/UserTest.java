@@ -1,6 +1,7 @@
 package edu.ncsu.csc.iTrust2.unit;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -9,8 +10,15 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import edu.ncsu.csc.iTrust2.TestConfig;
 import edu.ncsu.csc.iTrust2.forms.UserForm;
@@ -19,6 +27,8 @@ import edu.ncsu.csc.iTrust2.models.Personnel;
 import edu.ncsu.csc.iTrust2.models.User;
 import edu.ncsu.csc.iTrust2.models.enums.Role;
 import edu.ncsu.csc.iTrust2.services.UserService;
+import edu.ncsu.csc.iTrust2.services.security.CachedUserDetailsService;
+import edu.ncsu.csc.iTrust2.utils.CurrentUser;
 
 @RunWith ( SpringRunner.class )
 @EnableAutoConfiguration
@@ -26,7 +36,13 @@ import edu.ncsu.csc.iTrust2.services.UserService;
 public class UserTest {
 
     @Autowired
-    private UserService         service;
+    private UserService              service;
+
+    @Autowired
+    private CachedUserDetailsService userDetailsService;
+
+    @Autowired
+    private CurrentUser              currentUser;
 
     private static final String USER_1 = "testUser1";
 
@@ -119,4 +135,96 @@ public class UserTest {
             // expected
         }
     }
+
+    @Test
+    @Transactional
+    public void testFindByNames () {
+        final User user1 = new Personnel( new UserForm( USER_1, PW, Role.ROLE_HCP, 1 ) );
+        user1.addRole( Role.ROLE_ER );
+        final User user2 = new Patient( new UserForm( USER_2, PW, Role.ROLE_PATIENT, 1 ) );
+        service.saveAll( List.of( user1, user2 ) );
+
+        final List<User> found = service.findByNames( List.of( USER_1, USER_2, "notARealUser" ) );
+
+        Assert.assertEquals( "Only the users that exist should be found", 2, found.size() );
+        for ( final User u : found ) {
+            Assert.assertEquals( "Each user should be returned with all of its roles",
+                    USER_1.equals( u.getUsername() ) ? 2 : 1, u.getRoles().size() );
+        }
+
+        Assert.assertTrue( "Looking up no names should find no users", service.findByNames( List.of() ).isEmpty() );
+    }
+
+    @Test
+    public void testUserDetailsCache () {
+        final User user1 = new Personnel( new UserForm( USER_1, PW, Role.ROLE_HCP, 1 ) );
+        service.save( user1 );
+
+        UserDetails details = userDetailsService.loadUserByUsername( USER_1 );
+        Assert.assertTrue( details.isEnabled() );
+        Assert.assertEquals( 1, details.getAuthorities().size() );
+        Assert.assertEquals( user1.getPassword(), details.getPassword() );
+
+        // Changes should apply to the next login, even though it was cached
+        user1.addRole( Role.ROLE_ER );
+        user1.setEnabled( 0 );
+        service.save( user1 );
+
+        details = userDetailsService.loadUserByUsername( USER_1 );
+        Assert.assertFalse( "Disabling a user should apply immediately", details.isEnabled() );
+        Assert.assertEquals( "Adding a role should apply immediately", 2, details.getAuthorities().size() );
+
+        service.delete( user1 );
+        try {
+            userDetailsService.loadUserByUsername( USER_1 );
+            Assert.fail( "A deleted user should not be found" );
+        }
+        catch ( final UsernameNotFoundException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    @WithMockUser ( username = USER_1, roles = { "HCP" } )
+    public void testCurrentUser () {
+        final User user1 = new Personnel( new UserForm( USER_1, PW, Role.ROLE_HCP, 1 ) );
+        service.save( user1 );
+
+        // Outside of a request the user is just looked up
+        Assert.assertEquals( USER_1, currentUser.get().getUsername() );
+
+        final MockHttpSession session = new MockHttpSession();
+        final User first = inRequest( session, () -> {
+            final User self = currentUser.get();
+            Assert.assertSame( "The user should be looked up once per request", self, currentUser.get() );
+            return self;
+        } );
+        Assert.assertSame( "Requests in the same session should share the user", first,
+                inRequest( session, currentUser::get ) );
+
+        // Saving someone else shouldn't drop this user's cached entry
+        service.save( new Personnel( new UserForm( USER_2, PW, Role.ROLE_HCP, 1 ) ) );
+        Assert.assertSame( "Saving another user should not invalidate this one", first,
+                inRequest( session, currentUser::get ) );
+
+        // Changes should apply to the next request, even though it was cached
+        user1.addRole( Role.ROLE_ER );
+        service.save( user1 );
+        Assert.assertEquals( 2, inRequest( session, currentUser::get ).getRoles().size() );
+
+        service.delete( user1 );
+        Assert.assertNull( inRequest( session, currentUser::get ) );
+    }
+
+    private static <T> T inRequest ( final MockHttpSession session, final Supplier<T> body ) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession( session );
+        RequestContextHolder.setRequestAttributes( new ServletRequestAttributes( request ) );
+        try {
+            return body.get();
+        }
+        finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests for the in-memory cache used for ban and lockout lookups
+ */
+public class ExpiringCacheTest {
+
+    /**
+     * Tests that answers, including negative ones, are cached until they are
+     * invalidated or expire
+     */
+    @Test
+    public void testExpiryAndInvalidation () {
+        final AtomicLong now = new AtomicLong( 1000 );
+        final AtomicInteger loads = new AtomicInteger();
+        final ExpiringCache<String, Boolean> cache = new ExpiringCache<String, Boolean>( 30000, 100, now::get );
+
+        // Negative answers are cached too
+        assertFalse( cache.get( "1.2.3.4", ip -> {
+            loads.incrementAndGet();
+            return false;
+        } ) );
+        assertFalse( cache.get( "1.2.3.4", ip -> {
+            loads.incrementAndGet();
+            return true;
+        } ) );
+        assertEquals( 1, loads.get() );
+
+        // Invalidating forces a reload
+        cache.invalidate( "1.2.3.4" );
+        assertTrue( cache.get( "1.2.3.4", ip -> {
+            loads.incrementAndGet();
+            return true;
+        } ) );
+        assertEquals( 2, loads.get() );
+
+        // So does expiry
+        now.addAndGet( 30000 );
+        assertFalse( cache.get( "1.2.3.4", ip -> {
+            loads.incrementAndGet();
+            return false;
+        } ) );
+        assertEquals( 3, loads.get() );
+    }
+
+    /**
+     * Tests that an answer isn't cached if its key is invalidated while it is
+     * being loaded
+     */
+    @Test
+    public void testInvalidatedWhileLoading () {
+        final ExpiringCache<String, Boolean> cache = new ExpiringCache<String, Boolean>( 30000, 100 );
+        // A ban is saved while the old answer is being loaded
+        assertFalse( cache.get( "1.2.3.4", ip -> {
+            cache.invalidate( ip );
+            return false;
+        } ) );
+        assertTrue( "The stale answer should not have been cached", cache.get( "1.2.3.4", ip -> true ) );
+    }
+
+    /**
+     * Tests that invalidateIf only drops the keys that match
+     */
+    @Test
+    public void testInvalidateIf () {
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>( 30000, 100 );
+        cache.get( "LoadUser0", k -> k );
+        cache.get( "loaduser0", k -> null );
+        cache.get( "loaduser1", k -> k );
+
+        cache.invalidateIf( k -> k.equalsIgnoreCase( "LOADUSER0" ) );
+        assertEquals( "Only matching keys should be dropped", 1, cache.size() );
+        assertEquals( "loaduser0", cache.get( "loaduser0", k -> k ) );
+    }
+
+    /**
+     * Tests that the cache never grows past its maximum size
+     */
+    @Test
+    public void testMaxSize () {
+        final ExpiringCache<Integer, Integer> cache = new ExpiringCache<Integer, Integer>( 30000, 10 );
+        for ( int i = 0; i < 25; i++ ) {
+            cache.get( i, k -> k );
+        }
+        assertTrue( cache.size() <= 10 );
+    }
+
+    /**
+     * Tests that when the cache overflows only the least recently used entry
+     * is dropped, and the rest are still served from the cache
+     */
+    @Test
+    public void testOverflowKeepsRecentEntries () {
+        final AtomicInteger loads = new AtomicInteger();
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>( 30000, 10 );
+        for ( int i = 0; i < 10; i++ ) {
+            cache.get( "user" + i, k -> k );
+        }
+        // user0 was looked up again, so user1 is now the least recently used
+        cache.get( "user0", k -> {
+            loads.incrementAndGet();
+            return k;
+        } );
+
+        // A burst of lookups for unknown users
+        for ( int i = 0; i < 5; i++ ) {
+            cache.get( "ghost" + i, k -> null );
+        }
+        assertEquals( 10, cache.size() );
+
+        for ( final String kept : new String[] { "user0", "user6", "user7", "user8", "user9" } ) {
+            cache.get( kept, k -> {
+                loads.incrementAndGet();
+                return k;
+            } );
+        }
+        assertEquals( "Recently used entries should survive the overflow", 0, loads.get() );
+        cache.get( "user1", k -> {
+            loads.incrementAndGet();
+            return k;
+        } );
+        assertEquals( "The least recently used entry should have been dropped", 1, loads.get() );
+    }
+
+}
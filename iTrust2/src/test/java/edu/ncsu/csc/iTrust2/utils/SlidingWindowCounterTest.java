@@ -0,0 +1,84 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests for the in-memory sliding window counter used to throttle logins
+ */
+public class SlidingWindowCounterTest {
+
+    /**
+     * Tests that events count only while they are within the window, and that
+     * keys with nothing left in it are evicted
+     */
+    @Test
+    public void testWindowSlides () {
+        final AtomicLong now = new AtomicLong( 1_000_000 );
+        // 60 second window, in 1 second buckets
+        final SlidingWindowCounter counter = new SlidingWindowCounter( 60000, 60, now::get );
+
+        assertEquals( 1, counter.record( "1.2.3.4" ) );
+        now.addAndGet( 30000 );
+        assertEquals( 2, counter.record( "1.2.3.4" ) );
+        assertEquals( 1, counter.record( "5.6.7.8" ) );
+        assertEquals( 0, counter.count( "9.9.9.9" ) );
+
+        // The first event ages out; the second is still in the window
+        now.addAndGet( 31000 );
+        assertEquals( 1, counter.count( "1.2.3.4" ) );
+
+        now.addAndGet( 30000 );
+        assertEquals( 0, counter.count( "1.2.3.4" ) );
+        assertEquals( 2, counter.evictExpired() );
+        assertEquals( 0, counter.size() );
+
+        // Coming back round the ring shouldn't pick up old counts
+        now.addAndGet( 60000 * 5 );
+        assertEquals( 1, counter.record( "1.2.3.4" ) );
+    }
+
+    /**
+     * Tests that resetting a key clears its count
+     */
+    @Test
+    public void testReset () {
+        final SlidingWindowCounter counter = new SlidingWindowCounter( 60000, 60 );
+        counter.record( "user" );
+        counter.record( "user" );
+        assertTrue( counter.reset( "user" ) );
+        assertFalse( "Only the first reset should report removing anything", counter.reset( "user" ) );
+        assertEquals( 0, counter.count( "user" ) );
+    }
+
+    /**
+     * Tests that no events are lost when many threads record against the same
+     * key at once
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentRecords () throws Exception {
+        final SlidingWindowCounter counter = new SlidingWindowCounter( 60000, 60 );
+        final ExecutorService pool = Executors.newFixedThreadPool( 8 );
+        for ( int i = 0; i < 8; i++ ) {
+            pool.submit( () -> {
+                for ( int j = 0; j < 1000; j++ ) {
+                    counter.record( "shared" );
+                }
+            } );
+        }
+        pool.shutdown();
+        assertTrue( pool.awaitTermination( 30, TimeUnit.SECONDS ) );
+        assertEquals( "No events should be lost under contention", 8000, counter.count( "shared" ) );
+    }
+
+}
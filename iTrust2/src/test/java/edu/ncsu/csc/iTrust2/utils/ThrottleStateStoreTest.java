@@ -0,0 +1,157 @@
+package edu.ncsu.csc.iTrust2.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.ncsu.csc.iTrust2.common.EmbeddedThrottleStoreServer;
+
+/**
+ * Tests that both ThrottleStateStores count, expire, and reset the same way.
+ * The networked store is tested against an embedded stand-in server.
+ */
+public class ThrottleStateStoreTest {
+
+    /** Length of the window counts are kept for (ms) */
+    private static final long WINDOW = 300;
+
+    /**
+     * Tests the in-memory store
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLocalStore () throws Exception {
+        checkStore( new LocalThrottleStateStore() );
+    }
+
+    /**
+     * Tests the networked store against the embedded server
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRedisStore () throws Exception {
+        try ( EmbeddedThrottleStoreServer server = new EmbeddedThrottleStoreServer() ) {
+            final RedisThrottleStateStore store = new RedisThrottleStateStore( "localhost", server.getPort(), 1000,
+                    "test:", 5000 );
+            checkStore( store );
+            store.close();
+        }
+    }
+
+    /**
+     * Tests that when the networked store doesn't answer, events are counted
+     * locally, and the store isn't waited on again for every event
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRedisStoreNotResponding () throws Exception {
+        // Accepts connections, but never answers
+        try ( ServerSocket silent = new ServerSocket( 0, 50, InetAddress.getLoopbackAddress() ) ) {
+            final RedisThrottleStateStore store = new RedisThrottleStateStore( "localhost", silent.getLocalPort(),
+                    200, "test:", TimeUnit.MINUTES.toMillis( 1 ) );
+            assertEquals( "Events should be counted locally while the store is down", 1,
+                    store.increment( "key", WINDOW ) );
+
+            // The store has just failed, so it shouldn't be waited on again
+            final long start = System.nanoTime();
+            assertEquals( 2, store.increment( "key", WINDOW ) );
+            assertEquals( 2, store.count( "key", WINDOW ) );
+            assertTrue( "The failed store should not be retried straight away",
+                    System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos( 200 ) );
+
+            assertTrue( store.reset( "key" ) );
+            assertEquals( 0, store.count( "key", WINDOW ) );
+            store.close();
+        }
+    }
+
+    /**
+     * Tests that the networked store is used again once it comes back after
+     * the retry interval
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRedisStoreRecovers () throws Exception {
+        final int port;
+        try ( ServerSocket unused = new ServerSocket( 0, 50, InetAddress.getLoopbackAddress() ) ) {
+            port = unused.getLocalPort();
+        }
+        // Nothing is listening yet, so connecting fails
+        final RedisThrottleStateStore store = new RedisThrottleStateStore( "localhost", port, 200, "test:", WINDOW );
+        assertEquals( 1, store.increment( "key", WINDOW ) );
+
+        try ( EmbeddedThrottleStoreServer server = new EmbeddedThrottleStoreServer( port ) ) {
+            Thread.sleep( WINDOW * 2 );
+            assertEquals( "Once the store is back, it should be counted in again", 1,
+                    store.increment( "other", WINDOW ) );
+            assertEquals( 2, store.increment( "other", WINDOW ) );
+            store.close();
+        }
+    }
+
+    /**
+     * Runs a store through counting, resetting and expiring events, and checks
+     * that concurrent increments and resets behave
+     *
+     * @param store
+     *            Store to check
+     * @throws Exception
+     */
+    private void checkStore ( final ThrottleStateStore store ) throws Exception {
+        assertEquals( 1, store.increment( "a", WINDOW ) );
+        assertEquals( 2, store.increment( "a", WINDOW ) );
+        assertEquals( 1, store.increment( "b", WINDOW ) );
+        assertEquals( 2, store.count( "a", WINDOW ) );
+        assertEquals( 0, store.count( "c", WINDOW ) );
+
+        assertTrue( store.reset( "b" ) );
+        assertFalse( "Only the first reset should report removing anything", store.reset( "b" ) );
+        assertEquals( 0, store.count( "b", WINDOW ) );
+
+        Thread.sleep( WINDOW * 2 );
+        store.evictExpired();
+        assertEquals( "Events should expire after the window", 0, store.count( "a", WINDOW ) );
+        assertEquals( 1, store.increment( "a", WINDOW ) );
+
+        // Concurrent increments are all counted, and only one concurrent
+        // reset wins
+        final ExecutorService pool = Executors.newFixedThreadPool( 4 );
+        for ( int i = 0; i < 4; i++ ) {
+            pool.submit( () -> {
+                for ( int j = 0; j < 50; j++ ) {
+                    store.increment( "shared", TimeUnit.MINUTES.toMillis( 1 ) );
+                }
+            } );
+        }
+        pool.shutdown();
+        assertTrue( pool.awaitTermination( 30, TimeUnit.SECONDS ) );
+        assertEquals( 200, store.count( "shared", TimeUnit.MINUTES.toMillis( 1 ) ) );
+
+        final AtomicInteger winners = new AtomicInteger();
+        final ExecutorService resetters = Executors.newFixedThreadPool( 4 );
+        for ( int i = 0; i < 4; i++ ) {
+            resetters.submit( () -> {
+                if ( store.reset( "shared" ) ) {
+                    winners.incrementAndGet();
+                }
+            } );
+        }
+        resetters.shutdown();
+        assertTrue( resetters.awaitTermination( 30, TimeUnit.SECONDS ) );
+        assertEquals( 1, winners.get() );
+    }
+
+}